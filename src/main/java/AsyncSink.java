@@ -0,0 +1,230 @@
+/*
+Copyright 2017 Erigo Technologies LLC
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * OutputSink which hands everything put to it to another sink running on its own thread.
+ *
+ * Calls are recorded, in order, into batches of primitive arrays (so values aren't boxed) and queued to the
+ * worker thread, which replays them on the wrapped sink; used batches are recycled.  The queue is bounded, so a
+ * producer which outruns the worker waits rather than buffering without limit.  Several AsyncSinks, each
+ * wrapping a CTSink with its own CTwriter, let compression and file creation for disjoint channel partitions run
+ * on separate cores while one thread produces the time-ordered stream.
+ *
+ * A time is only queued when a value follows it, so a partition with nothing to write at a given time costs
+ * nothing.  An exception thrown by the wrapped sink is rethrown by the next call made on this sink.
+ */
+class AsyncSink implements OutputSink {
+    private static final int BATCH_SIZE = 4096;    // calls per batch
+    private static final int QUEUE_BATCHES = 4;    // batches queued to the worker before the producer waits
+
+    private static final byte TIME = 0;
+    private static final byte DOUBLE = 1;
+    private static final byte FLOAT = 2;
+    private static final byte LONG = 3;
+    private static final byte INT = 4;
+    private static final byte SHORT = 5;
+    private static final byte STRING = 6;
+    private static final byte BYTES = 7;
+
+    private static final Batch END = new Batch(0);  // queued by close() to stop the worker
+
+    private final OutputSink sink;
+    private final BlockingQueue<Batch> fullBatches = new ArrayBlockingQueue<Batch>(QUEUE_BATCHES);
+    private final BlockingQueue<Batch> freeBatches = new ArrayBlockingQueue<Batch>(QUEUE_BATCHES + 1);
+    private final Thread worker;
+    private volatile Exception workerException = null;
+    private Batch batch = new Batch(BATCH_SIZE);
+    private double time = 0.0;
+    private boolean bTimeQueued = false;   // has the current time been queued?
+
+    public AsyncSink(OutputSink sinkI, String threadName) {
+        sink = sinkI;
+        for (int i = 0; i < QUEUE_BATCHES; ++i) {
+            freeBatches.add(new Batch(BATCH_SIZE));
+        }
+        worker = new Thread(new Runnable() {
+            public void run() {
+                replay();
+            }
+        }, threadName);
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    public void setTime(double timeI) {
+        if (timeI != time) {
+            time = timeI;
+            bTimeQueued = false;
+        }
+    }
+
+    public void putData(String chanName, double val) throws Exception {
+        put(DOUBLE, chanName, Double.doubleToRawLongBits(val), null);
+    }
+
+    public void putData(String chanName, float val) throws Exception {
+        put(FLOAT, chanName, Float.floatToRawIntBits(val), null);
+    }
+
+    public void putData(String chanName, long val) throws Exception {
+        put(LONG, chanName, val, null);
+    }
+
+    public void putData(String chanName, int val) throws Exception {
+        put(INT, chanName, val, null);
+    }
+
+    public void putData(String chanName, short val) throws Exception {
+        put(SHORT, chanName, val, null);
+    }
+
+    public void putData(String chanName, String val) throws Exception {
+        put(STRING, chanName, 0, val);
+    }
+
+    public void putData(String chanName, byte[] val) throws Exception {
+        put(BYTES, chanName, 0, val);
+    }
+
+    /**
+     * Queue the remaining calls, wait for the worker to replay them, then close the wrapped sink.
+     */
+    public void close() throws Exception {
+        try {
+            if (batch.size > 0) {
+                fullBatches.put(batch);
+            }
+            fullBatches.put(END);
+            worker.join();
+        } finally {
+            sink.close();
+        }
+        checkWorker();
+    }
+
+    private void put(byte kind, String chanName, long num, Object obj) throws Exception {
+        if (!bTimeQueued) {
+            add(TIME, null, Double.doubleToRawLongBits(time), null);
+            bTimeQueued = true;
+        }
+        add(kind, chanName, num, obj);
+    }
+
+    private void add(byte kind, String chanName, long num, Object obj) throws Exception {
+        int i = batch.size++;
+        batch.kinds[i] = kind;
+        batch.chanNames[i] = chanName;
+        batch.nums[i] = num;
+        batch.objs[i] = obj;
+        if (batch.size == BATCH_SIZE) {
+            checkWorker();
+            fullBatches.put(batch);
+            batch = freeBatches.take();
+        }
+    }
+
+    private void checkWorker() throws Exception {
+        if (workerException != null) {
+            throw workerException;
+        }
+    }
+
+    /**
+     * Worker thread: replay each queued batch on the wrapped sink.  After an error, batches are only recycled so
+     * the producer isn't blocked before it sees the error.
+     */
+    private void replay() {
+        try {
+            while (true) {
+                Batch b = fullBatches.take();
+                if (b == END) {
+                    return;
+                }
+                if (workerException == null) {
+                    try {
+                        replay(b);
+                    } catch (Exception e) {
+                        workerException = e;
+                    }
+                }
+                b.clear();
+                freeBatches.put(b);
+            }
+        } catch (InterruptedException e) {
+            workerException = e;
+        }
+    }
+
+    private void replay(Batch b) throws Exception {
+        for (int i = 0; i < b.size; ++i) {
+            String chanName = b.chanNames[i];
+            long num = b.nums[i];
+            switch (b.kinds[i]) {
+                case TIME:
+                    sink.setTime(Double.longBitsToDouble(num));
+                    break;
+                case DOUBLE:
+                    sink.putData(chanName, Double.longBitsToDouble(num));
+                    break;
+                case FLOAT:
+                    sink.putData(chanName, Float.intBitsToFloat((int) num));
+                    break;
+                case LONG:
+                    sink.putData(chanName, num);
+                    break;
+                case INT:
+                    sink.putData(chanName, (int) num);
+                    break;
+                case SHORT:
+                    sink.putData(chanName, (short) num);
+                    break;
+                case STRING:
+                    sink.putData(chanName, (String) b.objs[i]);
+                    break;
+                case BYTES:
+                    sink.putData(chanName, (byte[]) b.objs[i]);
+                    break;
+            }
+        }
+    }
+
+    /**
+     * A batch of recorded calls, held in parallel arrays.
+     */
+    private static final class Batch {
+        final byte[] kinds;
+        final String[] chanNames;
+        final long[] nums;          // time, numeric values (floating point values as raw bits)
+        final Object[] objs;        // String and byte[] values
+        int size = 0;
+
+        Batch(int capacity) {
+            kinds = new byte[capacity];
+            chanNames = new String[capacity];
+            nums = new long[capacity];
+            objs = new Object[capacity];
+        }
+
+        void clear() {
+            Arrays.fill(objs, 0, size, null);
+            size = 0;
+        }
+    }
+}
@@ -0,0 +1,144 @@
+/*
+Copyright 2017 Erigo Technologies LLC
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+import hdf.hdf5lib.H5;
+import hdf.hdf5lib.HDF5Constants;
+import hdf.hdf5lib.callbacks.H5A_iterate_cb;
+import hdf.hdf5lib.callbacks.H5A_iterate_t;
+import hdf.hdf5lib.structs.H5A_info_t;
+import hdf.object.Attribute;
+import hdf.object.Datatype;
+import hdf.object.h5.H5File;
+
+import java.io.StringWriter;
+
+import javax.json.Json;
+import javax.json.stream.JsonGenerator;
+import javax.json.stream.JsonGeneratorFactory;
+
+/**
+ * Convert all the attributes of an HDF5 object to a JSON array of {"name", "value", "type"} objects.
+ *
+ * The attributes of an object are visited in one H5Aiterate traversal (in name order); each is opened by name,
+ * read with H5File.readAttribute() and written straight to a streaming JsonGenerator, so no intermediate
+ * attribute list or JSON object tree is built.  The generator factory and the output buffer are created once and
+ * reused for every object, so one AttributeJsonWriter should be used for the whole file.
+ */
+class AttributeJsonWriter {
+    private final JsonGeneratorFactory generatorFactory = Json.createGeneratorFactory(null);
+    private final StringWriter buffer = new StringWriter();
+    private JsonGenerator generator = null;           // generator for the object currently being converted
+    private Exception iterateException = null;        // error thrown while visiting an attribute
+    private int numAttributes = 0;                    // number of attributes written for the current object
+
+    private final H5A_iterate_cb visitor = new H5A_iterate_cb() {
+        public int callback(long locID, String name, H5A_info_t info, H5A_iterate_t opData) {
+            try {
+                writeAttribute(locID, name);
+            } catch (Exception e) {
+                iterateException = e;
+                return -1;  // stop the iteration
+            }
+            return 0;
+        }
+    };
+
+    /**
+     * Return the attributes of the given HDF5 object as a JSON array string.
+     *
+     * @param objID  the HDF5 object (file, group or dataset) whose attributes we want
+     */
+    public String toJson(long objID) throws Exception {
+        ConversionEvents.Attributes event = new ConversionEvents.Attributes();
+        event.begin();
+        buffer.getBuffer().setLength(0);
+        generator = generatorFactory.createGenerator(buffer);
+        iterateException = null;
+        numAttributes = 0;
+        try {
+            generator.writeStartArray();
+            H5.H5Aiterate(objID, HDF5Constants.H5_INDEX_NAME, HDF5Constants.H5_ITER_INC, 0, visitor, null);
+            if (iterateException != null) {
+                throw iterateException;
+            }
+            generator.writeEnd();
+        } finally {
+            generator.close();
+            generator = null;
+        }
+        String json = buffer.toString();
+        if (event.shouldCommit()) {
+            event.end(H5.H5Iget_name(objID), numAttributes, json.length());
+        }
+        return json;
+    }
+
+    /**
+     * Read one attribute and append it to the current JSON array.
+     */
+    private void writeAttribute(long locID, String name) throws Exception {
+        Attribute attr;
+        long aid = H5.H5Aopen(locID, name, HDF5Constants.H5P_DEFAULT);
+        try {
+            attr = H5File.readAttribute(aid, true);
+        } finally {
+            H5.H5Aclose(aid);
+        }
+        String valueStr = attr.toString(",");
+        generator.writeStartObject().write("name", attr.getName());
+        if (valueStr == null) {
+            generator.writeNull("value");
+        } else {
+            generator.write("value", valueStr);
+        }
+        generator.write("type", getTypeName(attr.getType().getDatatypeClass())).writeEnd();
+        ++numAttributes;
+    }
+
+    /**
+     * Return the name we use in the JSON output for the given Datatype class.
+     */
+    private static String getTypeName(int datatypeClass) {
+        switch (datatypeClass) {
+            case Datatype.CLASS_INTEGER:
+                return "INTEGER";
+            case Datatype.CLASS_FLOAT:
+                return "FLOAT";
+            case Datatype.CLASS_CHAR:
+                return "CHAR";
+            case Datatype.CLASS_STRING:
+                return "STRING";
+            case Datatype.CLASS_BITFIELD:
+                return "BITFIELD";
+            case Datatype.CLASS_OPAQUE:
+                return "OPAQUE";
+            case Datatype.CLASS_COMPOUND:
+                return "COMPOUND";
+            case Datatype.CLASS_REFERENCE:
+                return "REFERENCE";
+            case Datatype.CLASS_ENUM:
+                return "ENUM";
+            case Datatype.CLASS_VLEN:
+                return "VLEN";
+            case Datatype.CLASS_ARRAY:
+                return "ARRAY";
+            case Datatype.CLASS_TIME:
+                return "TIME";
+            default:
+                return "UNKNOWN";
+        }
+    }
+}
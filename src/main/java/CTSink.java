@@ -0,0 +1,66 @@
+/*
+Copyright 2017 Erigo Technologies LLC
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+import cycronix.ctlib.CTwriter;
+
+/**
+ * OutputSink which writes to a CloudTurbine source through a CTwriter.
+ *
+ * The CTwriter is configured (block mode, ZIP, flush interval, encryption...) by the caller.
+ */
+class CTSink implements OutputSink {
+    private final CTwriter ctw;
+
+    public CTSink(CTwriter ctwI) {
+        ctw = ctwI;
+    }
+
+    public void setTime(double time) throws Exception {
+        ctw.setTime(time);
+    }
+
+    public void putData(String chanName, double val) throws Exception {
+        ctw.putData(chanName, val);
+    }
+
+    public void putData(String chanName, float val) throws Exception {
+        ctw.putData(chanName, val);
+    }
+
+    public void putData(String chanName, long val) throws Exception {
+        ctw.putData(chanName, val);
+    }
+
+    public void putData(String chanName, int val) throws Exception {
+        ctw.putData(chanName, val);
+    }
+
+    public void putData(String chanName, short val) throws Exception {
+        ctw.putData(chanName, val);
+    }
+
+    public void putData(String chanName, String val) throws Exception {
+        ctw.putData(chanName, val);
+    }
+
+    public void putData(String chanName, byte[] val) throws Exception {
+        ctw.putData(chanName, val);
+    }
+
+    public void close() throws Exception {
+        ctw.close();
+    }
+}
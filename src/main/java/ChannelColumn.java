@@ -0,0 +1,318 @@
+/*
+Copyright 2017 Erigo Technologies LLC
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.ShortBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * A column of decoded values for one channel.
+ *
+ * Values are kept in a primitive array sized to the number of rows in the Dataset, so decoding a record
+ * buffer into a column doesn't box each value.  One column is created for each Compound member we export
+ * (including the "time" member); all the columns from one Dataset share the same row index.
+ *
+ * Create instances using the static create() methods; the concrete subclass is chosen from the member type
+ * string (for example "double" or "unsigned short"; see HDF5toCT.DatatypeElementSpecification).
+ *
+ * Unsigned integers are stored in a primitive array of their original width, holding the raw bits; values are
+ * only widened, one at a time, when they are fetched or written.  Since CT has no unsigned types, "unsigned short"
+ * is written as ".i32", "unsigned int" as ".i64" and "unsigned long" as ASCII decimal ".num" (which keeps values
+ * of 2^63 and above exact).
+ *
+ * String members are written to ".txt" channels.  Fixed-length strings are copied in bulk from the record buffer
+ * and only turned into a String when written; variable-length strings are filled in using VLStringColumn.setStrings().
+ *
+ * Array members are kept as one packed little-endian (CT byte order) block per row and written to CT as binary
+ * data with the suffix of the element type; see ArrayColumn.
+ *
+ * Columns of numeric scalar members are NumericColumns (see NumericColumn.create()); only they can be read back
+ * as numbers, for the time index, decimation and deadbands.
+ */
+abstract class ChannelColumn {
+    protected final String chanName;   // CT channel name, without the type suffix
+    protected final String type;       // member type; see HDF5toCT.DatatypeElementSpecification
+    protected final int offset;        // byte offset of this member within one Compound element
+
+    protected ChannelColumn(String chanNameI, String typeI, int offsetI) {
+        chanName = chanNameI;
+        type = typeI;
+        offset = offsetI;
+    }
+
+    /**
+     * Create a new column.
+     *
+     * @param chanNameI  CT channel name (without the type suffix)
+     * @param typeI      member type, such as "double" or "unsigned int"
+     * @param offsetI    byte offset of the member within one Compound element
+     * @param nrows      number of rows the column must hold
+     * @return           the new column, or null if the type isn't supported
+     */
+    public static ChannelColumn create(String chanNameI, String typeI, int offsetI, int nrows) {
+        if (typeI.equals("vlstring")) {
+            return new VLStringColumn(chanNameI, typeI, nrows);
+        }
+        return NumericColumn.create(chanNameI, typeI, offsetI, nrows);
+    }
+
+    /**
+     * Can Array members with elements of the given type be stored in an ArrayColumn?
+     */
+    public static boolean isArrayTypeSupported(String baseTypeI) {
+        return ArrayColumn.getSuffix(baseTypeI) != null;
+    }
+
+    /**
+     * Create a new column for an Array member.
+     *
+     * @param chanNameI  CT channel name (without the type suffix)
+     * @param baseTypeI  type of the array elements, such as "double" or "unsigned short"
+     * @param offsetI    byte offset of the member within one Compound element
+     * @param arrayLen   number of elements in each array
+     * @param nrows      number of rows the column must hold
+     * @return           the new column, or null if the element type isn't supported
+     */
+    public static ChannelColumn createArray(String chanNameI, String baseTypeI, int offsetI, int arrayLen, int nrows) {
+        if (!isArrayTypeSupported(baseTypeI)) {
+            return null;
+        }
+        return new ArrayColumn(chanNameI, baseTypeI, offsetI, arrayLen, nrows);
+    }
+
+    /**
+     * Create a new column for a fixed-length string member.
+     *
+     * @param chanNameI  CT channel name (without the ".txt" suffix)
+     * @param offsetI    byte offset of the member within one Compound element
+     * @param strSize    size in bytes of the string member
+     * @param bSpacePad  is the string padded with spaces (true) or with nulls (false)?
+     * @param bUTF8      is the string encoded in UTF-8 (true) or ASCII (false)?
+     * @param nrows      number of rows the column must hold
+     */
+    public static ChannelColumn createString(String chanNameI, int offsetI, int strSize, boolean bSpacePad, boolean bUTF8, int nrows) {
+        return new StringColumn(chanNameI, offsetI, strSize, bSpacePad, bUTF8 ? StandardCharsets.UTF_8 : StandardCharsets.US_ASCII, nrows);
+    }
+
+    /**
+     * Return the size of a byte buffer holding nrows rows of rowBytes bytes each.
+     *
+     * @throws IllegalArgumentException  if the buffer would be too large for a Java array
+     */
+    protected static int getBufferSize(String chanNameI, int nrows, long rowBytes) {
+        long size = nrows * rowBytes;
+        if ( (rowBytes > Integer.MAX_VALUE) || (size > Integer.MAX_VALUE) ) {
+            throw new IllegalArgumentException("Channel \"" + chanNameI + "\" is too large to hold in memory: " + nrows + " rows of " + rowBytes + " bytes");
+        }
+        return (int) size;
+    }
+
+    public String getChanName() {
+        return chanName;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    /**
+     * Decode this column's member from the Compound element which starts at byte index recordStart of the
+     * given buffer and store it at the given row.  The buffer's byte order must already be set.
+     */
+    public abstract void decode(ByteBuffer bb, int recordStart, int row);
+
+    /**
+     * Write the value at the given row to the given sink (for example, CT).
+     */
+    public abstract void putData(OutputSink sink, int row) throws Exception;
+
+    static final class StringColumn extends ChannelColumn {
+        private final byte[] vals;          // raw bytes of all strings, strSize bytes per row
+        private final int strSize;
+        private final boolean bSpacePad;
+        private final Charset charset;
+
+        StringColumn(String chanNameI, int offsetI, int strSizeI, boolean bSpacePadI, Charset charsetI, int nrows) {
+            super(chanNameI, "string", offsetI);
+            strSize = strSizeI;
+            bSpacePad = bSpacePadI;
+            charset = charsetI;
+            vals = new byte[getBufferSize(chanNameI, nrows, strSize)];
+        }
+
+        public void decode(ByteBuffer bb, int recordStart, int row) {
+            System.arraycopy(bb.array(), bb.arrayOffset() + recordStart + offset, vals, row * strSize, strSize);
+        }
+
+        // Return the string at the given row, without its padding
+        public String getString(int row) {
+            int start = row * strSize;
+            int len = 0;
+            if (bSpacePad) {
+                len = strSize;
+                while ( (len > 0) && (vals[start + len - 1] == ' ') ) {
+                    --len;
+                }
+            } else {
+                while ( (len < strSize) && (vals[start + len] != 0) ) {
+                    ++len;
+                }
+            }
+            return new String(vals, start, len, charset);
+        }
+
+        public void putData(OutputSink sink, int row) throws Exception {
+            sink.putData(chanName + ".txt", getString(row));
+        }
+    }
+
+    static final class VLStringColumn extends ChannelColumn {
+        private final String[] vals;
+
+        VLStringColumn(String chanNameI, String typeI, int nrows) {
+            super(chanNameI, typeI, -1);
+            vals = new String[nrows];
+        }
+
+        // Variable-length strings aren't in the record buffer; see setStrings()
+        public void decode(ByteBuffer bb, int recordStart, int row) {
+        }
+
+        /**
+         * Store variable-length strings which were read separately from the record buffer.
+         *
+         * @param strs       the strings
+         * @param firstRow   row index at which to store strs[0]
+         * @param numRows    number of strings to store
+         */
+        public void setStrings(String[] strs, int firstRow, int numRows) {
+            System.arraycopy(strs, 0, vals, firstRow, numRows);
+        }
+
+        public void putData(OutputSink sink, int row) throws Exception {
+            String val = vals[row];
+            sink.putData(chanName + ".txt", (val == null) ? "" : val);
+        }
+    }
+
+    /**
+     * Column for an Array member; each row holds a whole array, written to CT as one binary block.
+     *
+     * Arrays are copied out of the record buffer with bulk ByteBuffer views into a packed little-endian block.
+     * Unsigned 16 and 32-bit elements are widened to the next larger signed type as they are copied, since CT has
+     * no unsigned types; arrays of unsigned 64-bit elements aren't supported.
+     */
+    static final class ArrayColumn extends ChannelColumn {
+        private static final boolean NATIVE_LITTLE_ENDIAN = (ByteOrder.nativeOrder() == ByteOrder.LITTLE_ENDIAN);
+
+        private final byte[] vals;          // packed little-endian arrays, rowBytes bytes per row
+        private final int arrayLen;
+        private final int rowBytes;         // size of one array in CT
+        private final int srcBytes;         // size of one array in the record buffer
+        private final String suffix;
+
+        ArrayColumn(String chanNameI, String baseTypeI, int offsetI, int arrayLenI, int nrows) {
+            super(chanNameI, baseTypeI, offsetI);
+            arrayLen = arrayLenI;
+            suffix = getSuffix(baseTypeI);
+            // Elements are never narrowed, so srcBytes fits in an int whenever rowBytes does
+            long rowBytesL = (long) arrayLen * getWordSize(suffix);
+            vals = new byte[getBufferSize(chanNameI, nrows, rowBytesL)];
+            rowBytes = (int) rowBytesL;
+            srcBytes = arrayLen * getSourceWordSize(baseTypeI);
+        }
+
+        // Return the CT suffix for arrays of the given element type, or null if not supported
+        static String getSuffix(String baseTypeI) {
+            if (baseTypeI.equals("double")) {
+                return ".f64";
+            } else if (baseTypeI.equals("float")) {
+                return ".f32";
+            } else if (baseTypeI.equals("long") || baseTypeI.equals("unsigned int")) {
+                return ".i64";
+            } else if (baseTypeI.equals("int") || baseTypeI.equals("unsigned short")) {
+                return ".i32";
+            } else if (baseTypeI.equals("short")) {
+                return ".i16";
+            }
+            return null;
+        }
+
+        private static int getWordSize(String suffixI) {
+            return Integer.parseInt(suffixI.substring(2)) / 8;
+        }
+
+        private static int getSourceWordSize(String baseTypeI) {
+            if (baseTypeI.equals("double") || baseTypeI.equals("long")) {
+                return 8;
+            } else if (baseTypeI.equals("float") || baseTypeI.endsWith("int")) {
+                return 4;
+            }
+            return 2;
+        }
+
+        public void decode(ByteBuffer bb, int recordStart, int row) {
+            int srcStart = recordStart + offset;
+            boolean bWiden = type.startsWith("unsigned");
+            if (!bWiden && NATIVE_LITTLE_ENDIAN && (bb.order() == ByteOrder.LITTLE_ENDIAN)) {
+                System.arraycopy(bb.array(), bb.arrayOffset() + srcStart, vals, row * rowBytes, rowBytes);
+                return;
+            }
+            ByteBuffer src = bb.duplicate();
+            src.limit(srcStart + srcBytes);
+            src.position(srcStart);
+            src = src.slice().order(bb.order());
+            ByteBuffer dst = ByteBuffer.wrap(vals, row * rowBytes, rowBytes).slice().order(ByteOrder.LITTLE_ENDIAN);
+            if (type.equals("double")) {
+                dst.asDoubleBuffer().put(src.asDoubleBuffer());
+            } else if (type.equals("float")) {
+                dst.asFloatBuffer().put(src.asFloatBuffer());
+            } else if (type.equals("long")) {
+                dst.asLongBuffer().put(src.asLongBuffer());
+            } else if (type.equals("int")) {
+                dst.asIntBuffer().put(src.asIntBuffer());
+            } else if (type.equals("short")) {
+                dst.asShortBuffer().put(src.asShortBuffer());
+            } else if (type.equals("unsigned int")) {
+                IntBuffer srcView = src.asIntBuffer();
+                LongBuffer dstView = dst.asLongBuffer();
+                for (int k = 0; k < arrayLen; ++k) {
+                    dstView.put(k, srcView.get(k) & 0xFFFFFFFFL);
+                }
+            } else if (type.equals("unsigned short")) {
+                ShortBuffer srcView = src.asShortBuffer();
+                IntBuffer dstView = dst.asIntBuffer();
+                for (int k = 0; k < arrayLen; ++k) {
+                    dstView.put(k, srcView.get(k) & 0xFFFF);
+                }
+            }
+        }
+
+        public int getArrayLength() {
+            return arrayLen;
+        }
+
+        public void putData(OutputSink sink, int row) throws Exception {
+            int start = row * rowBytes;
+            sink.putData(chanName + suffix, Arrays.copyOfRange(vals, start, start + rowBytes));
+        }
+    }
+}
@@ -0,0 +1,316 @@
+/*
+Copyright 2017 Erigo Technologies LLC
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.json.Json;
+import javax.json.JsonArrayBuilder;
+import javax.json.JsonWriter;
+import javax.json.stream.JsonGenerator;
+
+/**
+ * OutputSink which writes each channel as a pair of little-endian primitive column files, for analytics jobs which
+ * memory-map the output rather than reading CloudTurbine folders.
+ *
+ * Channel "<name>.<suffix>" is written to the folder "<outputFolder>/<name>": "time.f64" holds the time (seconds
+ * since epoch, as a double) of each sample and "value.<suffix>" holds the values.  Numeric values are fixed-width
+ * (f64, f32, i64, i32 or i16); strings (".txt" and ".num" channels) and binary blocks (eg, arrays) are written as
+ * variable-length records, each a 4-byte length followed by that many bytes.  Row i of the time file goes with
+ * record i of the value file.
+ *
+ * Each file is written through a FileChannel from its own buffer, so the output is a series of large sequential
+ * writes.  Since a Dataset may have thousands of channels, neither the open files nor the buffers grow with the
+ * number of channels: at most MAX_OPEN_FILES FileChannels are held open (the least recently written is closed, and
+ * reopened for append when next needed), and the buffers share a budget of BUFFER_BUDGET_BYTES (each buffer gets
+ * an equal share, between MIN_BUFFER_BYTES and MAX_BUFFER_BYTES, and shrinks to its share when drained).  When the
+ * sink is closed, a small schema header, "schema.json", is written to the output folder; it lists each channel's
+ * files, value type, width and number of rows.
+ */
+class ColumnarSink implements OutputSink {
+    private static final int MAX_OPEN_FILES = 128;                   // most column files held open at once
+    private static final long BUFFER_BUDGET_BYTES = 16 * 1024 * 1024; // buffered bytes shared by all column files
+    private static final int MAX_BUFFER_BYTES = 64 * 1024;           // largest buffer of one column file
+    private static final int MIN_BUFFER_BYTES = 4 * 1024;            // smallest buffer of one column file
+    private static final String TIME_FILE_NAME = "time.f64";
+    private static final String SCHEMA_FILE_NAME = "schema.json";
+
+    private final File outputFolder;
+    private final Map<String, ChannelFiles> channels = new LinkedHashMap<String, ChannelFiles>();
+    // Column files with an open FileChannel, least recently written first
+    private final Map<ColumnFile, Boolean> openFiles = new LinkedHashMap<ColumnFile, Boolean>(16, 0.75f, true);
+    private double time = 0.0;
+
+    public ColumnarSink(String outputFolderI) throws IOException {
+        outputFolder = new File(outputFolderI);
+        if (!outputFolder.isDirectory() && !outputFolder.mkdirs()) {
+            throw new IOException("Unable to create output folder " + outputFolder);
+        }
+    }
+
+    public void setTime(double timeI) {
+        time = timeI;
+    }
+
+    public void putData(String chanName, double val) throws IOException {
+        getChannel(chanName, "f64", 8).valueFile.room(8).putDouble(val);
+    }
+
+    public void putData(String chanName, float val) throws IOException {
+        getChannel(chanName, "f32", 4).valueFile.room(4).putFloat(val);
+    }
+
+    public void putData(String chanName, long val) throws IOException {
+        getChannel(chanName, "i64", 8).valueFile.room(8).putLong(val);
+    }
+
+    public void putData(String chanName, int val) throws IOException {
+        getChannel(chanName, "i32", 4).valueFile.room(4).putInt(val);
+    }
+
+    public void putData(String chanName, short val) throws IOException {
+        getChannel(chanName, "i16", 2).valueFile.room(2).putShort(val);
+    }
+
+    public void putData(String chanName, String val) throws IOException {
+        getChannel(chanName, "string", -1).valueFile.putRecord(val.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public void putData(String chanName, byte[] val) throws IOException {
+        getChannel(chanName, "bytes", -1).valueFile.putRecord(val);
+    }
+
+    public void close() throws IOException {
+        JsonArrayBuilder channelsBuilder = Json.createArrayBuilder();
+        IOException closeException = null;
+        for (ChannelFiles chan : channels.values()) {
+            try {
+                chan.close();
+            } catch (IOException e) {
+                closeException = e;
+            }
+            channelsBuilder.add(Json.createObjectBuilder()
+                    .add("name", chan.chanName)
+                    .add("type", chan.valueType)
+                    .add("valueBytes", chan.valueBytes)
+                    .add("rows", chan.numRows)
+                    .add("timeFile", chan.folderName + "/" + TIME_FILE_NAME)
+                    .add("valueFile", chan.folderName + "/" + chan.valueFileName));
+        }
+        channels.clear();
+        openFiles.clear();
+        if (closeException != null) {
+            throw closeException;
+        }
+
+        OutputStream out = new FileOutputStream(new File(outputFolder, SCHEMA_FILE_NAME));
+        try {
+            JsonWriter jsonWriter = Json.createWriterFactory(Collections.singletonMap(JsonGenerator.PRETTY_PRINTING, true)).createWriter(out, StandardCharsets.UTF_8);
+            jsonWriter.writeObject(Json.createObjectBuilder()
+                    .add("byteOrder", "LITTLE_ENDIAN")
+                    .add("timeType", "f64")
+                    .add("timeUnits", "seconds since epoch")
+                    .add("variableRecord", "4-byte length followed by the bytes")
+                    .add("channels", channelsBuilder)
+                    .build());
+            jsonWriter.close();
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Return the files of the given channel, creating them the first time a channel is written.
+     */
+    private ChannelFiles getChannel(String chanName, String valueType, int valueBytes) throws IOException {
+        ChannelFiles chan = channels.get(chanName);
+        if (chan == null) {
+            chan = new ChannelFiles(chanName, valueType, valueBytes);
+            channels.put(chanName, chan);
+        } else if (!chan.valueType.equals(valueType)) {
+            throw new IOException("Channel " + chanName + " was written as " + chan.valueType + ", not " + valueType);
+        }
+        chan.timeFile.room(8).putDouble(time);
+        ++chan.numRows;
+        return chan;
+    }
+
+    /**
+     * Return the size of buffer each column file gets: an equal share of BUFFER_BUDGET_BYTES.
+     */
+    private int getBufferShare() {
+        long share = BUFFER_BUDGET_BYTES / Math.max(2 * channels.size(), 1);
+        return (int) Math.max(MIN_BUFFER_BYTES, Math.min(MAX_BUFFER_BYTES, share));
+    }
+
+    /**
+     * The time and value files of one channel.
+     */
+    private final class ChannelFiles {
+        final String chanName;
+        final String valueType;
+        final int valueBytes;       // -1 for variable-length records
+        final String folderName;    // relative to outputFolder
+        final String valueFileName;
+        final ColumnFile timeFile;
+        final ColumnFile valueFile;
+        long numRows = 0;
+
+        ChannelFiles(String chanNameI, String valueTypeI, int valueBytesI) throws IOException {
+            chanName = chanNameI;
+            valueType = valueTypeI;
+            valueBytes = valueBytesI;
+            // The suffix of the CT channel name becomes the suffix of the value file
+            int slashIdx = chanName.lastIndexOf('/');
+            int dotIdx = chanName.lastIndexOf('.');
+            if (dotIdx > slashIdx + 1) {
+                folderName = chanName.substring(0, dotIdx);
+                valueFileName = "value" + chanName.substring(dotIdx);
+            } else {
+                folderName = chanName;
+                valueFileName = "value." + valueType;
+            }
+            File folder = new File(outputFolder, folderName);
+            if (!folder.isDirectory() && !folder.mkdirs()) {
+                throw new IOException("Unable to create output folder " + folder);
+            }
+            timeFile = new ColumnFile(new File(folder, TIME_FILE_NAME));
+            valueFile = new ColumnFile(new File(folder, valueFileName));
+        }
+
+        void close() throws IOException {
+            try {
+                timeFile.close();
+            } finally {
+                valueFile.close();
+            }
+        }
+    }
+
+    /**
+     * One column file and its buffer.  The FileChannel is only open while the file is in openFiles; the file is
+     * created (truncating any old file) the first time it's drained and appended to after that.
+     */
+    private final class ColumnFile {
+        final File file;
+        ByteBuffer buf;
+        FileChannel channel = null;
+        boolean bCreated = false;
+
+        ColumnFile(File fileI) {
+            file = fileI;
+            buf = ByteBuffer.allocate(getBufferShare()).order(ByteOrder.LITTLE_ENDIAN);
+        }
+
+        /**
+         * Return the buffer, with room for a value of the given size.
+         */
+        ByteBuffer room(int size) throws IOException {
+            if (buf.remaining() < size) {
+                drain();
+            }
+            return buf;
+        }
+
+        /**
+         * Write a variable-length record: a 4-byte length followed by the bytes.
+         */
+        void putRecord(byte[] val) throws IOException {
+            room(4).putInt(val.length);
+            if (val.length > buf.remaining()) {
+                drain();
+                if (val.length > buf.capacity()) {
+                    // too big to buffer; write it straight to the file
+                    write(ByteBuffer.wrap(val));
+                    return;
+                }
+            }
+            buf.put(val);
+        }
+
+        void drain() throws IOException {
+            buf.flip();
+            write(buf);
+            int share = getBufferShare();
+            if (buf.capacity() > share) {
+                buf = ByteBuffer.allocate(share).order(ByteOrder.LITTLE_ENDIAN);
+            } else {
+                buf.clear();
+            }
+        }
+
+        private void write(ByteBuffer bb) throws IOException {
+            if (!bb.hasRemaining() && bCreated) {
+                return;
+            }
+            FileChannel ch = open();
+            while (bb.hasRemaining()) {
+                ch.write(bb);
+            }
+        }
+
+        /**
+         * Return the open FileChannel, opening it (and closing the least recently written file if too many are
+         * open) if needed.
+         */
+        private FileChannel open() throws IOException {
+            if (channel == null) {
+                if (bCreated) {
+                    channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+                } else {
+                    channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+                    bCreated = true;
+                }
+            }
+            openFiles.put(this, Boolean.TRUE);
+            if (openFiles.size() > MAX_OPEN_FILES) {
+                Iterator<ColumnFile> it = openFiles.keySet().iterator();
+                ColumnFile eldest = it.next();
+                it.remove();
+                eldest.closeChannel();
+            }
+            return channel;
+        }
+
+        private void closeChannel() throws IOException {
+            if (channel != null) {
+                FileChannel ch = channel;
+                channel = null;
+                ch.close();
+            }
+        }
+
+        void close() throws IOException {
+            try {
+                drain();
+            } finally {
+                openFiles.remove(this);
+                closeChannel();
+            }
+        }
+    }
+}
@@ -0,0 +1,241 @@
+/*
+Copyright 2017 Erigo Technologies LLC
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+
+import cycronix.ctlib.CTwriter;
+
+import java.io.IOException;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Java Flight Recorder events for the stages of a conversion, so they show up on the JFR timeline next to the
+ * JNI and GC activity: opening and reading each Dataset, decoding the records, sorting by time, extracting
+ * attributes and each CTwriter flush and block write.
+ *
+ * Usage follows the JFR idiom: create the event, call begin() before the stage and end(...) after it.  When no
+ * recording is running (or the event is disabled) begin() and end(...) do nothing; end(...) only fills in the
+ * fields when the event will actually be committed, so the cost when recording is off is an allocation that the
+ * JIT normally eliminates.  Stack traces are turned off for all events to keep the cost low when recording is on.
+ *
+ * Record with, for example:
+ *
+ *     java -XX:StartFlightRecording=filename=convert.jfr -jar HDF5toCT.jar ...
+ *
+ * The events are in the "HDF5toCT" category; jdk.jfr is available in Java 11 and later (and 8u272 and later).
+ */
+class ConversionEvents {
+
+    private ConversionEvents() {
+        // only holds the event classes
+    }
+
+    @Name("HDF5toCT.DatasetOpen")
+    @Label("Dataset Open")
+    @Description("H5Dopen of a Dataset")
+    @Category({ "HDF5toCT", "HDF5" })
+    @StackTrace(false)
+    static class DatasetOpen extends Event {
+        @Label("Dataset")
+        String dataset;
+
+        void end(String datasetI) {
+            if (shouldCommit()) {
+                dataset = datasetI;
+                commit();
+            }
+        }
+    }
+
+    @Name("HDF5toCT.DatasetRead")
+    @Label("Dataset Read")
+    @Description("H5Dread of one block of rows of a Dataset")
+    @Category({ "HDF5toCT", "HDF5" })
+    @StackTrace(false)
+    static class DatasetRead extends Event {
+        @Label("Dataset")
+        String dataset;
+
+        @Label("First Row")
+        long firstRow;
+
+        @Label("Rows")
+        long rows;
+
+        @Label("Bytes")
+        @DataAmount
+        long bytes;
+
+        void end(String datasetI, long firstRowI, long rowsI, long bytesI) {
+            if (shouldCommit()) {
+                dataset = datasetI;
+                firstRow = firstRowI;
+                rows = rowsI;
+                bytes = bytesI;
+                commit();
+            }
+        }
+    }
+
+    @Name("HDF5toCT.Decode")
+    @Label("Decode")
+    @Description("Decoding of one block of rows of a Dataset into channel columns")
+    @Category({ "HDF5toCT", "Convert" })
+    @StackTrace(false)
+    static class Decode extends Event {
+        @Label("Dataset")
+        String dataset;
+
+        @Label("First Row")
+        long firstRow;
+
+        @Label("Rows")
+        long rows;
+
+        void end(String datasetI, long firstRowI, long rowsI) {
+            if (shouldCommit()) {
+                dataset = datasetI;
+                firstRow = firstRowI;
+                rows = rowsI;
+                commit();
+            }
+        }
+    }
+
+    @Name("HDF5toCT.Sort")
+    @Label("Sort")
+    @Description("Merge and sort of the rows of all Datasets by time")
+    @Category({ "HDF5toCT", "Convert" })
+    @StackTrace(false)
+    static class Sort extends Event {
+        @Label("Datasets")
+        int datasets;
+
+        @Label("Rows")
+        long rows;
+
+        void end(int datasetsI, long rowsI) {
+            if (shouldCommit()) {
+                datasets = datasetsI;
+                rows = rowsI;
+                commit();
+            }
+        }
+    }
+
+    @Name("HDF5toCT.Attributes")
+    @Label("Attribute Extraction")
+    @Description("Reading the attributes of an object and converting them to JSON")
+    @Category({ "HDF5toCT", "HDF5" })
+    @StackTrace(false)
+    static class Attributes extends Event {
+        @Label("Object")
+        String object;
+
+        @Label("Attributes")
+        int attributes;
+
+        @Label("JSON Length")
+        @DataAmount
+        long jsonBytes;
+
+        /**
+         * Commit the event; unlike the other events, the caller checks shouldCommit() first, so the object name
+         * is only looked up when the event is recorded.
+         */
+        void end(String objectI, int attributesI, long jsonBytesI) {
+            object = objectI;
+            attributes = attributesI;
+            jsonBytes = jsonBytesI;
+            commit();
+        }
+    }
+
+    @Name("HDF5toCT.CTFlush")
+    @Label("CT Flush")
+    @Description("CTwriter flush of the data buffered since the previous flush")
+    @Category({ "HDF5toCT", "CloudTurbine" })
+    @StackTrace(false)
+    static class CTFlush extends Event {
+        @Label("Source")
+        String source;
+
+        void end(String sourceI) {
+            if (shouldCommit()) {
+                source = sourceI;
+                commit();
+            }
+        }
+    }
+
+    @Name("HDF5toCT.CTBlockWrite")
+    @Label("CT Block Write")
+    @Description("CTwriter write of one file (a data block, or a ZIP of blocks) to the source folder")
+    @Category({ "HDF5toCT", "CloudTurbine" })
+    @StackTrace(false)
+    static class CTBlockWrite extends Event {
+        @Label("Path")
+        String path;
+
+        @Label("Bytes")
+        @DataAmount
+        long bytes;
+
+        void end(String pathI, long bytesI) {
+            if (shouldCommit()) {
+                path = pathI;
+                bytes = bytesI;
+                commit();
+            }
+        }
+    }
+
+    /**
+     * CTwriter which emits CTFlush and CTBlockWrite events.  Automatic flushes (see CTwriter.autoFlush()) and
+     * the final flush on close() all go through flush(), and every file the CTwriter writes goes through
+     * writeToStream(), so overriding those two methods covers all of the CTwriter's output.
+     */
+    static class TracedCTwriter extends CTwriter {
+        private final String source;
+
+        TracedCTwriter(String destinationFolder) throws IOException {
+            super(destinationFolder);
+            source = destinationFolder;
+        }
+
+        @Override
+        public synchronized void flush() throws IOException {
+            CTFlush event = new CTFlush();
+            event.begin();
+            super.flush();
+            event.end(source);
+        }
+
+        @Override
+        protected void writeToStream(String path, byte[] bdata) throws IOException {
+            CTBlockWrite event = new CTBlockWrite();
+            event.begin();
+            super.writeToStream(path, bdata);
+            event.end(path, bdata.length);
+        }
+    }
+}
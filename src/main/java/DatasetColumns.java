@@ -0,0 +1,129 @@
+/*
+Copyright 2017 Erigo Technologies LLC
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+import java.nio.ByteBuffer;
+import java.util.BitSet;
+
+/**
+ * All of the decoded data from one Dataset: a time column plus one column per exported channel.
+ *
+ * Every row shares the time found in timeColumn at the same row index; this lets one Dataset with many
+ * measurement members be decoded in a single pass over its record buffer and be written to CT as a group
+ * of channels with a common timestamp.
+ */
+class DatasetColumns {
+    private final String name;                  // full path of the Dataset in the HDF5 file
+    private final NumericColumn timeColumn;
+    private final ChannelColumn[] valueColumns;
+    private final int numRows;
+
+    public DatasetColumns(String nameI, NumericColumn timeColumnI, ChannelColumn[] valueColumnsI, int numRowsI) {
+        name = nameI;
+        timeColumn = timeColumnI;
+        valueColumns = valueColumnsI;
+        numRows = numRowsI;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public NumericColumn getTimeColumn() {
+        return timeColumn;
+    }
+
+    public ChannelColumn[] getValueColumns() {
+        return valueColumns;
+    }
+
+    public int getNumRows() {
+        return numRows;
+    }
+
+    /**
+     * Decode numRecords Compound elements from the given buffer, storing them starting at row firstRow.
+     *
+     * @param bb            buffer of Compound elements; byte order must already be set
+     * @param recordSize    size (in bytes) of one Compound element
+     * @param firstRow      row index at which to store the first decoded element
+     * @param numRecords    number of elements to decode
+     */
+    public void decode(ByteBuffer bb, int recordSize, int firstRow, int numRecords) {
+        for (int j = 0; j < numRecords; ++j) {
+            int recordStart = j * recordSize;
+            int row = firstRow + j;
+            timeColumn.decode(bb, recordStart, row);
+            for (ChannelColumn col : valueColumns) {
+                col.decode(bb, recordStart, row);
+            }
+        }
+    }
+
+    /**
+     * Copy numRows rows of a 2-D table block into the columns, storing them starting at row firstRow.  Column 0
+     * of the block holds time and column c (c = 1..N) holds the values for valueColumns[c-1]; all the columns of a
+     * table Dataset are NumericColumns.
+     *
+     * @param block       row-major primitive array of numRows x numCols values, as returned by H5ScalarDS.read()
+     * @param numCols     number of columns in each row of the block
+     * @param firstRow    row index at which to store the first row of the block
+     * @param numRows     number of rows in the block
+     */
+    public void decodeTable(Object block, int numCols, int firstRow, int numRows) {
+        timeColumn.decodeTable(block, numCols, 0, firstRow, numRows);
+        for (int col = 1; col < numCols; ++col) {
+            ((NumericColumn) valueColumns[col - 1]).decodeTable(block, numCols, col, firstRow, numRows);
+        }
+    }
+
+    /**
+     * Return the time at the given row.
+     */
+    public double getTime(int row) {
+        return timeColumn.getDouble(row);
+    }
+
+    /**
+     * Write the values from all channels at the given row, skipping samples dropped by a channel's deadband.  Each
+     * channel is written to its own sink, sinks[sinkOfColumn[c]] for valueColumns[c], so the channels of one wide
+     * Dataset can be split across writers.  The caller must have already set the sinks' time, and rows must be
+     * written in time order for the deadbands to work.
+     *
+     * @param blockEnds  null if no channel has a deadband; otherwise, blockEnds[s] holds the rows which are the first
+     *                   or last this Dataset writes to a block of sinks[s]; these are always written
+     */
+    public void putData(OutputSink[] sinks, int[] sinkOfColumn, int row, BitSet[] blockEnds) throws Exception {
+        for (int c = 0; c < valueColumns.length; ++c) {
+            int s = sinkOfColumn[c];
+            if ( (blockEnds != null) && (valueColumns[c] instanceof NumericColumn) && !((NumericColumn) valueColumns[c]).applyDeadband(row, blockEnds[s].get(row)) ) {
+                continue;
+            }
+            valueColumns[c].putData(sinks[s], row);
+        }
+    }
+
+    /**
+     * Does any channel have a deadband?
+     */
+    public boolean hasDeadband() {
+        for (ChannelColumn col : valueColumns) {
+            if ( (col instanceof NumericColumn) && ((NumericColumn) col).hasDeadband() ) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,135 @@
+/*
+Copyright 2017 Erigo Technologies LLC
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Reduce the decoded data from a Dataset to per-bucket aggregates, for a decimated preview of the data.
+ *
+ * Time is divided into fixed-width buckets, aligned to multiples of the bucket width in CT time (ie, after the
+ * base time has been added).  For each numeric channel, we compute the minimum, maximum, mean and count of the
+ * samples falling in each bucket; these are returned as a new DatasetColumns having four channels per source
+ * channel (named "<chan>_min", "<chan>_max", "<chan>_mean" and "<chan>_count") with one row per non-empty bucket,
+ * timestamped at the start of the bucket.  String and array channels aren't decimated and are dropped.
+ *
+ * Negative HDF5 times aren't written (see HDF5toCT), so samples at negative times are left out of the aggregates;
+ * since buckets are aligned in CT time, the first bucket may start before HDF5 time 0, in which case it is
+ * timestamped at 0 instead.
+ *
+ * Rows are visited in time order (a Dataset's rows are sorted with TimeIndex, which costs almost nothing if
+ * they're already in order), so each channel is aggregated in a single streaming pass over its column.
+ */
+class Decimator {
+    private final double interval;      // bucket width, in seconds
+    private final double baseTime;      // base time added to HDF5 times to get CT times
+
+    public Decimator(double intervalI, double baseTimeI) {
+        interval = intervalI;
+        baseTime = baseTimeI;
+    }
+
+    /**
+     * Decimate the given Dataset.
+     *
+     * @param datasetColumns  the full-rate data
+     * @return                the per-bucket aggregates, or null if the Dataset has no numeric channels or no
+     *                        samples at non-negative times
+     */
+    public DatasetColumns decimate(DatasetColumns datasetColumns) {
+        List<NumericColumn> srcColumns = new ArrayList<NumericColumn>();
+        for (ChannelColumn col : datasetColumns.getValueColumns()) {
+            if (col instanceof NumericColumn) {
+                srcColumns.add((NumericColumn) col);
+            } else {
+                System.err.println("\tdecimate: skipping non-numeric channel " + col.getChanName());
+            }
+        }
+        if (srcColumns.isEmpty()) {
+            return null;
+        }
+
+        // Time order of the rows; rows at negative times sort first and are skipped
+        TimeIndex timeIndex = new TimeIndex(Collections.singletonList(datasetColumns));
+        timeIndex.sort();
+        int firstRow = 0;
+        while ( (firstRow < timeIndex.size()) && (timeIndex.getTime(firstRow) < 0) ) {
+            ++firstRow;
+        }
+        if (firstRow > 0) {
+            System.err.println("\tdecimate: skipping " + firstRow + " samples with negative HDF5 timestamps");
+        }
+        int numRows = timeIndex.size() - firstRow;
+        if (numRows == 0) {
+            return null;
+        }
+
+        // First pass over time only: the bucket of each row in time order, and the number of buckets
+        long[] buckets = new long[numRows];
+        int numBuckets = 0;
+        for (int i = 0; i < numRows; ++i) {
+            buckets[i] = (long) Math.floor((baseTime + timeIndex.getTime(firstRow + i)) / interval);
+            if ( (i == 0) || (buckets[i] != buckets[i - 1]) ) {
+                ++numBuckets;
+            }
+        }
+        double[] bucketTimes = new double[numBuckets];
+        int b = -1;
+        for (int i = 0; i < numRows; ++i) {
+            if ( (i == 0) || (buckets[i] != buckets[i - 1]) ) {
+                // Only the first bucket can start before HDF5 time 0
+                bucketTimes[++b] = Math.max(0.0, buckets[i] * interval - baseTime);
+            }
+        }
+
+        // One streaming pass per channel
+        ChannelColumn[] dstColumns = new ChannelColumn[4 * srcColumns.size()];
+        int c = 0;
+        for (NumericColumn col : srcColumns) {
+            double[] minVals = new double[numBuckets];
+            double[] maxVals = new double[numBuckets];
+            double[] meanVals = new double[numBuckets];
+            int[] counts = new int[numBuckets];
+            b = -1;
+            double sum = 0.0;
+            for (int i = 0; i < numRows; ++i) {
+                double val = col.getDouble(timeIndex.getRow(firstRow + i, 0));
+                if ( (i == 0) || (buckets[i] != buckets[i - 1]) ) {
+                    if (b >= 0) {
+                        meanVals[b] = sum / counts[b];
+                    }
+                    ++b;
+                    minVals[b] = val;
+                    maxVals[b] = val;
+                    sum = 0.0;
+                }
+                minVals[b] = Math.min(minVals[b], val);
+                maxVals[b] = Math.max(maxVals[b], val);
+                sum += val;
+                ++counts[b];
+            }
+            meanVals[b] = sum / counts[b];
+            String chanName = col.getChanName();
+            dstColumns[c++] = new NumericColumn.DoubleColumn(chanName + "_min", minVals);
+            dstColumns[c++] = new NumericColumn.DoubleColumn(chanName + "_max", maxVals);
+            dstColumns[c++] = new NumericColumn.DoubleColumn(chanName + "_mean", meanVals);
+            dstColumns[c++] = new NumericColumn.IntColumn(chanName + "_count", counts);
+        }
+        NumericColumn timeColumn = new NumericColumn.DoubleColumn("time", bucketTimes);
+        return new DatasetColumns(datasetColumns.getName(), timeColumn, dstColumns, numBuckets);
+    }
+}
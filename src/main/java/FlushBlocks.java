@@ -0,0 +1,54 @@
+/*
+Copyright 2017 Erigo Technologies LLC
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+/**
+ * Follows how a CTwriter with auto-flush divides the data put to it into blocks, so that the deadband can keep the
+ * first and last sample each channel writes to each block (see HDF5toCT.writeData()).
+ *
+ * As in CTwriter, times are compared in integer units (msec, or usec with hi-res time): data put at a time at least
+ * the flush interval after the start of the current block starts a new block.  Sinks which don't write blocks (eg,
+ * ColumnarSink) are treated the same way, so the output of a deadband doesn't depend on the kind of sink.
+ */
+class FlushBlocks {
+    private final long timeFactor;      // CTwriter time units per second
+    private final long flushUnits;      // flush interval, in CTwriter time units
+    private long blockStart = 0;        // start time of the current block, in CTwriter time units
+    private int blockNum = -1;          // number of the current block; -1 before any data is put
+
+    /**
+     * @param flushInterval  CTwriter auto-flush interval (sec)
+     * @param bHiResTime     does the CTwriter use hi-res (usec) time?
+     */
+    public FlushBlocks(double flushInterval, boolean bHiResTime) {
+        timeFactor = bHiResTime ? 1000000L : 1000L;
+        long units = (long) (flushInterval * timeFactor);
+        // CTwriter takes an interval of 0 to mean "never flush"
+        flushUnits = (units > 0) ? units : Long.MAX_VALUE;
+    }
+
+    /**
+     * Data is put at the given CT time (which mustn't be earlier than the time of the previous call); return the
+     * number of the block it goes into.  Blocks are numbered from 0.
+     */
+    public int put(double ctTime) {
+        long time = (long) (ctTime * timeFactor);
+        if ( (blockNum < 0) || (time - blockStart >= flushUnits) ) {
+            ++blockNum;
+            blockStart = time;
+        }
+        return blockNum;
+    }
+}
@@ -14,9 +14,6 @@ See the License for the specific language governing permissions and
 limitations under the License.
 */
 
-import com.google.common.collect.Multimap;
-import com.google.common.collect.TreeMultimap;
-
 import cycronix.ctlib.*;
 
 import hdf.hdf5lib.H5;
@@ -24,19 +21,28 @@ import hdf.hdf5lib.HDF5Constants;
 import hdf.hdf5lib.structs.H5G_info_t;
 import hdf.hdf5lib.exceptions.HDF5Exception;
 import hdf.hdf5lib.structs.H5O_info_t;
-import hdf.object.Attribute;
-import hdf.object.Datatype;
+import hdf.object.FileFormat;
 import hdf.object.h5.H5File;
+import hdf.object.h5.H5ScalarDS;
 
 import java.io.File;
 import java.io.PrintWriter;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.regex.PatternSyntaxException;
 
 import javax.json.Json;
-import javax.json.JsonArrayBuilder;
-import javax.json.JsonBuilderFactory;
+import javax.json.JsonObject;
+import javax.json.JsonWriter;
+import javax.json.stream.JsonGenerator;
 
 import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.CommandLineParser;
@@ -63,17 +69,26 @@ import org.apache.commons.cli.ParseException;
  *
  *  Program limitations:
  *  --------------------
- *  (a) Program doesn't handle unsigned data; if the HDF5 file contains "unsigned int", this program simply
- *      stores this as an int (similar for "unsigned long" saved to a long and "unsigned short" saved to a short)
+ *  (a) CT has no unsigned types; "unsigned short" data is saved to CT as a 32-bit int, "unsigned int" as a
+ *      64-bit long and "unsigned long" as an ASCII number (".num" channel) so that values of 2^63 and above are
+ *      kept exact (see ChannelColumn)
  *  (b) HDF5 file is saved in "channel then time" format (similar to how files would be stored in a file system);
  *      for CloudTurbine efficiency, we switch this around and store the data in CT as "time then channel"; to
- *      accomplish this, ALL the data from every channel in the HDF5 file is read and stored in a large Map
- *      (using Google TreeMultimap); this is "brute force" and would run into problems with large datasets;
- *      see more notes on this below (search for "TreeMultimap").
+ *      accomplish this, ALL the data from every channel in the HDF5 file is read into memory (in primitive
+ *      arrays) and then sorted by time (see TimeIndex); this would run into problems with very large datasets;
+ *      see more notes on this below (search for "TimeIndex").
  *  (c) This is not a general purpose HDF5-to-CT translator.  Notes on the expected format of the data files:
  *      we read data from Datasets in the top parent group; this Dataset must use a Compound
  *      Datatype and the data in the Dataset must be a 1-D array of these Compound elements; each Compound element
- *      must contain 2 channels, named "time" and either "data" or "value".
+ *      must contain one member named "time" plus one or more numeric or string members.  If the only other member is
+ *      named "data" or "value", it is saved to a CT channel named after the Dataset; otherwise, each non-time
+ *      member is saved to its own CT channel, named "<dataset>/<member>".  String members are saved to CT text
+ *      (".txt") channels.  Array members (eg, a spectrum per timestamp) are saved as one packed little-endian
+ *      binary block per timestamp, with the suffix of the element type (eg, ".f64"); since each block holds a
+ *      whole array, these channels shouldn't be written in packed ("-p") mode.  Datasets may alternatively be a 2-D
+ *      table of numeric values (for example, float64) where column 0 holds time and columns 1..N hold channel
+ *      values; a table with one value column is saved to a channel named after the Dataset, otherwise column c
+ *      is saved to a channel named "<dataset>/col<c>".
  */
 public class HDF5toCT {
     private String inFileFullPathName = null;   // full path to the file
@@ -86,6 +101,21 @@ public class HDF5toCT {
     private boolean bPack = false;              // pack data?
     private boolean bHiResTime = false;         // use high resolution (microsecond) time for CT data?
     private boolean bAttributesToFile = false;  // Send attributes to a standard file rather than writing them out via CT?
+    private double decimateInterval = 0.0;      // if greater than 0, only write per-bucket min/max/mean/count using buckets of this width (sec)
+    private double defaultDeadband = -1.0;      // deadband applied to all numeric channels; negative means no deadband
+    private Map<String, Double> channelDeadbands = new HashMap<String, Double>();  // per-channel deadbands, keyed by channel name (without suffix)
+    private NameFilter datasetFilter = null;    // include/exclude filter on Dataset names, applied before a Dataset is opened
+    private NameFilter memberFilter = null;     // include/exclude filter on Compound member names, applied before data is read
+    private final AttributeJsonWriter attributeJsonWriter = new AttributeJsonWriter();  // reused for the attributes of every object
+    private boolean bScan = false;              // only print a JSON summary of the file's metadata (no data is read or written)?
+    private String repackFileName = null;       // if not null, only copy the top group to this HDF5 file, re-chunked and re-compressed
+    private long repackChunkRows = 0;           // rows per chunk in the repacked file; 0 keeps each Dataset's layout
+    private int repackDeflateLevel = -1;        // gzip level in the repacked file; negative keeps each Dataset's filters
+    private boolean bRepackOverwrite = false;   // may the repacked file replace an existing file?
+    private boolean bColumnar = false;          // write per-channel column files (see ColumnarSink) instead of CT?
+    private int numWriters = 1;                 // number of CT sources (each with its own CTwriter thread) the Datasets are split across
+    private long readBudgetBytes = 0;           // maximum bytes read from a Dataset at one time; 0 sizes it from the heap (see ReadWindowGovernor)
+    private ReadWindowGovernor readWindowGovernor = null;  // sizes the windows of rows read from each Dataset
 
     public static void main(String args[]) throws Exception {
         new HDF5toCT(args);
@@ -108,6 +138,9 @@ public class HDF5toCT {
         options.addOption("hrt", "hirestime", false, "Use high resolution (microsecond) time for CT data.");
         options.addOption("af", "attrtofile", false, "Write attributes to file (not standard CT output).");
         options.addOption("g", "gzip", false, "GZIP output data; data will also be ZIP'ed if this option is selected.");
+        options.addOption("scan", "scan", false, "Only print a JSON summary of the Datasets (types, rows, chunking, filters, estimated output size) to stdout; no data is read or written.");
+        options.addOption("ro", "repack-overwrite", false, "Allow \"-repack\" to replace an existing file (never the input file).");
+        options.addOption("col", "columnar", false, "Write the data as per-channel little-endian time and value column files plus a \"schema.json\" header (under \"ColumnarData\") instead of CT; attributes are still written to CT or file.");
         // Command line options that include a flag
         Option option = Option.builder("i")
                 .longOpt("infile")
@@ -134,6 +167,86 @@ public class HDF5toCT {
                 .desc("Encrypt the CT source using the given password.")
                 .build();
         options.addOption(option);
+        option = Option.builder("db")
+                .longOpt("deadband")
+                .argName("tolerance")
+                .hasArg()
+                .desc("Drop samples of numeric channels which are within this tolerance of the last sample written; 0 writes only changed values. The first and last sample each channel writes to each block (see \"-f\") are always written.")
+                .build();
+        options.addOption(option);
+        option = Option.builder("dbc")
+                .argName("channel=tolerance")
+                .hasArg()
+                .desc("Deadband for one channel (name without type suffix, eg \"Foo1/chan1\"); overrides \"-db\"; may be given more than once; a negative tolerance turns the deadband off for this channel.")
+                .build();
+        options.addOption(option);
+        option = Option.builder("id")
+                .longOpt("include-dataset")
+                .argName("pattern")
+                .hasArg()
+                .desc("Only convert Datasets (name under the top group, eg \"Foo*\") matching this glob, or regular expression if prefixed by \"re:\"; may be given more than once.")
+                .build();
+        options.addOption(option);
+        option = Option.builder("xd")
+                .longOpt("exclude-dataset")
+                .argName("pattern")
+                .hasArg()
+                .desc("Skip Datasets matching this glob, or regular expression if prefixed by \"re:\"; may be given more than once.")
+                .build();
+        options.addOption(option);
+        option = Option.builder("im")
+                .longOpt("include-member")
+                .argName("pattern")
+                .hasArg()
+                .desc("Only convert Compound members matching this glob, or regular expression if prefixed by \"re:\"; the time member is always read; may be given more than once.")
+                .build();
+        options.addOption(option);
+        option = Option.builder("xm")
+                .longOpt("exclude-member")
+                .argName("pattern")
+                .hasArg()
+                .desc("Skip Compound members matching this glob, or regular expression if prefixed by \"re:\"; may be given more than once.")
+                .build();
+        options.addOption(option);
+        option = Option.builder("repack")
+                .argName("hdf5file")
+                .hasArg()
+                .desc("Don't convert to CT; instead, copy the top group of the input file to the given new HDF5 file, streaming each Dataset and re-chunking/re-compressing it as given by \"-rc\" and \"-rz\"; the Dataset filters apply. An existing file is only replaced with \"-ro\".")
+                .build();
+        options.addOption(option);
+        option = Option.builder("rc")
+                .argName("rows")
+                .hasArg()
+                .desc("Rows (along time) per chunk in the repacked file; default keeps each Dataset's chunking.")
+                .build();
+        options.addOption(option);
+        option = Option.builder("rz")
+                .argName("level")
+                .hasArg()
+                .desc("Gzip level (0-9) in the repacked file; default keeps each Dataset's compression.")
+                .build();
+        options.addOption(option);
+        option = Option.builder("pw")
+                .longOpt("writers")
+                .argName("num")
+                .hasArg()
+                .desc("Split the Datasets across this many CT sources (\"part0\", \"part1\", ... under the top group's folder), each written by its own CTwriter on its own thread; with fewer Datasets than writers, the channels of each Dataset are split instead; default = " + numWriters + ".")
+                .build();
+        options.addOption(option);
+        option = Option.builder("rb")
+                .longOpt("readbudget")
+                .argName("MB")
+                .hasArg()
+                .desc("Maximum amount of data (MB) read from a Dataset at one time; windows are sized within this from the record and chunk sizes and shrink under GC pressure; default = 1/16 of the maximum heap, up to 64 MB.")
+                .build();
+        options.addOption(option);
+        option = Option.builder("dec")
+                .longOpt("decimate")
+                .argName("seconds")
+                .hasArg()
+                .desc("Only write the min, max, mean and count of each numeric channel per time bucket of the given width (sec); string and array channels are dropped.")
+                .build();
+        options.addOption(option);
 
         //
         // 2. Parse command line options
@@ -168,6 +281,8 @@ public class HDF5toCT {
         bPack = line.hasOption("p");
         bHiResTime = line.hasOption("hrt");
         bAttributesToFile = line.hasOption("af");
+        bScan = line.hasOption("scan");
+        bColumnar = line.hasOption("col");
         inFileFullPathName = line.getOptionValue("i");
         if ( (inFileFullPathName == null) || (inFileFullPathName.isEmpty()) ) {
             System.err.println("You must specify the name of an HDF5 file using the \"-i\" flag.");
@@ -190,6 +305,53 @@ public class HDF5toCT {
             System.exit(0);
         }
         encryptionPW = line.getOptionValue("e",null);
+        defaultDeadband = Double.parseDouble(line.getOptionValue("db",""+defaultDeadband));
+        String[] channelDeadbandStrs = line.getOptionValues("dbc");
+        if (channelDeadbandStrs != null) {
+            for (String channelDeadbandStr : channelDeadbandStrs) {
+                int eqIdx = channelDeadbandStr.lastIndexOf('=');
+                if (eqIdx <= 0) {
+                    System.err.println("Channel deadband must be of the form <channel>=<tolerance>: " + channelDeadbandStr);
+                    System.exit(0);
+                }
+                channelDeadbands.put(channelDeadbandStr.substring(0,eqIdx), Double.parseDouble(channelDeadbandStr.substring(eqIdx+1)));
+            }
+        }
+        try {
+            datasetFilter = new NameFilter(line.getOptionValues("id"), line.getOptionValues("xd"));
+            memberFilter = new NameFilter(line.getOptionValues("im"), line.getOptionValues("xm"));
+        } catch (PatternSyntaxException e) {
+            System.err.println("Invalid include/exclude pattern: " + e.getMessage());
+            System.exit(0);
+        }
+        repackFileName = line.getOptionValue("repack",null);
+        repackChunkRows = Long.parseLong(line.getOptionValue("rc",""+repackChunkRows));
+        repackDeflateLevel = Integer.parseInt(line.getOptionValue("rz",""+repackDeflateLevel));
+        bRepackOverwrite = line.hasOption("ro");
+        if ( (repackChunkRows < 0) || (repackDeflateLevel > 9) ) {
+            System.err.println("Repack chunk rows must be greater than or equal to 0 and gzip level must be 0 to 9");
+            System.exit(0);
+        }
+        numWriters = Integer.parseInt(line.getOptionValue("pw",""+numWriters));
+        if (numWriters < 1) {
+            System.err.println("Number of writers must be at least 1");
+            System.exit(0);
+        }
+        if ( bColumnar && (numWriters > 1) ) {
+            System.err.println("Multiple writers are only supported for CT output; using one writer for columnar output");
+            numWriters = 1;
+        }
+        double readBudgetMB = Double.parseDouble(line.getOptionValue("rb","0"));
+        if (readBudgetMB < 0.0) {
+            System.err.println("Read budget must be greater than 0.0");
+            System.exit(0);
+        }
+        readBudgetBytes = (long) (readBudgetMB * 1024 * 1024);
+        decimateInterval = Double.parseDouble(line.getOptionValue("dec",""+decimateInterval));
+        if (decimateInterval < 0.0) {
+            System.err.println("Decimation interval must be greater than 0.0");
+            System.exit(0);
+        }
 
         // Load the HDF JNI library
         // We include a copy of this library in the JAR file; problem is, it isn't possible to load a DLL
@@ -204,6 +366,22 @@ public class HDF5toCT {
             return;
         }
 
+        if (repackFileName != null) {
+            new Repacker(inFileFullPathName, repackFileName, repackChunkRows, repackDeflateLevel, datasetFilter, bRepackOverwrite).repack();
+            return;
+        }
+
+        if (bScan) {
+            JsonObject summary = new SchemaScanner(inFileFullPathName, datasetFilter, memberFilter).scan();
+            JsonWriter jsonWriter = Json.createWriterFactory(Collections.singletonMap(JsonGenerator.PRETTY_PRINTING, true)).createWriter(System.out);
+            jsonWriter.writeObject(summary);
+            System.out.println();
+            System.out.flush();
+            return;
+        }
+
+        readWindowGovernor = new ReadWindowGovernor(readBudgetBytes);
+
         // Open the HDF5 file
         try {
             fid = H5.H5Fopen(inFileFullPathName, HDF5Constants.H5F_ACC_RDONLY, HDF5Constants.H5P_DEFAULT);
@@ -347,46 +525,38 @@ public class HDF5toCT {
         //         9326064.0173
         //             chan1 (file containing the value 1.2)
         //
-        // Problem is, to resort the data by time like this involves scanning over *all* channels.  The easiest (brute-
-        // force) way to reorganize the data in this manner is to read *all* of the data from *all* channels into a
-        // large key/value map, where each key is a time and each value is a Collection/Array holding one or more
-        // objects which contain both the channel name and the data value.  Once all the data is loaded into such
-        // a map, we would then sort by key value (ie, sort by time) and then iterate through the map and write
-        // to CT.  A couple points about this:
-        //
-        //     1. note that the value needs to be a Collection/Array of objects; this is because standard Java maps
-        //        don't support duplicate keys (ie, can't have 2 identical keys each with their own unique value)
-        //     2. since we need to be able to sort the keys, we would use a TreeMap (which implements SortedMap)
-        //
-        // Here are links on such an implementation:
-        //
-        //     https://stackoverflow.com/questions/1062960/map-implementation-with-duplicate-keys
-        //         ** See the simple implementation from user "user668943" posted on 2011-06-15
-        //     https://stackoverflow.com/questions/18922165/how-to-include-duplicate-keys-in-hashmap
-        //     https://stackoverflow.com/questions/922528/how-to-sort-map-values-by-key-in-java
+        // Problem is, to resort the data by time like this involves scanning over *all* channels.  We read *all*
+        // of the data from *all* channels into memory and then sort it by time.  A couple points about this:
         //
-        // An alternative to using the standard Java TreeMap as described above is to use Google's TreeMultimap class
-        // (from their open source Guava library) which supports duplicate keys and sorted keys and values:
+        //     1. each Dataset is decoded into primitive arrays, one per channel plus one for time (see DatasetColumns
+        //        and ChannelColumn); all the channels of a Dataset share the same time at a given row
+        //     2. the rows of all Datasets are then sorted by time with TimeIndex: each time is turned into an
+        //        order-preserving long key (integer ticks when every time member is an integer type, otherwise
+        //        the sortable IEEE-754 bit pattern) and the keys are ordered with an LSD radix sort; this runs in
+        //        linear time and needs far less memory than a map holding an object per sample
+        //     3. the sort is stable, so duplicate times are allowed (they simply end up next to each other)
         //
-        //     http://google.github.io/guava/releases/snapshot/api/docs/com/google/common/collect/TreeMultimap.html
-        //     https://github.com/google/guava/wiki/NewCollectionTypesExplained#multimap
-        //     http://tomjefferys.blogspot.com/2011/09/multimaps-google-guava.html
-        //         ** good simple example
-        //
-        // We use TreeMultimap here.  Since TreeMultimap sorts both keys and values, both the key and value objects
-        // need to implement Comparable.  We use Double for the keys, which already implements Comparable.  We had
-        // to make sure our value class, HDFValue (which is defined below) implements Comparable.
+        // An earlier version of this program used Google's TreeMultimap class (keyed by Double) for this purpose.
         //
 
-        Multimap<Double, HDFValue> dataMap = TreeMultimap.create();
+        List<DatasetColumns> datasetList = new ArrayList<DatasetColumns>();
+
+        // File object used to read scalar table Datasets through H5ScalarDS; only created if needed
+        H5File h5File = null;
+
+        int numFiltered = 0;
 
         //
         // Iterate over all the objects in the top parent Group
         // Filter through all these objects to find the ones we will work with:
         // - must be a Dataset
+        // - the Dataset name must be accepted by the include/exclude filters (checked before opening the Dataset)
         // - the Datatype must be Compound
-        // - each Compound element must contain 2 entries with names "time" and either "data" or "value"
+        // - each Compound element must contain a numeric entry named "time" plus one or more numeric, string or array entries
         // - the Dataspace must be a 1-D array (rank=1)
+        // or:
+        // - the Datatype must be a numeric scalar type (float or integer)
+        // - the Dataspace must be a 2-D table (rank=2) with time in column 0 and data in columns 1..N
         //
         for (int i=0; i<nelems; ++i) {
             //
@@ -409,39 +579,79 @@ public class HDF5toCT {
                 continue;
             }
 
+            if (!datasetFilter.accept(objNames[i])) {
+                ++numFiltered;
+                continue;
+            }
+
             //
             // Open the Dataset
             //
             String datasetName = rootGroup + topParentGroup + "/" + objNames[i];
+            ConversionEvents.DatasetOpen openEvent = new ConversionEvents.DatasetOpen();
+            openEvent.begin();
             long did = H5.H5Dopen(fid, datasetName, HDF5Constants.H5P_DEFAULT);
+            openEvent.end(datasetName);
             if (did < 0) {
                 System.err.println("Could not open dataset " + datasetName);
                 continue;
             }
 
             //
-            // Examine the Datatype, which must be Compound type having 2 members;
-            // first channel to be "time" and the second to be either "data" or "value"
+            // Examine the Datatype, which must be Compound type having a "time" member plus
+            // one or more numeric members
             //
             long tid = H5.H5Dget_type(did);
             int tclass = H5.H5Tget_class(tid);
-            if (tclass != HDF5Constants.H5T_COMPOUND) {
+            if ( (tclass == HDF5Constants.H5T_FLOAT) || (tclass == HDF5Constants.H5T_INTEGER) ) {
+                //
+                // Scalar 2-D table: column 0 is time and columns 1..N are channel values
+                //
+                String typeName = getTypeName(tclass, H5.H5Tget_size(tid), tid);
+                H5.H5Tclose(tid); // close the Datatype
+                long dataspace_id = H5.H5Dget_space(did);
+                int rank = H5.H5Sget_simple_extent_ndims(dataspace_id);
+                long[] dims = new long[Math.max(rank, 1)];
+                if (rank > 0) {
+                    H5.H5Sget_simple_extent_dims(dataspace_id, dims, null);
+                }
+                H5.H5Sclose(dataspace_id); // close the Dataspace
+                if ( (typeName == null) || (rank != 2) || (dims[1] < 2) ) {
+                    System.err.println("Dataset " + datasetName + ": scalar Dataset must be a 2-D table of numeric values with at least 2 columns (time plus data); ignoring");
+                    H5.H5Dclose(did); // close the Dataset
+                    continue;
+                }
+                System.err.println("\nDataset " + datasetName);
+                System.err.println("\t" + typeName + " table: rows = " + dims[0] + ", columns = " + dims[1]);
+                if (bAttributesToFile) {
+                    // Write attributes to non-standard (non-CT) location
+                    writeAttributesToFile("CTdata" + File.separator + inFileName + File.separator + topParentGroup + File.separator + "_Attributes" + File.separator + objNames[i] + ".txt", did, "\t");
+                } else {
+                    writeAttributesToCT(attributesCTW, did, datasetName + ".txt", "\t");
+                }
+                long chunkRows = getChunkRows(did, rank);
+                H5.H5Dclose(did); // close the Dataset; H5ScalarDS opens it as needed
+                if (h5File == null) {
+                    h5File = new H5File(inFileFullPathName, FileFormat.READ);
+                }
+                DatasetColumns datasetColumns = readScalarTable(h5File, datasetName, objNames[i], typeName, dims, chunkRows);
+                addDataset(datasetList, datasetColumns);
+                continue;
+            } else if (tclass != HDF5Constants.H5T_COMPOUND) {
                 System.err.println("Dataset " + datasetName + " has Datatype = " + tclass + "; not Compound, ignoring");
                 H5.H5Tclose(tid); // close the Datatype
                 H5.H5Dclose(did); // close the Dataset
                 continue;
             }
             System.err.println("\nDataset " + datasetName);
-            long datatype_len = H5.H5Tget_size(tid);  // this will be the number of bytes in one element (ie, one Compound element)
             int num_members = H5.H5Tget_nmembers(tid);
-            if (num_members != 2) {
-                System.err.println("Dataset " + datasetName + ": Datatype doesn't have 2 members as expected");
+            if (num_members < 2) {
+                System.err.println("Dataset " + datasetName + ": Datatype doesn't have at least 2 members as expected");
                 H5.H5Tclose(tid); // close the Datatype
                 H5.H5Dclose(did); // close the Dataset
                 continue;
             }
             // Store the datatype of each Compound member in an array of DatatypeElementSpecification objects
-            // (ie, this should be an array of size = 2)
             DatatypeElementSpecification[] datatypeElements = new DatatypeElementSpecification[num_members];
             boolean bMemberTypeErr = false;
             for (int j = 0; j < num_members; ++j) {
@@ -451,49 +661,30 @@ public class HDF5toCT {
                 long member_type = H5.H5Tget_member_type(tid, j);
                 long member_size = H5.H5Tget_size(member_type);
                 int member_class = H5.H5Tget_member_class(tid, j);
-                // Either of the following should return a string like "H5T_FLOAT" or "H5T_INTEGER"
-                // String member_class_name = H5.H5Tget_class_name(member_class);
-                // String member_class_name = H5.H5Tget_class_name(H5.H5Tget_class(member_type));
-                String member_class_name = "";
-                if ( (member_class == HDF5Constants.H5T_FLOAT) && (member_size == 8) ) {
-                    member_class_name = "double";
-                } else if ( (member_class == HDF5Constants.H5T_FLOAT) && (member_size == 4) ) {
-                    member_class_name = "float";
-                } else if ( (member_class == HDF5Constants.H5T_INTEGER) && (member_size == 8) ) {
-                    int tsign = H5.H5Tget_sign(member_type);
-                    if (tsign == HDF5Constants.H5T_SGN_NONE) {
-                        member_class_name = "unsigned long";
-                    } else {
-                        member_class_name = "long";
-                    }
-                } else if ( (member_class == HDF5Constants.H5T_INTEGER) && (member_size == 4) ) {
-                    int tsign = H5.H5Tget_sign(member_type);
-                    if (tsign == HDF5Constants.H5T_SGN_NONE) {
-                        member_class_name = "unsigned int";
-                    } else {
-                        member_class_name = "int";
-                    }
-                } else if ( (member_class == HDF5Constants.H5T_INTEGER) && (member_size == 2) ) {
-                    int tsign = H5.H5Tget_sign(member_type);
-                    if (tsign == HDF5Constants.H5T_SGN_NONE) {
-                        member_class_name = "unsigned short";
-                    } else {
-                        member_class_name = "short";
-                    }
+                String member_class_name = null;
+                if (member_class == HDF5Constants.H5T_ARRAY) {
+                    member_class_name = getArrayTypeName(member_type, des);
                 } else {
+                    member_class_name = getTypeName(member_class, member_size, member_type);
+                }
+                if (member_class_name == null) {
                     bMemberTypeErr = true;
+                } else if (member_class_name.equals("string")) {
+                    des.strPad = H5.H5Tget_strpad(member_type);
+                    des.cset = H5.H5Tget_cset(member_type);
+                }
+                H5.H5Tclose(member_type);
+                if (bMemberTypeErr) {
+                    System.err.println("Dataset " + datasetName + ": Compound member \"" + member_name + "\" is of unknown type");
                     break;
                 }
+                des.index = j;
                 des.name = member_name;
                 des.type = member_class_name;
                 des.size = member_size;
                 des.offset = member_offset;
                 datatypeElements[j] = des;
                 System.err.println("\t" + des.toString());
-                // Native type appear to be the same as the main member type
-                // long native_tid = H5.H5Tget_native_type(sub_tid);
-                // String native_class_name = H5.H5Tget_class_name(H5.H5Tget_class(native_tid));
-                // long native_size = H5.H5Tget_size(native_tid);
             }
             if (bMemberTypeErr) {
                 System.err.println("Dataset " + datasetName + ": error with a Compound datatype member of unknown type");
@@ -501,13 +692,58 @@ public class HDF5toCT {
                 H5.H5Dclose(did); // close the Dataset
                 continue;
             }
-            // Names: We expect the first channel to be "time" and the second to be either "data" or "value"
-            if ( !datatypeElements[0].name.toLowerCase().equals("time") || ( !datatypeElements[1].name.toLowerCase().equals("data") && !datatypeElements[1].name.toLowerCase().equals("value") ) ) {
-                System.err.println("Dataset " + datasetName + ": didn't have expected channel names TIME and ( DATA or VALUE )");
+            // Names: We expect exactly one member to be "time"; every other member becomes a channel
+            int timeIdx = -1;
+            for (int j = 0; j < num_members; ++j) {
+                if (datatypeElements[j].name.equalsIgnoreCase("time")) {
+                    if (timeIdx != -1) {
+                        timeIdx = -2;
+                        break;
+                    }
+                    timeIdx = j;
+                }
+            }
+            if (timeIdx < 0) {
+                System.err.println("Dataset " + datasetName + ": didn't have exactly one member named TIME");
                 H5.H5Tclose(tid); // close the Datatype
                 H5.H5Dclose(did); // close the Dataset
                 continue;
             }
+            if (datatypeElements[timeIdx].type.endsWith("string") || (datatypeElements[timeIdx].arrayLen > 0)) {
+                System.err.println("Dataset " + datasetName + ": TIME member must be a numeric scalar");
+                H5.H5Tclose(tid); // close the Datatype
+                H5.H5Dclose(did); // close the Dataset
+                continue;
+            }
+            // Original file layout: a single "data" or "value" member is saved to a channel named after the Dataset;
+            // otherwise, each member is saved to its own channel, "<dataset>/<member>"
+            boolean bSingleChannel = false;
+            if (num_members == 2) {
+                String singleName = datatypeElements[1 - timeIdx].name.toLowerCase();
+                bSingleChannel = singleName.equals("data") || singleName.equals("value");
+            }
+            // Apply the member filter; only the time member and the selected members are put in the memory
+            // Datatype, so HDF5 doesn't convert or copy the others
+            if (!memberFilter.isEmpty()) {
+                List<DatatypeElementSpecification> selected = new ArrayList<DatatypeElementSpecification>();
+                for (int j = 0; j < num_members; ++j) {
+                    if ( (j == timeIdx) || memberFilter.accept(datatypeElements[j].name) ) {
+                        if (j == timeIdx) {
+                            timeIdx = selected.size();
+                        }
+                        selected.add(datatypeElements[j]);
+                    }
+                }
+                if (selected.size() < 2) {
+                    System.err.println("Dataset " + datasetName + ": no members selected by the include/exclude filters; ignoring");
+                    H5.H5Tclose(tid); // close the Datatype
+                    H5.H5Dclose(did); // close the Dataset
+                    continue;
+                }
+                System.err.println("\treading " + (selected.size() - 1) + " of " + (num_members - 1) + " members");
+                datatypeElements = selected.toArray(new DatatypeElementSpecification[selected.size()]);
+                num_members = datatypeElements.length;
+            }
 
             //
             // Examine the Dataspace
@@ -540,86 +776,56 @@ public class HDF5toCT {
             }
 
             //
-            // Extract data
+            // Build a packed, native-order memory Datatype holding the members we read; HDF5 converts
+            // from the file's layout and byte order (eg, big-endian) while reading.  This also updates
+            // the offset and size of each DatatypeElementSpecification to the packed memory layout.
+            // Variable-length string members are read separately (see readCompoundDataset).
             //
-            byte[] read_data = new byte[(int) dims[0] * (int) datatype_len];
-            H5.H5Dread(did, tid, HDF5Constants.H5S_ALL, HDF5Constants.H5S_ALL, HDF5Constants.H5P_DEFAULT, read_data);
-            ByteBuffer bb = null;
-            System.err.println("\t" + datatypeElements[0].name + "\t\t" + datatypeElements[1].name);
-            for (int j = 0; j < dims[0]; ++j) {
-                HDFValue nextVal = new HDFValue();
-                nextVal.chanName = objNames[i];
-                double nextTime = 0.0;
-                for (int k = 0; k < 2; ++k) {
-                    bb =  ByteBuffer.wrap(read_data, (int) (j * datatype_len + (int)datatypeElements[k].offset), (int)datatypeElements[k].size).order(ByteOrder.LITTLE_ENDIAN);
-                    if (datatypeElements[k].type.equals("double")) {
-                        // System.err.print(bb.getDouble());
-                        if (datatypeElements[k].name.toLowerCase().equals("time")) {
-                            nextTime = bb.getDouble();
-                        } else {
-                            nextVal.val = new Double(bb.getDouble());
-                        }
-                    } else if (datatypeElements[k].type.equals("float")) {
-                        // System.err.print(bb.getFloat());
-                        if (datatypeElements[k].name.toLowerCase().equals("time")) {
-                            nextTime = (double)bb.getFloat();
-                        } else {
-                            nextVal.val = new Float(bb.getFloat());
-                        }
-                    } else if (datatypeElements[k].type.equals("long")) {
-                        // System.err.print(bb.getLong());
-                        if (datatypeElements[k].name.toLowerCase().equals("time")) {
-                            nextTime = (double)bb.getLong();
-                        } else {
-                            nextVal.val = new Long(bb.getLong());
-                        }
-                    } else if (datatypeElements[k].type.equals("unsigned long")) {
-                        // For now, ignore the fact that this is unsigned
-                        // System.err.print(bb.getLong());
-                        if (datatypeElements[k].name.toLowerCase().equals("time")) {
-                            nextTime = (double)bb.getLong();
-                        } else {
-                            nextVal.val = new Long(bb.getLong());
-                        }
-                    } else if (datatypeElements[k].type.equals("int")) {
-                        // System.err.print(bb.getInt());
-                        if (datatypeElements[k].name.toLowerCase().equals("time")) {
-                            nextTime = (double)bb.getInt();
-                        } else {
-                            nextVal.val = new Integer(bb.getInt());
-                        }
-                    } else if (datatypeElements[k].type.equals("unsigned int")) {
-                        // For now, ignore the fact that this is unsigned
-                        // System.err.print(bb.getInt());
-                        if (datatypeElements[k].name.toLowerCase().equals("time")) {
-                            nextTime = (double)bb.getInt();
-                        } else {
-                            nextVal.val = new Integer(bb.getInt());
-                        }
-                    } else if (datatypeElements[k].type.equals("short")) {
-                        // System.err.print(bb.getShort());
-                        if (datatypeElements[k].name.toLowerCase().equals("time")) {
-                            nextTime = (double)bb.getShort();
-                        } else {
-                            nextVal.val = new Short(bb.getShort());
-                        }
-                    } else if (datatypeElements[k].type.equals("unsigned short")) {
-                        // For now, ignore the fact that this is unsigned
-                        // System.err.print(bb.getShort());
-                        if (datatypeElements[k].name.toLowerCase().equals("time")) {
-                            nextTime = (double)bb.getShort();
-                        } else {
-                            nextVal.val = new Short(bb.getShort());
-                        }
-                    }
+            long memtype = createMemoryType(tid, datatypeElements);
+            int recordSize = (int) H5.H5Tget_size(memtype);
+            H5.H5Tclose(tid); // close the Datatype
+
+            //
+            // Setup the columns to decode into; one column for time plus one per channel
+            //
+            int numRows = (int) dims[0];
+            // time was checked above to be a numeric scalar
+            NumericColumn timeColumn = NumericColumn.create(datatypeElements[timeIdx].name, datatypeElements[timeIdx].type, (int) datatypeElements[timeIdx].offset, numRows);
+            ChannelColumn[] valueColumns = new ChannelColumn[num_members - 1];
+            int colIdx = 0;
+            List<ChannelColumn.VLStringColumn> vlColumns = new ArrayList<ChannelColumn.VLStringColumn>();
+            List<Long> vlMemtypes = new ArrayList<Long>();
+            for (int j = 0; j < num_members; ++j) {
+                if (j == timeIdx) {
+                    continue;
+                }
+                String chanName = bSingleChannel ? objNames[i] : objNames[i] + "/" + datatypeElements[j].name;
+                valueColumns[colIdx] = createColumn(datatypeElements[j], chanName, numRows);
+                if (datatypeElements[j].vlMemtype >= 0) {
+                    vlColumns.add((ChannelColumn.VLStringColumn) valueColumns[colIdx]);
+                    vlMemtypes.add(datatypeElements[j].vlMemtype);
                 }
-                // Add the new data point to the TreeMultimap
-                dataMap.put(nextTime,nextVal);
+                ++colIdx;
+            }
+            setDeadbands(valueColumns);
+            DatasetColumns datasetColumns = new DatasetColumns(datasetName, timeColumn, valueColumns, numRows);
+
+            //
+            // Extract data; all members of each Compound element are decoded in one pass over the record buffer
+            //
+            readCompoundDataset(did, memtype, recordSize, getChunkRows(did, rank), datasetColumns, vlColumns, vlMemtypes);
+            addDataset(datasetList, datasetColumns);
+            H5.H5Tclose(memtype); // close the memory Datatype
+            for (long vlMemtype : vlMemtypes) {
+                H5.H5Tclose(vlMemtype);
             }
-            H5.H5Tclose(tid); // close the Datatype
             H5.H5Dclose(did); // close the Dataset
         }
 
+        if (numFiltered > 0) {
+            System.err.println("\nSkipped " + numFiltered + " objects not selected by the include/exclude filters");
+        }
+
         // If we were writing attributes to CT, it's time to close the CTwriter
         if (attributesCTW != null) {
             attributesCTW.close();
@@ -628,8 +834,64 @@ public class HDF5toCT {
         //
         // Write out all data (in time then channel order)
         //
+        // Each channel is written to the sink of its partition; with more than one partition, each sink writes its
+        // own CT source on its own thread (see AsyncSink)
+        OutputSink[] sinks;
+        int[][] partitionOf = new int[datasetList.size()][];
+        for (int i = 0; i < partitionOf.length; ++i) {
+            partitionOf[i] = new int[datasetList.get(i).getValueColumns().length];
+        }
         String ctw_destination_folder = "CTdata/" + inFileName + rootGroup + topParentGroup;
-        CTwriter ctw = new CTwriter(ctw_destination_folder);
+        int numPartitions = Math.min(numWriters, getNumPartitionUnits(datasetList, numWriters));
+        if (bColumnar) {
+            sinks = new OutputSink[] { new ColumnarSink("ColumnarData/" + inFileName + rootGroup + topParentGroup) };
+        } else if (numPartitions <= 1) {
+            sinks = new OutputSink[] { new CTSink(createCTwriter(ctw_destination_folder)) };
+        } else {
+            partitionDatasets(datasetList, numPartitions, partitionOf);
+            sinks = new OutputSink[numPartitions];
+            for (int k = 0; k < numPartitions; ++k) {
+                sinks[k] = new AsyncSink(new CTSink(createCTwriter(ctw_destination_folder + "/part" + k)), "CTwriter-part" + k);
+            }
+        }
+        writeData(datasetList, sinks, partitionOf, baseTime, flushInterval, bHiResTime);
+        for (DatasetColumns datasetColumns : datasetList) {
+            for (ChannelColumn col : datasetColumns.getValueColumns()) {
+                int numDropped = (col instanceof NumericColumn) ? ((NumericColumn) col).getNumDropped() : 0;
+                if (numDropped > 0) {
+                    System.err.println("deadband: dropped " + numDropped + " of " + datasetColumns.getNumRows() + " samples from " + col.getChanName());
+                }
+            }
+        }
+        Exception closeException = null;
+        for (OutputSink sink : sinks) {
+            try {
+                sink.close();
+            } catch (Exception e) {
+                closeException = e;
+            }
+        }
+        if (closeException != null) {
+            throw closeException;
+        }
+
+        //System.err.println("HDF5Constants.H5T_IEEE_F32BE = " + HDF5Constants.H5T_IEEE_F32BE);
+        //System.err.println("HDF5Constants.H5T_IEEE_F32LE = " + HDF5Constants.H5T_IEEE_F32LE);
+        //System.err.println("HDF5Constants.H5T_IEEE_F64BE = " + HDF5Constants.H5T_IEEE_F64BE);
+        //System.err.println("HDF5Constants.H5T_IEEE_F64LE = " + HDF5Constants.H5T_IEEE_F64LE);
+
+        H5.H5Gclose(gid);  // close the Group
+        if (h5File != null) {
+            h5File.close();  // close the file object used to read scalar table Datasets
+        }
+        H5.H5Fclose(fid);  // close the File
+    }
+
+    /**
+     * Create a CTwriter for the given source folder, configured from the command line options.
+     */
+    private CTwriter createCTwriter(String destinationFolder) throws Exception {
+        CTwriter ctw = new ConversionEvents.TracedCTwriter(destinationFolder);
         ctw.setGZipMode(bGzip);
         ctw.setBlockMode(bPack,bZip);
         ctw.setHiResTime(bHiResTime);
@@ -639,35 +901,498 @@ public class HDF5toCT {
         if (encryptionPW != null) {
             ctw.setPassword(encryptionPW);
         }
-        double prevHDFtime = -1.0;
-        // NOTE: dataMap.keys() contains all the duplicate time values (as many instances of the same time value as is used across all channels)
-        for (double nextTime : dataMap.keys()) {
+        return ctw;
+    }
+
+    /**
+     * Write the rows of all the given Datasets to the sinks, in time order; the sinks aren't closed.
+     *
+     * Rows at negative HDF5 times aren't written, and only the first row of a Dataset at any one time is written.
+     * Channels with a deadband (see NumericColumn.setDeadband()) drop samples as they are written, except that the
+     * first and last sample each channel writes to each block of its sink (see FlushBlocks) are always written, so
+     * no block is left without a sample of a channel which doesn't change.
+     *
+     * @param datasetList    the decoded Datasets
+     * @param sinks          the output sinks
+     * @param partitionOf    partitionOf[i][c] is the index (into sinks) of the sink for value column c of
+     *                       datasetList.get(i)
+     * @param baseTime       base time added to HDF5 times to get CT times
+     * @param flushInterval  CTwriter auto-flush interval (sec)
+     * @param bHiResTime     do the CTwriters use hi-res (usec) time?
+     */
+    static void writeData(List<DatasetColumns> datasetList, OutputSink[] sinks, int[][] partitionOf, double baseTime, double flushInterval, boolean bHiResTime) throws Exception {
+        ConversionEvents.Sort sortEvent = new ConversionEvents.Sort();
+        sortEvent.begin();
+        TimeIndex timeIndex = new TimeIndex(datasetList);
+        timeIndex.sort();
+        sortEvent.end(datasetList.size(), timeIndex.size());
+        boolean bDeadband = false;
+        for (DatasetColumns dc : datasetList) {
+            bDeadband = bDeadband || dc.hasDeadband();
+        }
+        BitSet[][] blockEnds = bDeadband ? findBlockEnds(timeIndex, datasetList, sinks.length, partitionOf, baseTime, flushInterval, bHiResTime) : null;
+        // Only one value per Dataset is written at a given time; lastWritten[] holds the index (into timeIndex) of the
+        // first row at the time each Dataset was last written
+        int[] lastWritten = new int[datasetList.size()];
+        Arrays.fill(lastWritten, -1);
+        int timeStart = -1;
+        for (int i = 0; i < timeIndex.size(); ++i) {
+            double nextTime = timeIndex.getTime(i);
             if (nextTime < 0) {
                 // Don't allow negative timestamps
                 System.err.println("Skipping negative HDF5 timestamp " + nextTime);
                 continue;
             }
-            if (nextTime == prevHDFtime) {
-                // skip duplicate time - we've already handled it
+            if ( (timeStart < 0) || (timeIndex.getKey(i) != timeIndex.getKey(timeStart)) ) {
+                timeStart = i;
+                double ctTime = baseTime + nextTime;
+                for (OutputSink sink : sinks) {
+                    sink.setTime(ctTime);
+                }
+            }
+            int datasetIdx = timeIndex.getDatasetIndex(i);
+            if (lastWritten[datasetIdx] == timeStart) {
+                // skip duplicate time for this Dataset - we've already written it
                 continue;
             }
-            prevHDFtime = nextTime;
-            double ctTime = baseTime + nextTime;
-            ctw.setTime(ctTime);
-            // Put all data that is associated with this time (can be multiple points)
-            for (HDFValue nextVal : dataMap.get(nextTime)) {
-                nextVal.putData(ctw);
+            lastWritten[datasetIdx] = timeStart;
+            datasetList.get(datasetIdx).putData(sinks, partitionOf[datasetIdx], timeIndex.getRow(i, datasetIdx), (blockEnds != null) ? blockEnds[datasetIdx] : null);
+        }
+    }
+
+    /**
+     * Find the rows which are the first or last each Dataset writes to each block of each sink, by following the
+     * rows writeData() will write (it must skip the same rows).  Blocks only depend on the times at which data is
+     * put, and a row which starts a block is always written, so this can be done before any deadband is applied.
+     *
+     * @return  blockEnds[i][s] holds the rows which are the first or last that datasetList.get(i) writes to a block
+     *          of sink s
+     */
+    private static BitSet[][] findBlockEnds(TimeIndex timeIndex, List<DatasetColumns> datasetList, int numSinks, int[][] partitionOf, double baseTime, double flushInterval, boolean bHiResTime) {
+        FlushBlocks[] blocks = new FlushBlocks[numSinks];
+        for (int s = 0; s < numSinks; ++s) {
+            blocks[s] = new FlushBlocks(flushInterval, bHiResTime);
+        }
+        int numDatasets = datasetList.size();
+        BitSet[][] blockEnds = new BitSet[numDatasets][numSinks];
+        int[][] lastBlock = new int[numDatasets][numSinks];     // block of each sink that each Dataset last wrote to
+        int[] lastRow = new int[numDatasets];                    // row each Dataset last wrote
+        boolean[][] usesSink = new boolean[numDatasets][numSinks];
+        for (int i = 0; i < numDatasets; ++i) {
+            for (int s = 0; s < numSinks; ++s) {
+                blockEnds[i][s] = new BitSet();
+            }
+            Arrays.fill(lastBlock[i], -1);
+            for (int s : partitionOf[i]) {
+                usesSink[i][s] = true;
+            }
+        }
+        Arrays.fill(lastRow, -1);
+        int[] lastWritten = new int[numDatasets];
+        Arrays.fill(lastWritten, -1);
+        int timeStart = -1;
+        for (int i = 0; i < timeIndex.size(); ++i) {
+            double nextTime = timeIndex.getTime(i);
+            if (nextTime < 0) {
+                continue;
+            }
+            if ( (timeStart < 0) || (timeIndex.getKey(i) != timeIndex.getKey(timeStart)) ) {
+                timeStart = i;
+            }
+            int datasetIdx = timeIndex.getDatasetIndex(i);
+            if (lastWritten[datasetIdx] == timeStart) {
+                continue;
+            }
+            lastWritten[datasetIdx] = timeStart;
+            int row = timeIndex.getRow(i, datasetIdx);
+            for (int s = 0; s < numSinks; ++s) {
+                if (!usesSink[datasetIdx][s]) {
+                    continue;
+                }
+                int block = blocks[s].put(baseTime + nextTime);
+                if (block != lastBlock[datasetIdx][s]) {
+                    blockEnds[datasetIdx][s].set(row);
+                    if (lastRow[datasetIdx] >= 0) {
+                        blockEnds[datasetIdx][s].set(lastRow[datasetIdx]);
+                    }
+                    lastBlock[datasetIdx][s] = block;
+                }
+            }
+            lastRow[datasetIdx] = row;
+        }
+        for (int i = 0; i < numDatasets; ++i) {
+            if (lastRow[i] < 0) {
+                continue;
+            }
+            for (int s = 0; s < numSinks; ++s) {
+                blockEnds[i][s].set(lastRow[i]);
             }
         }
-        ctw.close();
+        return blockEnds;
+    }
 
-        //System.err.println("HDF5Constants.H5T_IEEE_F32BE = " + HDF5Constants.H5T_IEEE_F32BE);
-        //System.err.println("HDF5Constants.H5T_IEEE_F32LE = " + HDF5Constants.H5T_IEEE_F32LE);
-        //System.err.println("HDF5Constants.H5T_IEEE_F64BE = " + HDF5Constants.H5T_IEEE_F64BE);
-        //System.err.println("HDF5Constants.H5T_IEEE_F64LE = " + HDF5Constants.H5T_IEEE_F64LE);
+    /**
+     * Return the number of units the Datasets can be partitioned into: the number of Datasets if there are at least
+     * numWriters of them, otherwise the total number of channels (see partitionDatasets()).
+     */
+    private static int getNumPartitionUnits(List<DatasetColumns> datasetList, int numWriters) {
+        if (datasetList.size() >= numWriters) {
+            return datasetList.size();
+        }
+        int numColumns = 0;
+        for (DatasetColumns dc : datasetList) {
+            numColumns += dc.getValueColumns().length;
+        }
+        return numColumns;
+    }
 
-        H5.H5Gclose(gid);  // close the Group
-        H5.H5Fclose(fid);  // close the File
+    /**
+     * Assign each channel to one of numPartitions partitions, balancing the number of values to be written by
+     * each.  If there are at least numPartitions Datasets, all the channels of a Dataset are kept together and
+     * whole Datasets (rows times channels) are balanced; otherwise (eg, one wide Compound) each channel is a unit of
+     * its own, so that every writer gets work.  Units are assigned largest first, each to the partition with the
+     * fewest values so far.
+     *
+     * @param partitionOf  filled in with the partition of each channel: partitionOf[i][c] is the partition of
+     *                     value column c of datasetList.get(i)
+     */
+    private static void partitionDatasets(List<DatasetColumns> datasetList, int numPartitions, int[][] partitionOf) {
+        final boolean bByColumn = (datasetList.size() < numPartitions);
+        List<int[]> units = new ArrayList<int[]>();   // {Dataset index, column index or -1 for all columns}
+        for (int i = 0; i < datasetList.size(); ++i) {
+            if (bByColumn) {
+                for (int c = 0; c < partitionOf[i].length; ++c) {
+                    units.add(new int[] { i, c });
+                }
+            } else {
+                units.add(new int[] { i, -1 });
+            }
+        }
+        final long[] sizes = new long[units.size()];
+        Integer[] order = new Integer[units.size()];
+        for (int u = 0; u < order.length; ++u) {
+            order[u] = u;
+            DatasetColumns dc = datasetList.get(units.get(u)[0]);
+            sizes[u] = bByColumn ? dc.getNumRows() : (long) dc.getNumRows() * dc.getValueColumns().length;
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            public int compare(Integer a, Integer b) {
+                return Long.compare(sizes[b], sizes[a]);
+            }
+        });
+        long[] load = new long[numPartitions];
+        int[] numChannels = new int[numPartitions];
+        for (int u : order) {
+            int k = 0;
+            for (int j = 1; j < numPartitions; ++j) {
+                if (load[j] < load[k]) {
+                    k = j;
+                }
+            }
+            int[] unit = units.get(u);
+            if (unit[1] < 0) {
+                Arrays.fill(partitionOf[unit[0]], k);
+                numChannels[k] += partitionOf[unit[0]].length;
+            } else {
+                partitionOf[unit[0]][unit[1]] = k;
+                ++numChannels[k];
+            }
+            load[k] += sizes[u];
+        }
+        for (int k = 0; k < numPartitions; ++k) {
+            System.err.println("CT source part" + k + ": " + numChannels[k] + " channels, " + load[k] + " values");
+        }
+    }
+
+    /**
+     * Set the deadband of each of the given columns, from the "-dbc" (per-channel) or "-db" (default) options.
+     * The deadband is applied when the data is written (see writeData()).
+     */
+    private void setDeadbands(ChannelColumn[] valueColumns) {
+        for (ChannelColumn col : valueColumns) {
+            if (!(col instanceof NumericColumn)) {
+                continue;
+            }
+            Double deadband = channelDeadbands.get(col.getChanName());
+            ((NumericColumn) col).setDeadband((deadband != null) ? deadband.doubleValue() : defaultDeadband);
+        }
+    }
+
+    /**
+     * Add the given decoded Dataset to the list of Datasets to write to CT.  In decimate mode, the Dataset is
+     * first reduced to per-bucket aggregates (so the full-rate columns can be freed right away).
+     */
+    private void addDataset(List<DatasetColumns> datasetList, DatasetColumns datasetColumns) {
+        if (decimateInterval > 0.0) {
+            datasetColumns = new Decimator(decimateInterval, baseTime).decimate(datasetColumns);
+            if (datasetColumns == null) {
+                return;
+            }
+            System.err.println("\tdecimated to " + datasetColumns.getNumRows() + " buckets");
+        }
+        datasetList.add(datasetColumns);
+    }
+
+    /**
+     * Return the name of the type we use to store values of the given HDF5 class and size.
+     *
+     * @param tclass    HDF5 class of the Datatype, such as HDF5Constants.H5T_FLOAT
+     * @param tsize     size in bytes of one value
+     * @param typeID    the Datatype; used to check the sign of integer types
+     * @return          a name such as "double", "unsigned short", "string" (fixed-length) or "vlstring"
+     *                  (variable-length), or null if the type isn't supported
+     */
+    private String getTypeName(int tclass, long tsize, long typeID) throws Exception {
+        // Either of the following should return a string like "H5T_FLOAT" or "H5T_INTEGER"
+        // String class_name = H5.H5Tget_class_name(tclass);
+        // String class_name = H5.H5Tget_class_name(H5.H5Tget_class(typeID));
+        if ( (tclass == HDF5Constants.H5T_FLOAT) && (tsize == 8) ) {
+            return "double";
+        } else if ( (tclass == HDF5Constants.H5T_FLOAT) && (tsize == 4) ) {
+            return "float";
+        } else if (tclass == HDF5Constants.H5T_STRING) {
+            return H5.H5Tis_variable_str(typeID) ? "vlstring" : "string";
+        } else if (tclass == HDF5Constants.H5T_INTEGER) {
+            boolean bUnsigned = (H5.H5Tget_sign(typeID) == HDF5Constants.H5T_SGN_NONE);
+            if (tsize == 8) {
+                return bUnsigned ? "unsigned long" : "long";
+            } else if (tsize == 4) {
+                return bUnsigned ? "unsigned int" : "int";
+            } else if (tsize == 2) {
+                return bUnsigned ? "unsigned short" : "short";
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Create a packed Compound memory Datatype containing the given members of a file Compound Datatype, each
+     * converted to its native type.  Reading a Dataset with this memory Datatype has HDF5 do any byte order
+     * conversion (in its optimised C path) and drop the members we don't need; the returned records can then
+     * be decoded from a fixed native layout.
+     *
+     * On return, the offset and size of each element are updated to describe the packed memory layout.
+     *
+     * Variable-length string members can't be decoded from the packed record buffer; they are left out of the
+     * returned Datatype and instead each one's vlMemtype is set to a single-field Compound Datatype which is
+     * used to read that member in bulk using H5Dread_VLStrings.
+     *
+     * @param tid        the file's Compound Datatype
+     * @param elements   the members to include; index is the member index in tid
+     * @return           the memory Datatype; caller must close it (and any vlMemtype) using H5Tclose
+     */
+    private long createMemoryType(long tid, DatatypeElementSpecification[] elements) throws Exception {
+        long[] nativeTypes = new long[elements.length];
+        long recordSize = 0;
+        for (int j = 0; j < elements.length; ++j) {
+            long member_type = H5.H5Tget_member_type(tid, elements[j].index);
+            if (elements[j].type.equals("vlstring")) {
+                nativeTypes[j] = -1;
+                elements[j].offset = -1;
+                elements[j].vlMemtype = H5.H5Tcreate(HDF5Constants.H5T_COMPOUND, H5.H5Tget_size(member_type));
+                H5.H5Tinsert(elements[j].vlMemtype, elements[j].name, 0, member_type);
+                H5.H5Tclose(member_type);
+                continue;
+            }
+            nativeTypes[j] = H5.H5Tget_native_type(member_type);
+            H5.H5Tclose(member_type);
+            elements[j].offset = recordSize;
+            elements[j].size = H5.H5Tget_size(nativeTypes[j]);
+            recordSize += elements[j].size;
+        }
+        long memtype = H5.H5Tcreate(HDF5Constants.H5T_COMPOUND, recordSize);
+        for (int j = 0; j < elements.length; ++j) {
+            if (nativeTypes[j] < 0) {
+                continue;
+            }
+            H5.H5Tinsert(memtype, elements[j].name, elements[j].offset, nativeTypes[j]);
+            H5.H5Tclose(nativeTypes[j]);
+        }
+        return memtype;
+    }
+
+    /**
+     * Create the column to decode the given Compound member into.
+     *
+     * @param des        the member; offset and size must describe the packed memory layout (see createMemoryType)
+     * @param chanName   CT channel name (without the type suffix)
+     * @param numRows    number of rows the column must hold
+     */
+    private ChannelColumn createColumn(DatatypeElementSpecification des, String chanName, int numRows) {
+        if (des.arrayLen > 0) {
+            return ChannelColumn.createArray(chanName, des.type, (int) des.offset, des.arrayLen, numRows);
+        } else if (des.type.equals("string")) {
+            return ChannelColumn.createString(chanName, (int) des.offset, (int) des.size, (des.strPad == HDF5Constants.H5T_STR_SPACEPAD), (des.cset == HDF5Constants.H5T_CSET_UTF8), numRows);
+        }
+        return ChannelColumn.create(chanName, des.type, (int) des.offset, numRows);
+    }
+
+    /**
+     * Read a 1-D Compound Dataset in windows of rows sized by readWindowGovernor and decode the records into the
+     * given columns.
+     *
+     * Variable-length string members are read in bulk for each block, one member at a time, using H5Dread_VLStrings.
+     *
+     * @param did             the Dataset
+     * @param memtype         packed native memory Datatype, from createMemoryType()
+     * @param recordSize      size (in bytes) of one element of memtype
+     * @param chunkRows       rows per chunk of the Dataset; 1 if it isn't chunked
+     * @param datasetColumns  the columns to decode into
+     * @param vlColumns       the variable-length string columns
+     * @param vlMemtypes      single-field memory Datatype to read each variable-length string column with
+     */
+    private void readCompoundDataset(long did, long memtype, int recordSize, long chunkRows, DatasetColumns datasetColumns, List<ChannelColumn.VLStringColumn> vlColumns, List<Long> vlMemtypes) throws Exception {
+        int numRows = datasetColumns.getNumRows();
+        ReadWindowGovernor.Window window = readWindowGovernor.open(recordSize, vlColumns.size(), chunkRows, datasetColumns.getValueColumns().length, numRows);
+        // The read buffers are sized for the current window and grown if the window grows
+        byte[] read_data = new byte[0];
+        ByteBuffer bb = null;
+        String[] vl_data = null;
+        long filespace_id = H5.H5Dget_space(did);
+        try {
+            int blockRows;
+            for (int firstRow = 0; firstRow < numRows; firstRow += blockRows) {
+                blockRows = Math.min(window.nextRows(), numRows - firstRow);
+                if (read_data.length < blockRows * recordSize) {
+                    read_data = new byte[blockRows * recordSize];
+                    bb = ByteBuffer.wrap(read_data).order(ByteOrder.nativeOrder());
+                    vl_data = vlColumns.isEmpty() ? null : new String[blockRows];
+                }
+                long[] start = { firstRow };
+                long[] count = { blockRows };
+                H5.H5Sselect_hyperslab(filespace_id, HDF5Constants.H5S_SELECT_SET, start, null, count, null);
+                long memspace_id = H5.H5Screate_simple(1, count, null);
+                try {
+                    ConversionEvents.DatasetRead readEvent = new ConversionEvents.DatasetRead();
+                    readEvent.begin();
+                    H5.H5Dread(did, memtype, memspace_id, filespace_id, HDF5Constants.H5P_DEFAULT, read_data);
+                    for (int k = 0; k < vlColumns.size(); ++k) {
+                        H5.H5Dread_VLStrings(did, vlMemtypes.get(k), memspace_id, filespace_id, HDF5Constants.H5P_DEFAULT, vl_data);
+                        vlColumns.get(k).setStrings(vl_data, firstRow, (int) count[0]);
+                    }
+                    readEvent.end(datasetColumns.getName(), firstRow, count[0], count[0] * recordSize);
+                } finally {
+                    H5.H5Sclose(memspace_id);
+                }
+                ConversionEvents.Decode decodeEvent = new ConversionEvents.Decode();
+                decodeEvent.begin();
+                datasetColumns.decode(bb, recordSize, firstRow, (int) count[0]);
+                decodeEvent.end(datasetColumns.getName(), firstRow, count[0]);
+            }
+        } finally {
+            window.close();
+            H5.H5Sclose(filespace_id);
+        }
+    }
+
+    /**
+     * Examine an Array Datatype (such as a Compound member holding a 64-bin spectrum) and return the name of the
+     * type of its elements; the total number of elements is stored in des.arrayLen.
+     *
+     * @param typeID    the Array Datatype
+     * @param des       description of the member, to store the array length in
+     * @return          the element type name (see getTypeName()), or null if the elements aren't a supported
+     *                  numeric type
+     */
+    private String getArrayTypeName(long typeID, DatatypeElementSpecification des) throws Exception {
+        int ndims = H5.H5Tget_array_ndims(typeID);
+        long[] adims = new long[ndims];
+        H5.H5Tget_array_dims(typeID, adims);
+        long arrayLen = 1;
+        for (long adim : adims) {
+            arrayLen *= adim;
+        }
+        long baseType = H5.H5Tget_super(typeID);
+        try {
+            String baseName = getTypeName(H5.H5Tget_class(baseType), H5.H5Tget_size(baseType), baseType);
+            if ( (baseName == null) || !ChannelColumn.isArrayTypeSupported(baseName) || (arrayLen <= 0) ) {
+                return null;
+            }
+            des.arrayLen = (int) arrayLen;
+            return baseName;
+        } finally {
+            H5.H5Tclose(baseType);
+        }
+    }
+
+    /**
+     * Return the number of rows (along the first dimension) per chunk of the given Dataset, or 1 if the Dataset
+     * isn't chunked.
+     *
+     * @param did   the Dataset
+     * @param rank  rank of the Dataset's Dataspace
+     */
+    private static long getChunkRows(long did, int rank) throws Exception {
+        long pid = H5.H5Dget_create_plist(did);
+        try {
+            if (H5.H5Pget_layout(pid) != HDF5Constants.H5D_CHUNKED) {
+                return 1;
+            }
+            long[] chunkDims = new long[Math.max(rank, 1)];
+            H5.H5Pget_chunk(pid, chunkDims.length, chunkDims);
+            return Math.max(1, chunkDims[0]);
+        } finally {
+            H5.H5Pclose(pid);
+        }
+    }
+
+    /**
+     * Read a 2-D table Dataset (such as an array of float64) where column 0 holds time and columns 1..N hold
+     * the values for N channels.
+     *
+     * Rows are read in windows sized by readWindowGovernor using hyperslab selections through H5ScalarDS;
+     * each block comes back as a row-major primitive array, which is copied column-by-column into the
+     * channel columns without boxing.
+     *
+     * @param h5File       HDF5 file object, used to access the Dataset through H5ScalarDS
+     * @param datasetName  full path of the Dataset
+     * @param objName      name of the Dataset within its Group; used to build the channel names
+     * @param typeName     element type, as returned by getTypeName()
+     * @param dims         dimensions of the table, {rows, columns}
+     * @param chunkRows    rows per chunk of the Dataset; 1 if it isn't chunked
+     * @return             the decoded columns
+     */
+    private DatasetColumns readScalarTable(H5File h5File, String datasetName, String objName, String typeName, long[] dims, long chunkRows) throws Exception {
+        int numRows = (int) dims[0];
+        int numCols = (int) dims[1];
+        NumericColumn timeColumn = NumericColumn.create("time", typeName, 0, numRows);
+        NumericColumn[] valueColumns = new NumericColumn[numCols - 1];
+        for (int col = 1; col < numCols; ++col) {
+            // A table with a single value column is saved to a channel named after the Dataset
+            String chanName = (numCols == 2) ? objName : objName + "/col" + col;
+            valueColumns[col - 1] = NumericColumn.create(chanName, typeName, 0, numRows);
+        }
+        setDeadbands(valueColumns);
+        DatasetColumns datasetColumns = new DatasetColumns(datasetName, timeColumn, valueColumns, numRows);
+
+        H5ScalarDS scalarDS = (H5ScalarDS) h5File.get(datasetName);
+        scalarDS.init();
+        long[] startDims = scalarDS.getStartDims();
+        long[] selectedDims = scalarDS.getSelectedDims();
+        int rowSize = numCols * (int) scalarDS.getDatatype().getDatatypeSize();
+        ReadWindowGovernor.Window window = readWindowGovernor.open(rowSize, 0, chunkRows, numCols - 1, numRows);
+        try {
+            int numBlockRows;
+            for (int firstRow = 0; firstRow < numRows; firstRow += numBlockRows) {
+                numBlockRows = Math.min(window.nextRows(), numRows - firstRow);
+                startDims[0] = firstRow;
+                startDims[1] = 0;
+                selectedDims[0] = numBlockRows;
+                selectedDims[1] = numCols;
+                ConversionEvents.DatasetRead readEvent = new ConversionEvents.DatasetRead();
+                readEvent.begin();
+                Object block = scalarDS.read();
+                readEvent.end(datasetName, firstRow, numBlockRows, (long) numBlockRows * rowSize);
+                ConversionEvents.Decode decodeEvent = new ConversionEvents.Decode();
+                decodeEvent.begin();
+                datasetColumns.decodeTable(block, numCols, firstRow, numBlockRows);
+                decodeEvent.end(datasetName, firstRow, numBlockRows);
+            }
+        } finally {
+            window.close();
+        }
+        scalarDS.clear();
+        return datasetColumns;
     }
 
     /**
@@ -702,7 +1427,8 @@ public class HDF5toCT {
     /**
      * Fetch all attributes associated with the given HDF5 object.
      *
-     * We use open source classes taken from HDFView to read the attributes (see hdf/object/h5/H5File).
+     * We use open source classes taken from HDFView to read the attributes (see hdf/object/h5/H5File); all the
+     * attributes of the object are visited in one H5Aiterate traversal and streamed to JSON (see AttributeJsonWriter).
      *
      * For details on how to read attributes: HDFView source code, src/hdf/object/h5/H5File.java, method getAttribute
      * Here's basic code on reading an attribute:
@@ -721,64 +1447,7 @@ public class HDF5toCT {
      * @return               a JSON string containing all attributes
      */
     private String getAttributes(long objID, String printPrefix) throws Exception {
-        JsonBuilderFactory factory = Json.createBuilderFactory(null);
-        JsonArrayBuilder jsonArrayBuilder = factory.createArrayBuilder();
-        List<Attribute> objAttributes = H5File.getAttribute(objID);
-        for (Attribute nextAtt : objAttributes) {
-            // Only handle attributes that are single values
-            // if ( (nextAtt.getRank() != 1) || (nextAtt.getDataDims()[0] != 1) ) {
-            //     continue;
-            // }
-            String nameStr = nextAtt.getName();
-            String valueStr = nextAtt.toString(",");
-            String typeStr = "";
-            switch (nextAtt.getType().getDatatypeClass()) {
-                case Datatype.CLASS_INTEGER:
-                    typeStr = "INTEGER";
-                    break;
-                case Datatype.CLASS_FLOAT:
-                    typeStr = "FLOAT";
-                    break;
-                case Datatype.CLASS_CHAR:
-                    typeStr = "CHAR";
-                    break;
-                case Datatype.CLASS_STRING:
-                    typeStr = "STRING";
-                    break;
-                case Datatype.CLASS_BITFIELD:
-                    typeStr = "BITFIELD";
-                    break;
-                case Datatype.CLASS_OPAQUE:
-                    typeStr = "OPAQUE";
-                    break;
-                case Datatype.CLASS_COMPOUND:
-                    typeStr = "COMPOUND";
-                    break;
-                case Datatype.CLASS_REFERENCE:
-                    typeStr = "REFERENCE";
-                    break;
-                case Datatype.CLASS_ENUM:
-                    typeStr = "ENUM";
-                    break;
-                case Datatype.CLASS_VLEN:
-                    typeStr = "VLEN";
-                    break;
-                case Datatype.CLASS_ARRAY:
-                    typeStr = "ARRAY";
-                    break;
-                case Datatype.CLASS_TIME:
-                    typeStr = "TIME";
-                    break;
-                default:
-                    typeStr = "UNKNOWN";
-                    break;
-            }
-            jsonArrayBuilder.add(factory.createObjectBuilder()
-                    .add("name", nameStr)
-                    .add("value", valueStr)
-                    .add("type", typeStr));
-        }
-        String attributesStr = jsonArrayBuilder.build().toString();
+        String attributesStr = attributeJsonWriter.toJson(objID);
         System.err.println(printPrefix + attributesStr);
         return attributesStr;
     }
@@ -787,52 +1456,23 @@ public class HDF5toCT {
      * A private class to store data about an element in a compound Datatype
      */
     private class DatatypeElementSpecification {
+        public int index = -1;          // index of the member in the Compound Datatype
         public String name = null;
         public String type = null;
         public long size = -1;
-        public long offset = -1;
+        public long offset = -1;        // offset in the file Datatype; updated to the packed memory layout by createMemoryType()
+        public int strPad = -1;         // padding of a fixed-length string member
+        public int cset = -1;           // character set of a fixed-length string member
+        public long vlMemtype = -1;     // memory Datatype used to read a variable-length string member
+        public int arrayLen = 0;        // for an Array member, the number of elements (type is then the element type)
 
         public DatatypeElementSpecification() {
             // nothing to do
         }
 
         public String toString() {
-            return new String(type + " " + name + ": size = " + size + ", offset = " + offset);
-        }
-    }
-
-    /**
-     * Private class for storing data in the TreeMultimap; each instance of this class stores one data value
-     * for one channel.
-     */
-    private class HDFValue implements Comparable<HDFValue> {
-        public String chanName = "";
-        // Data will either be stored in val or valStr (not both)
-        public Number val;
-        public String valStr = null;
-
-        @Override
-        public int compareTo(HDFValue otherHDFValue) {
-            return chanName.compareTo(otherHDFValue.chanName);
-        }
-
-        // Write data to CT using the given CTwriter.
-        public void putData(CTwriter ctw) throws Exception {
-            if (valStr != null) {
-                ctw.putData(chanName + ".txt", valStr);
-            } else {
-                if (val instanceof Double) {
-                    ctw.putData(chanName + ".f64", ((Double) val).doubleValue());
-                } else if (val instanceof Float) {
-                    ctw.putData(chanName + ".f32", ((Float) val).floatValue());
-                } else if (val instanceof Long) {
-                    ctw.putData(chanName + ".i64", ((Long) val).longValue());
-                } else if (val instanceof Integer) {
-                    ctw.putData(chanName + ".i32", ((Integer) val).intValue());
-                } else if (val instanceof Short) {
-                    ctw.putData(chanName + ".i16", ((Short) val).shortValue());
-                }
-            }
+            String typeStr = (arrayLen > 0) ? type + "[" + arrayLen + "]" : type;
+            return new String(typeStr + " " + name + ": size = " + size + ", offset = " + offset);
         }
     }
 
@@ -0,0 +1,113 @@
+/*
+Copyright 2017 Erigo Technologies LLC
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Include/exclude filter on names (Dataset paths or Compound member names).
+ *
+ * A name is accepted if it matches at least one include pattern (or there are no include patterns) and it
+ * doesn't match any exclude pattern.  Patterns are globs by default: "*" matches any run of characters other
+ * than "/", "**" matches any run of characters and "?" matches any one character other than "/".  A pattern
+ * starting with "re:" is instead taken as a Java regular expression.  Either way, the whole name must match.
+ */
+class NameFilter {
+    private static final String REGEX_PREFIX = "re:";
+
+    private final List<Pattern> includes = new ArrayList<Pattern>();
+    private final List<Pattern> excludes = new ArrayList<Pattern>();
+
+    /**
+     * @param includeSpecs  include patterns; may be null
+     * @param excludeSpecs  exclude patterns; may be null
+     */
+    public NameFilter(String[] includeSpecs, String[] excludeSpecs) {
+        if (includeSpecs != null) {
+            for (String spec : includeSpecs) {
+                includes.add(compile(spec));
+            }
+        }
+        if (excludeSpecs != null) {
+            for (String spec : excludeSpecs) {
+                excludes.add(compile(spec));
+            }
+        }
+    }
+
+    /**
+     * Does this filter accept every name?
+     */
+    public boolean isEmpty() {
+        return includes.isEmpty() && excludes.isEmpty();
+    }
+
+    public boolean accept(String name) {
+        boolean bIncluded = includes.isEmpty();
+        for (Pattern pattern : includes) {
+            if (pattern.matcher(name).matches()) {
+                bIncluded = true;
+                break;
+            }
+        }
+        if (!bIncluded) {
+            return false;
+        }
+        for (Pattern pattern : excludes) {
+            if (pattern.matcher(name).matches()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Compile a glob or "re:" regular expression pattern.
+     *
+     * @throws java.util.regex.PatternSyntaxException  if a regular expression is invalid
+     */
+    public static Pattern compile(String spec) {
+        if (spec.startsWith(REGEX_PREFIX)) {
+            return Pattern.compile(spec.substring(REGEX_PREFIX.length()));
+        }
+        StringBuilder regex = new StringBuilder();
+        StringBuilder literal = new StringBuilder();
+        for (int i = 0; i < spec.length(); ++i) {
+            char c = spec.charAt(i);
+            if ( (c != '*') && (c != '?') ) {
+                literal.append(c);
+                continue;
+            }
+            if (literal.length() > 0) {
+                regex.append(Pattern.quote(literal.toString()));
+                literal.setLength(0);
+            }
+            if (c == '?') {
+                regex.append("[^/]");
+            } else if ( (i + 1 < spec.length()) && (spec.charAt(i + 1) == '*') ) {
+                regex.append(".*");
+                ++i;
+            } else {
+                regex.append("[^/]*");
+            }
+        }
+        if (literal.length() > 0) {
+            regex.append(Pattern.quote(literal.toString()));
+        }
+        return Pattern.compile(regex.toString());
+    }
+}
@@ -0,0 +1,414 @@
+/*
+Copyright 2017 Erigo Technologies LLC
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+import java.nio.ByteBuffer;
+
+/**
+ * A column of numeric scalar values: the time column of a Dataset, or a channel whose values can be read back as
+ * numbers (for the time index, decimation and deadbands).  See ChannelColumn for how values are stored and written.
+ *
+ * A numeric column may have a deadband (see setDeadband()); it is applied as the samples are written, in time
+ * order, and samples within the deadband of the last sample kept aren't written.
+ */
+abstract class NumericColumn extends ChannelColumn {
+    private double deadband = -1.0;    // deadband tolerance; negative means no deadband
+    private boolean bKeptAny = false;  // has the deadband filter kept a sample yet?
+    private double lastKept = 0.0;     // value of the last sample kept by the deadband filter
+    private int numDropped = 0;        // number of samples dropped by the deadband filter
+
+    protected NumericColumn(String chanNameI, String typeI, int offsetI) {
+        super(chanNameI, typeI, offsetI);
+    }
+
+    /**
+     * Create a new numeric column.
+     *
+     * @param chanNameI  CT channel name (without the type suffix)
+     * @param typeI      member type, such as "double" or "unsigned int"
+     * @param offsetI    byte offset of the member within one Compound element
+     * @param nrows      number of rows the column must hold
+     * @return           the new column, or null if the type isn't a supported numeric type
+     */
+    public static NumericColumn create(String chanNameI, String typeI, int offsetI, int nrows) {
+        if (typeI.equals("double")) {
+            return new DoubleColumn(chanNameI, typeI, offsetI, nrows);
+        } else if (typeI.equals("float")) {
+            return new FloatColumn(chanNameI, typeI, offsetI, nrows);
+        } else if (typeI.equals("long")) {
+            return new LongColumn(chanNameI, typeI, offsetI, nrows);
+        } else if (typeI.equals("unsigned long")) {
+            return new UnsignedLongColumn(chanNameI, typeI, offsetI, nrows);
+        } else if (typeI.equals("int")) {
+            return new IntColumn(chanNameI, typeI, offsetI, nrows);
+        } else if (typeI.equals("unsigned int")) {
+            return new UnsignedIntColumn(chanNameI, typeI, offsetI, nrows);
+        } else if (typeI.equals("short")) {
+            return new ShortColumn(chanNameI, typeI, offsetI, nrows);
+        } else if (typeI.equals("unsigned short")) {
+            return new UnsignedShortColumn(chanNameI, typeI, offsetI, nrows);
+        }
+        return null;
+    }
+
+    /**
+     * Copy this channel's values out of a block of table rows, storing them starting at row firstRow.
+     *
+     * @param block      row-major primitive array of numRows x numCols values, as returned by H5ScalarDS.read();
+     *                   the array type must match this column's type
+     * @param numCols    number of columns in each row of the block
+     * @param col        the column in the block which holds this channel's values
+     * @param firstRow   row index at which to store the first value
+     * @param numRows    number of rows in the block
+     */
+    public abstract void decodeTable(Object block, int numCols, int col, int firstRow, int numRows);
+
+    /**
+     * Return the value at the given row as a double.
+     */
+    public abstract double getDouble(int row);
+
+    /**
+     * Return the value at the given row as a long; floating point values are truncated.
+     */
+    public abstract long getLong(int row);
+
+    /**
+     * Is this column an integer type?  If so, getLong() returns exact values (except for values of 2^63 and above
+     * in an unsigned 64-bit column; see isUnsignedLong()).
+     */
+    public boolean isIntegerType() {
+        return false;
+    }
+
+    /**
+     * Is this column an unsigned 64-bit integer type?  If so, it's an UnsignedLongColumn, and its values can be
+     * ordered exactly using UnsignedLongColumn.getUnsignedKey().
+     */
+    public boolean isUnsignedLong() {
+        return false;
+    }
+
+    /**
+     * Set a deadband on this column: a sample is dropped if it is within the given tolerance of the
+     * last sample kept.  A tolerance of 0 drops only samples equal to the last one kept (ie, change-only output).
+     *
+     * @param tolerance  the deadband; a negative value turns the deadband off
+     */
+    public void setDeadband(double tolerance) {
+        deadband = tolerance;
+        bKeptAny = false;
+        numDropped = 0;
+    }
+
+    /**
+     * Does this column have a deadband?
+     */
+    public boolean hasDeadband() {
+        return deadband >= 0.0;
+    }
+
+    /**
+     * Apply the deadband (if any) to the sample at the given row, which is about to be written.  Samples must be
+     * given in the order they are written (ie, time order); each is compared with the last sample kept.
+     *
+     * @param row    the row
+     * @param bKeep  must the sample be kept anyway? (eg, it's the channel's first or last sample in a CT block)
+     * @return       true if the sample is to be written, false if it's dropped
+     */
+    public boolean applyDeadband(int row, boolean bKeep) {
+        if (deadband < 0.0) {
+            return true;
+        }
+        double val = getDouble(row);
+        if (!bKeep && bKeptAny && (Math.abs(val - lastKept) <= deadband)) {
+            ++numDropped;
+            return false;
+        }
+        bKeptAny = true;
+        lastKept = val;
+        return true;
+    }
+
+    /**
+     * Return the number of samples dropped by the deadband filter.
+     */
+    public int getNumDropped() {
+        return numDropped;
+    }
+
+    static final class DoubleColumn extends NumericColumn {
+        private final double[] vals;
+
+        DoubleColumn(String chanNameI, String typeI, int offsetI, int nrows) {
+            super(chanNameI, typeI, offsetI);
+            vals = new double[nrows];
+        }
+
+        // Wrap values which have already been computed (for example, by Decimator)
+        DoubleColumn(String chanNameI, double[] valsI) {
+            super(chanNameI, "double", -1);
+            vals = valsI;
+        }
+
+        public void decode(ByteBuffer bb, int recordStart, int row) {
+            vals[row] = bb.getDouble(recordStart + offset);
+        }
+
+        public void decodeTable(Object block, int numCols, int col, int firstRow, int numRows) {
+            double[] src = (double[]) block;
+            for (int j = 0, idx = col; j < numRows; ++j, idx += numCols) {
+                vals[firstRow + j] = src[idx];
+            }
+        }
+
+        public double getDouble(int row) {
+            return vals[row];
+        }
+
+        public long getLong(int row) {
+            return (long) vals[row];
+        }
+
+        public void putData(OutputSink sink, int row) throws Exception {
+            sink.putData(chanName + ".f64", vals[row]);
+        }
+    }
+
+    static final class FloatColumn extends NumericColumn {
+        private final float[] vals;
+
+        FloatColumn(String chanNameI, String typeI, int offsetI, int nrows) {
+            super(chanNameI, typeI, offsetI);
+            vals = new float[nrows];
+        }
+
+        public void decode(ByteBuffer bb, int recordStart, int row) {
+            vals[row] = bb.getFloat(recordStart + offset);
+        }
+
+        public void decodeTable(Object block, int numCols, int col, int firstRow, int numRows) {
+            float[] src = (float[]) block;
+            for (int j = 0, idx = col; j < numRows; ++j, idx += numCols) {
+                vals[firstRow + j] = src[idx];
+            }
+        }
+
+        public double getDouble(int row) {
+            return vals[row];
+        }
+
+        public long getLong(int row) {
+            return (long) vals[row];
+        }
+
+        public void putData(OutputSink sink, int row) throws Exception {
+            sink.putData(chanName + ".f32", vals[row]);
+        }
+    }
+
+    static class LongColumn extends NumericColumn {
+        protected final long[] vals;
+
+        LongColumn(String chanNameI, String typeI, int offsetI, int nrows) {
+            super(chanNameI, typeI, offsetI);
+            vals = new long[nrows];
+        }
+
+        public void decode(ByteBuffer bb, int recordStart, int row) {
+            vals[row] = bb.getLong(recordStart + offset);
+        }
+
+        public void decodeTable(Object block, int numCols, int col, int firstRow, int numRows) {
+            long[] src = (long[]) block;
+            for (int j = 0, idx = col; j < numRows; ++j, idx += numCols) {
+                vals[firstRow + j] = src[idx];
+            }
+        }
+
+        public double getDouble(int row) {
+            return vals[row];
+        }
+
+        public long getLong(int row) {
+            return vals[row];
+        }
+
+        public boolean isIntegerType() {
+            return true;
+        }
+
+        public void putData(OutputSink sink, int row) throws Exception {
+            sink.putData(chanName + ".i64", vals[row]);
+        }
+    }
+
+    static class IntColumn extends NumericColumn {
+        protected final int[] vals;
+
+        IntColumn(String chanNameI, String typeI, int offsetI, int nrows) {
+            super(chanNameI, typeI, offsetI);
+            vals = new int[nrows];
+        }
+
+        // Wrap values which have already been computed (for example, by Decimator)
+        IntColumn(String chanNameI, int[] valsI) {
+            super(chanNameI, "int", -1);
+            vals = valsI;
+        }
+
+        public void decode(ByteBuffer bb, int recordStart, int row) {
+            vals[row] = bb.getInt(recordStart + offset);
+        }
+
+        public void decodeTable(Object block, int numCols, int col, int firstRow, int numRows) {
+            int[] src = (int[]) block;
+            for (int j = 0, idx = col; j < numRows; ++j, idx += numCols) {
+                vals[firstRow + j] = src[idx];
+            }
+        }
+
+        public double getDouble(int row) {
+            return vals[row];
+        }
+
+        public long getLong(int row) {
+            return vals[row];
+        }
+
+        public boolean isIntegerType() {
+            return true;
+        }
+
+        public void putData(OutputSink sink, int row) throws Exception {
+            sink.putData(chanName + ".i32", vals[row]);
+        }
+    }
+
+    static class ShortColumn extends NumericColumn {
+        protected final short[] vals;
+
+        ShortColumn(String chanNameI, String typeI, int offsetI, int nrows) {
+            super(chanNameI, typeI, offsetI);
+            vals = new short[nrows];
+        }
+
+        public void decode(ByteBuffer bb, int recordStart, int row) {
+            vals[row] = bb.getShort(recordStart + offset);
+        }
+
+        public void decodeTable(Object block, int numCols, int col, int firstRow, int numRows) {
+            short[] src = (short[]) block;
+            for (int j = 0, idx = col; j < numRows; ++j, idx += numCols) {
+                vals[firstRow + j] = src[idx];
+            }
+        }
+
+        public double getDouble(int row) {
+            return vals[row];
+        }
+
+        public long getLong(int row) {
+            return vals[row];
+        }
+
+        public boolean isIntegerType() {
+            return true;
+        }
+
+        public void putData(OutputSink sink, int row) throws Exception {
+            sink.putData(chanName + ".i16", vals[row]);
+        }
+    }
+
+    static final class UnsignedLongColumn extends LongColumn {
+        UnsignedLongColumn(String chanNameI, String typeI, int offsetI, int nrows) {
+            super(chanNameI, typeI, offsetI, nrows);
+        }
+
+        public double getDouble(int row) {
+            return unsignedToDouble(vals[row]);
+        }
+
+        // Values of 2^63 and above can't be held in a long; they are clamped to Long.MAX_VALUE.
+        public long getLong(int row) {
+            long val = vals[row];
+            return (val >= 0) ? val : Long.MAX_VALUE;
+        }
+
+        public boolean isUnsignedLong() {
+            return true;
+        }
+
+        /**
+         * Return a key for the value at the given row which sorts (as a signed long) in the same order as the
+         * unsigned values: the value with its top bit flipped.
+         */
+        public long getUnsignedKey(int row) {
+            return vals[row] ^ Long.MIN_VALUE;
+        }
+
+        /**
+         * Convert the raw bits of an unsigned 64-bit value to a double.
+         */
+        public static double unsignedToDouble(long val) {
+            if (val >= 0) {
+                return val;
+            }
+            // Value is 2^63 or above; halve it (keeping the low bit so rounding is correct) then double it
+            return ((val >>> 1) | (val & 1)) * 2.0;
+        }
+
+        public void putData(OutputSink sink, int row) throws Exception {
+            sink.putData(chanName + ".num", Long.toUnsignedString(vals[row]));
+        }
+    }
+
+    static final class UnsignedIntColumn extends IntColumn {
+        UnsignedIntColumn(String chanNameI, String typeI, int offsetI, int nrows) {
+            super(chanNameI, typeI, offsetI, nrows);
+        }
+
+        public double getDouble(int row) {
+            return getLong(row);
+        }
+
+        public long getLong(int row) {
+            return vals[row] & 0xFFFFFFFFL;
+        }
+
+        public void putData(OutputSink sink, int row) throws Exception {
+            sink.putData(chanName + ".i64", vals[row] & 0xFFFFFFFFL);
+        }
+    }
+
+    static final class UnsignedShortColumn extends ShortColumn {
+        UnsignedShortColumn(String chanNameI, String typeI, int offsetI, int nrows) {
+            super(chanNameI, typeI, offsetI, nrows);
+        }
+
+        public double getDouble(int row) {
+            return vals[row] & 0xFFFF;
+        }
+
+        public long getLong(int row) {
+            return vals[row] & 0xFFFF;
+        }
+
+        public void putData(OutputSink sink, int row) throws Exception {
+            sink.putData(chanName + ".i32", vals[row] & 0xFFFF);
+        }
+    }
+}
@@ -0,0 +1,51 @@
+/*
+Copyright 2017 Erigo Technologies LLC
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+/**
+ * Destination for the decoded, time-ordered samples written by HDF5toCT.
+ *
+ * The caller sets the time and then puts the values of every channel sampled at that time; this mirrors CTwriter,
+ * so channel names carry CT type suffixes (for example "Foo1/chan1.f64" or "Foo1/label.txt").  See CTSink, which
+ * writes CloudTurbine folders, and ColumnarSink, which writes one pair of primitive column files per channel.
+ */
+interface OutputSink {
+    /**
+     * Set the time (seconds since epoch) of the values put next.
+     */
+    void setTime(double time) throws Exception;
+
+    void putData(String chanName, double val) throws Exception;
+
+    void putData(String chanName, float val) throws Exception;
+
+    void putData(String chanName, long val) throws Exception;
+
+    void putData(String chanName, int val) throws Exception;
+
+    void putData(String chanName, short val) throws Exception;
+
+    void putData(String chanName, String val) throws Exception;
+
+    /**
+     * Put a binary block (eg, a packed array) for one channel.
+     */
+    void putData(String chanName, byte[] val) throws Exception;
+
+    /**
+     * Write out everything put so far and release the sink's resources.
+     */
+    void close() throws Exception;
+}
@@ -0,0 +1,188 @@
+/*
+Copyright 2017 Erigo Technologies LLC
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryUsage;
+import java.util.List;
+
+/**
+ * Size the windows (hyperslabs of rows) in which HDF5toCT reads each Dataset.
+ *
+ * A window that is too small makes the per-call JNI and HDF5 overhead dominate; one that is too large takes heap
+ * away from the decoded columns, which are all kept in memory until the sort.  The governor starts each Dataset
+ * with the largest window that fits its share of the heap budget and adapts it between windows:
+ *
+ *   - the budget is the configured read budget, or 1/16 of the maximum heap (at most DEFAULT_MAX_BUDGET_BYTES),
+ *     further limited to a quarter of the heap that is currently free;
+ *   - the budget is shared by the channels being read at the same time; a Dataset's share is proportional to
+ *     its number of channels (a variable-length string channel also counts the Strings it reads per row);
+ *   - a window holds a whole number of chunks (for chunked Datasets, unless one chunk is larger than the
+ *     Dataset's share), so no chunk is decompressed twice, and at least MIN_WINDOW_BYTES so the JNI overhead
+ *     stays small;
+ *   - after each window, the fraction of the elapsed time spent in GC and the heap occupancy are sampled: under
+ *     GC pressure the window is halved, and when the heap is idle it is doubled, within the limits above.
+ *
+ * Windows only change size by whole chunks, so a Dataset is read in chunk-aligned hyperslabs.
+ */
+class ReadWindowGovernor {
+    private static final long DEFAULT_MAX_BUDGET_BYTES = 64L * 1024 * 1024;
+    private static final long MIN_WINDOW_BYTES = 256L * 1024;
+    private static final int VL_STRING_BYTES = 64;          // estimated heap used per variable-length String read
+    private static final double HIGH_GC_FRACTION = 0.10;    // shrink when GC takes more than this fraction of the time
+    private static final double LOW_GC_FRACTION = 0.02;     // only grow when GC takes less than this
+    private static final double HIGH_HEAP_FRACTION = 0.85;  // shrink when more than this fraction of the heap is used
+    private static final double LOW_HEAP_FRACTION = 0.50;   // only grow when less than this is used
+
+    private final long budgetBytes;
+    private final List<GarbageCollectorMXBean> gcBeans = ManagementFactory.getGarbageCollectorMXBeans();
+    private int openChannels = 0;       // channels of the Datasets currently being read
+    private long lastGcMillis = 0;
+    private long lastSampleNanos = -1;  // time of the previous GC sample; -1 before the first one
+
+    /**
+     * @param budgetBytesI  maximum bytes read at one time; 0 or less for the default (1/16 of the maximum heap)
+     */
+    public ReadWindowGovernor(long budgetBytesI) {
+        if (budgetBytesI > 0) {
+            budgetBytes = budgetBytesI;
+        } else {
+            budgetBytes = Math.max(MIN_WINDOW_BYTES, Math.min(DEFAULT_MAX_BUDGET_BYTES, Runtime.getRuntime().maxMemory() / 16));
+        }
+    }
+
+    public long getBudgetBytes() {
+        return budgetBytes;
+    }
+
+    /**
+     * One Dataset's windows.  Call nextRows() before reading each window and close() after the last one.
+     */
+    class Window {
+        private final long rowBytes;        // heap used per row of a window
+        private final long chunkRows;       // window sizes are a multiple of this
+        private final int numChannels;
+        private final long maxRows;         // largest window; the whole Dataset at most
+        private final long minRows;         // smallest window
+        private long rows;                  // current window size
+
+        private Window(long rowBytesI, long chunkRowsI, int numChannelsI, long numRows) {
+            rowBytes = Math.max(1, rowBytesI);
+            numChannels = numChannelsI;
+            openChannels += numChannels;
+            long shareBytes = Math.max(MIN_WINDOW_BYTES, Math.min(budgetBytes * numChannels / openChannels, getFreeHeapBytes() / 4));
+            // If even one chunk doesn't fit, windows aren't chunk-aligned (chunks are then decompressed more than once)
+            chunkRows = (Math.max(1, chunkRowsI) * rowBytes <= shareBytes) ? Math.max(1, chunkRowsI) : 1;
+            // Round the share down (a window must fit it) but the Dataset up (the last window is trimmed by the caller)
+            long shareRows = Math.max(chunkRows, (shareBytes / rowBytes) / chunkRows * chunkRows);
+            maxRows = Math.min(alignRows(shareRows), alignRows(numRows));
+            minRows = Math.min(alignRows(MIN_WINDOW_BYTES / rowBytes), maxRows);
+            rows = maxRows;
+            sample();
+        }
+
+        /**
+         * Round the given number of rows up to a whole number of chunks (at least one), and down to what a Java
+         * array can hold.
+         */
+        private long alignRows(long numRows) {
+            long aligned = Math.max(1, (numRows + chunkRows - 1) / chunkRows) * chunkRows;
+            long maxArrayRows = (Integer.MAX_VALUE - 8) / rowBytes;
+            while ( (aligned > maxArrayRows) && (aligned > chunkRows) ) {
+                aligned -= chunkRows;
+            }
+            return aligned;
+        }
+
+        /**
+         * @return the largest number of rows nextRows() will return, to size the read buffers
+         */
+        public int getMaxRows() {
+            return (int) maxRows;
+        }
+
+        /**
+         * Return the size of the next window, adjusted for the GC activity and heap occupancy since the previous
+         * call.
+         */
+        public int nextRows() {
+            double gcFraction = sample();
+            double heapFraction = getHeapFraction();
+            if ( (gcFraction > HIGH_GC_FRACTION) || (heapFraction > HIGH_HEAP_FRACTION) ) {
+                rows = Math.max(minRows, alignRows(rows / 2));
+            } else if ( (gcFraction < LOW_GC_FRACTION) && (heapFraction < LOW_HEAP_FRACTION) ) {
+                rows = Math.min(maxRows, alignRows(rows * 2));
+            }
+            return (int) rows;
+        }
+
+        /**
+         * The Dataset has been read; release its share of the budget.
+         */
+        public void close() {
+            openChannels -= numChannels;
+        }
+    }
+
+    /**
+     * Start reading a Dataset.
+     *
+     * @param recordBytes     size of one row in the read buffer (H5Tget_size of the memory Datatype)
+     * @param numVlChannels   number of variable-length string channels, each read into a String per row
+     * @param chunkRows       rows per chunk of a chunked Dataset; 1 for a contiguous Dataset
+     * @param numChannels     number of channels decoded from the Dataset
+     * @param numRows         number of rows in the Dataset
+     */
+    public Window open(long recordBytes, int numVlChannels, long chunkRows, int numChannels, long numRows) {
+        return new Window(recordBytes + (long) numVlChannels * VL_STRING_BYTES, chunkRows, Math.max(1, numChannels), numRows);
+    }
+
+    /**
+     * Sample the total GC time.
+     *
+     * @return the fraction of the wall clock time since the previous sample that was spent in GC
+     */
+    private double sample() {
+        long gcMillis = 0;
+        for (GarbageCollectorMXBean gcBean : gcBeans) {
+            gcMillis += Math.max(0, gcBean.getCollectionTime());
+        }
+        long now = System.nanoTime();
+        double elapsedMillis = (now - lastSampleNanos) / 1.0e6;
+        double fraction = ( (lastSampleNanos == -1) || (elapsedMillis <= 0) ) ? 0.0 : (gcMillis - lastGcMillis) / elapsedMillis;
+        lastGcMillis = gcMillis;
+        lastSampleNanos = now;
+        return fraction;
+    }
+
+    /**
+     * @return the fraction of the maximum heap that is in use
+     */
+    private static double getHeapFraction() {
+        MemoryUsage heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+        long max = (heap.getMax() > 0) ? heap.getMax() : Runtime.getRuntime().maxMemory();
+        return (double) heap.getUsed() / max;
+    }
+
+    /**
+     * @return the heap that can still be allocated: the maximum heap less what is in use
+     */
+    private static long getFreeHeapBytes() {
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.maxMemory() - (runtime.totalMemory() - runtime.freeMemory());
+    }
+}
@@ -0,0 +1,198 @@
+/*
+Copyright 2017 Erigo Technologies LLC
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+import hdf.hdf5lib.H5;
+import hdf.hdf5lib.HDF5Constants;
+import hdf.hdf5lib.structs.H5O_info_t;
+import hdf.object.Attribute;
+import hdf.object.Dataset;
+import hdf.object.FileFormat;
+import hdf.object.Group;
+import hdf.object.HObject;
+import hdf.object.h5.H5File;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Copy the top parent group of an HDF5 file (and the root's attributes) to a new file, re-chunking and
+ * re-compressing its Datasets; for example, to make a time-chunked copy of a legacy file before converting it.
+ *
+ * Each Dataset is streamed a block of chunks at a time (see H5File.copyDatasetChunked()), so files much larger
+ * than the heap can be repacked.  The new chunks span chunkRows rows along the first (time) dimension and the
+ * whole of any other dimensions.
+ *
+ * The destination file must not exist unless bOverwrite is set, and it may never be the source file itself.
+ * Only Datasets are copied; subgroups and other objects in the top parent group are reported and skipped.  Files
+ * whose copied objects hold object references are refused, since the references can't be updated in a partial copy.
+ */
+class Repacker {
+    private final String srcFileName;
+    private final String dstFileName;
+    private final long chunkRows;        // rows per chunk in the new Datasets; 0 keeps each Dataset's layout
+    private final int deflateLevel;      // gzip level of the new Datasets; negative keeps each Dataset's filters
+    private final NameFilter datasetFilter;
+    private final boolean bOverwrite;    // may an existing destination file be replaced?
+
+    public Repacker(String srcFileNameI, String dstFileNameI, long chunkRowsI, int deflateLevelI, NameFilter datasetFilterI, boolean bOverwriteI) {
+        srcFileName = srcFileNameI;
+        dstFileName = dstFileNameI;
+        chunkRows = chunkRowsI;
+        deflateLevel = deflateLevelI;
+        datasetFilter = datasetFilterI;
+        bOverwrite = bOverwriteI;
+    }
+
+    public void repack() throws Exception {
+        // Creating the destination deletes any existing file there, so make sure that isn't the source or
+        // something the user didn't mean to replace
+        File srcPath = new File(srcFileName);
+        File dstPath = new File(dstFileName);
+        if (dstPath.getCanonicalPath().equals(srcPath.getCanonicalPath())) {
+            throw new Exception("The repack destination is the input file: " + dstFileName);
+        }
+        if (dstPath.exists() && !bOverwrite) {
+            throw new Exception("The repack destination already exists (use \"-ro\" to overwrite it): " + dstFileName);
+        }
+
+        H5File srcFile = new H5File(srcFileName, FileFormat.READ);
+        try {
+            srcFile.open();
+            Group srcRoot = (Group) srcFile.getRootObject();
+            Group srcTop = null;
+            for (HObject obj : srcRoot.getMemberList()) {
+                if (obj instanceof Group) {
+                    srcTop = (Group) obj;
+                    break;
+                }
+            }
+            if (srcTop == null) {
+                System.err.println("There are no child Groups under \"/\"; nothing to repack");
+                return;
+            }
+            List<Dataset> srcDatasets = new ArrayList<Dataset>();
+            for (HObject obj : srcTop.getMemberList()) {
+                if (!(obj instanceof Dataset)) {
+                    System.err.println("Skipping " + obj.getFullName() + ": " + ((obj instanceof Group) ? "subgroups" : "objects other than Datasets") + " aren't repacked");
+                    continue;
+                }
+                if (datasetFilter.accept(obj.getName())) {
+                    srcDatasets.add((Dataset) obj);
+                }
+            }
+
+            // Object references are copied as they are, so in the new file they would point at the wrong objects (or
+            // at nothing); H5File.updateReferenceDataset() can only fix them in a copy of the whole file.  Refuse to
+            // repack anything holding references, before the destination file is created.
+            List<HObject> copiedObjects = new ArrayList<HObject>();
+            copiedObjects.add(srcRoot);
+            copiedObjects.add(srcTop);
+            copiedObjects.addAll(srcDatasets);
+            for (HObject obj : copiedObjects) {
+                if (hasReferences(srcFile.getFID(), obj.getFullName())) {
+                    throw new Exception("Can't repack " + obj.getFullName() + ": it (or one of its attributes) holds object references, which would be invalid in the repacked file");
+                }
+            }
+
+            H5File dstFile = (H5File) FileFormat.getFileFormat(FileFormat.FILE_TYPE_HDF5).createFile(dstFileName, FileFormat.FILE_CREATE_DELETE);
+            try {
+                dstFile.open();
+                Group dstRoot = (Group) dstFile.getRootObject();
+                copyAttributes(srcRoot, dstRoot, dstFile);
+                Group dstTop = dstFile.createGroup(srcTop.getName(), dstRoot);
+                copyAttributes(srcTop, dstTop, dstFile);
+
+                H5File.CopyProgressListener listener = new H5File.CopyProgressListener() {
+                    private int lastTenth = -1;
+                    public void copyProgress(String datasetName, long rowsCopied, long totalRows) {
+                        int tenth = (int) (10 * rowsCopied / Math.max(totalRows, 1));
+                        if ( (tenth != lastTenth) || (rowsCopied == totalRows) ) {
+                            System.err.println("\t" + datasetName + ": copied " + rowsCopied + " of " + totalRows + " rows");
+                            lastTenth = (rowsCopied == totalRows) ? -1 : tenth;
+                        }
+                    }
+                };
+                for (Dataset srcDataset : srcDatasets) {
+                    long[] chunkDims = null;
+                    if (chunkRows > 0) {
+                        srcDataset.init();
+                        chunkDims = srcDataset.getDims().clone();
+                        chunkDims[0] = chunkRows;
+                    }
+                    System.err.println("Repacking " + srcDataset.getFullName());
+                    dstFile.copyDatasetChunked(srcDataset, dstTop, null, chunkDims, deflateLevel, listener);
+                }
+            } finally {
+                dstFile.close();
+            }
+        } finally {
+            srcFile.close();
+        }
+    }
+
+    /**
+     * Does the object at the given path, or any of its attributes, hold object or region references?  The whole of
+     * each Datatype is checked (eg, Compound members and variable-length sequences of references).
+     */
+    private static boolean hasReferences(long fid, String path) throws Exception {
+        long oid = H5.H5Oopen(fid, path, HDF5Constants.H5P_DEFAULT);
+        try {
+            H5O_info_t info = H5.H5Oget_info(oid);
+            if ( (info.type == HDF5Constants.H5O_TYPE_DATASET) && hasReferences(H5.H5Dget_type(oid)) ) {
+                return true;
+            }
+            for (long i = 0; i < info.num_attrs; ++i) {
+                long aid = H5.H5Aopen_by_idx(oid, ".", HDF5Constants.H5_INDEX_NAME, HDF5Constants.H5_ITER_INC, i, HDF5Constants.H5P_DEFAULT, HDF5Constants.H5P_DEFAULT);
+                try {
+                    if (hasReferences(H5.H5Aget_type(aid))) {
+                        return true;
+                    }
+                } finally {
+                    H5.H5Aclose(aid);
+                }
+            }
+        } finally {
+            H5.H5Oclose(oid);
+        }
+        return false;
+    }
+
+    /**
+     * Does the given Datatype hold references?  The Datatype is closed.
+     */
+    private static boolean hasReferences(long tid) throws Exception {
+        try {
+            return H5.H5Tdetect_class(tid, HDF5Constants.H5T_REFERENCE);
+        } finally {
+            H5.H5Tclose(tid);
+        }
+    }
+
+    /**
+     * Copy all the attributes of one object to another.
+     */
+    @SuppressWarnings("unchecked")
+    private static void copyAttributes(HObject srcObj, HObject dstObj, H5File dstFile) throws Exception {
+        List<Attribute> attributeList = (List<Attribute>) srcObj.getMetadata();
+        if (attributeList == null) {
+            return;
+        }
+        for (Attribute attr : attributeList) {
+            dstFile.writeAttribute(dstObj, attr, false);
+        }
+    }
+}
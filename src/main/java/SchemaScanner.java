@@ -0,0 +1,364 @@
+/*
+Copyright 2017 Erigo Technologies LLC
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+import hdf.hdf5lib.H5;
+import hdf.hdf5lib.HDF5Constants;
+import hdf.hdf5lib.structs.H5G_info_t;
+import hdf.object.h5.H5Datatype;
+
+import java.io.File;
+
+import javax.json.Json;
+import javax.json.JsonArrayBuilder;
+import javax.json.JsonBuilderFactory;
+import javax.json.JsonObject;
+import javax.json.JsonObjectBuilder;
+
+/**
+ * Metadata-only scan of an HDF5 file, summarizing what a conversion would read and write.
+ *
+ * For each Dataset under the top parent group (the same Datasets HDF5toCT converts, after the include/exclude
+ * filters) we report the Datatype and its members, dimensions, chunk layout, filters, the bytes stored in the
+ * file and an estimate of the bytes written to CT.  Only the Dataspace, Datatype and creation properties are
+ * read; no sample data is touched, so even large files are scanned in milliseconds.
+ *
+ * A Dataset is reported as convertible only if HDF5toCT would convert it: every Compound member must be of a
+ * type HDF5toCT handles (see getOutputBytes()) and the time member must be a numeric scalar.
+ *
+ * The output size estimate is the number of rows times the (uncompressed) size of the channels' values as
+ * HDF5toCT writes them (eg, unsigned types are widened, and "unsigned long" values are written as ASCII numbers);
+ * timestamps, CT folder overhead and ZIP compression aren't included.  Variable-length strings are counted at
+ * the size of their in-file descriptor, since their actual length can't be known without reading them.
+ */
+class SchemaScanner {
+    private static final long UNSIGNED_LONG_TEXT_BYTES = 20;  // most digits in an "unsigned long" written as text
+
+    private final String fileFullPathName;
+    private final NameFilter datasetFilter;
+    private final NameFilter memberFilter;
+    private final JsonBuilderFactory factory = Json.createBuilderFactory(null);
+
+    public SchemaScanner(String fileFullPathNameI, NameFilter datasetFilterI, NameFilter memberFilterI) {
+        fileFullPathName = fileFullPathNameI;
+        datasetFilter = datasetFilterI;
+        memberFilter = memberFilterI;
+    }
+
+    /**
+     * Scan the file.
+     *
+     * @return JSON summary of the file and of each Dataset in its top parent group
+     */
+    public JsonObject scan() throws Exception {
+        long startTime = System.nanoTime();
+        JsonObjectBuilder fileBuilder = factory.createObjectBuilder()
+                .add("file", fileFullPathName)
+                .add("fileBytes", new File(fileFullPathName).length());
+        JsonArrayBuilder datasetsBuilder = factory.createArrayBuilder();
+        int numDatasets = 0;
+        int numSkipped = 0;
+        long numChannels = 0;
+        long numRows = 0;
+        long storageBytes = 0;
+        long outputBytes = 0;
+
+        long fid = H5.H5Fopen(fileFullPathName, HDF5Constants.H5F_ACC_RDONLY, HDF5Constants.H5P_DEFAULT);
+        try {
+            // The first Group under the root is the top parent group, as in HDF5toCT
+            String topParentGroup = null;
+            String[] objNames = new String[getNumLinks(fid, "/")];
+            int[] objTypes = new int[objNames.length];
+            listGroup(fid, "/", objNames, objTypes);
+            for (int i = 0; i < objNames.length; ++i) {
+                if (objTypes[i] == HDF5Constants.H5O_TYPE_GROUP) {
+                    topParentGroup = objNames[i];
+                    break;
+                }
+            }
+            if (topParentGroup == null) {
+                return fileBuilder.add("error", "no child Groups under \"/\"").build();
+            }
+            fileBuilder.add("topGroup", topParentGroup);
+
+            objNames = new String[getNumLinks(fid, topParentGroup)];
+            objTypes = new int[objNames.length];
+            listGroup(fid, topParentGroup, objNames, objTypes);
+            for (int i = 0; i < objNames.length; ++i) {
+                if (objTypes[i] != HDF5Constants.H5O_TYPE_DATASET) {
+                    continue;
+                }
+                if (!datasetFilter.accept(objNames[i])) {
+                    ++numSkipped;
+                    continue;
+                }
+                JsonObject datasetSummary = scanDataset(fid, "/" + topParentGroup + "/" + objNames[i]);
+                datasetsBuilder.add(datasetSummary);
+                ++numDatasets;
+                numChannels += datasetSummary.getJsonNumber("channels").longValue();
+                numRows += datasetSummary.getJsonNumber("rows").longValue();
+                storageBytes += datasetSummary.getJsonNumber("storageBytes").longValue();
+                outputBytes += datasetSummary.getJsonNumber("estimatedOutputBytes").longValue();
+            }
+        } finally {
+            H5.H5Fclose(fid);
+        }
+
+        return fileBuilder
+                .add("datasets", numDatasets)
+                .add("skippedDatasets", numSkipped)
+                .add("channels", numChannels)
+                .add("rows", numRows)
+                .add("storageBytes", storageBytes)
+                .add("estimatedOutputBytes", outputBytes)
+                .add("scanMillis", (System.nanoTime() - startTime) / 1000000)
+                .add("datasetList", datasetsBuilder)
+                .build();
+    }
+
+    /**
+     * Return the number of links (child objects) in the given Group.
+     */
+    private static int getNumLinks(long fid, String groupName) throws Exception {
+        long gid = H5.H5Gopen(fid, groupName, HDF5Constants.H5P_DEFAULT);
+        try {
+            H5G_info_t info = H5.H5Gget_info(gid);
+            return (int) info.nlinks;
+        } finally {
+            H5.H5Gclose(gid);
+        }
+    }
+
+    /**
+     * Fill in the names and types of the objects in the given Group; the arrays must be sized by getNumLinks().
+     */
+    private static void listGroup(long fid, String groupName, String[] objNames, int[] objTypes) throws Exception {
+        int nelems = objNames.length;
+        if (nelems > 0) {
+            H5.H5Gget_obj_info_full(fid, groupName, objNames, objTypes, null, new long[nelems], new long[nelems], HDF5Constants.H5_INDEX_NAME, HDF5Constants.H5_ITER_INC);
+        }
+    }
+
+    /**
+     * Summarize one Dataset.
+     */
+    private JsonObject scanDataset(long fid, String datasetName) throws Exception {
+        JsonObjectBuilder builder = factory.createObjectBuilder().add("name", datasetName);
+        long[] dims = null;
+        long rows = 0;
+        long channels = 0;
+        long bytesPerRow = 0;
+        boolean bConvertible = false;
+
+        long did = H5.H5Dopen(fid, datasetName, HDF5Constants.H5P_DEFAULT);
+        try {
+            long sid = H5.H5Dget_space(did);
+            try {
+                int rank = H5.H5Sget_simple_extent_ndims(sid);
+                dims = new long[rank];
+                if (rank > 0) {
+                    H5.H5Sget_simple_extent_dims(sid, dims, null);
+                }
+            } finally {
+                H5.H5Sclose(sid);
+            }
+            rows = (dims.length > 0) ? dims[0] : 1;
+
+            long tid = H5.H5Dget_type(did);
+            try {
+                int tclass = H5.H5Tget_class(tid);
+                long recordBytes = H5.H5Tget_size(tid);
+                builder.add("type", describeType(tid)).add("recordBytes", recordBytes);
+                if (tclass == HDF5Constants.H5T_COMPOUND) {
+                    JsonArrayBuilder membersBuilder = factory.createArrayBuilder();
+                    int numMembers = H5.H5Tget_nmembers(tid);
+                    int numTimeMembers = 0;
+                    boolean bSupported = true;
+                    boolean bTimeNumeric = false;
+                    for (int j = 0; j < numMembers; ++j) {
+                        String memberName = H5.H5Tget_member_name(tid, j);
+                        long memberType = H5.H5Tget_member_type(tid, j);
+                        long memberBytes;
+                        long outputBytes;
+                        int memberClass;
+                        String memberDesc;
+                        try {
+                            memberBytes = H5.H5Tget_size(memberType);
+                            outputBytes = getOutputBytes(memberType);
+                            memberClass = H5.H5Tget_class(memberType);
+                            memberDesc = describeType(memberType);
+                        } finally {
+                            H5.H5Tclose(memberType);
+                        }
+                        boolean bTime = memberName.equalsIgnoreCase("time");
+                        boolean bSelected = bTime || memberFilter.accept(memberName);
+                        // HDF5toCT skips a Dataset with any member it can't handle, selected or not
+                        bSupported = bSupported && (outputBytes >= 0);
+                        if (bTime) {
+                            ++numTimeMembers;
+                            bTimeNumeric = ( (memberClass == HDF5Constants.H5T_FLOAT) || (memberClass == HDF5Constants.H5T_INTEGER) ) && (outputBytes >= 0);
+                        } else if (bSelected) {
+                            ++channels;
+                            bytesPerRow += Math.max(outputBytes, 0);
+                        }
+                        membersBuilder.add(factory.createObjectBuilder()
+                                .add("name", memberName)
+                                .add("type", memberDesc)
+                                .add("bytes", memberBytes)
+                                .add("supported", outputBytes >= 0)
+                                .add("selected", bSelected));
+                    }
+                    builder.add("members", membersBuilder);
+                    bConvertible = bSupported && (numTimeMembers == 1) && bTimeNumeric && (dims.length == 1) && (channels > 0);
+                } else if ( ((tclass == HDF5Constants.H5T_FLOAT) || (tclass == HDF5Constants.H5T_INTEGER)) && (dims.length == 2) && (dims[1] >= 2) ) {
+                    long outputBytes = getOutputBytes(tid);
+                    channels = dims[1] - 1;
+                    bytesPerRow = channels * outputBytes;
+                    bConvertible = (outputBytes >= 0);
+                }
+            } finally {
+                H5.H5Tclose(tid);
+            }
+            builder.add("storageBytes", H5.H5Dget_storage_size(did));
+
+            // Chunk layout and filters, straight from the Dataset's creation properties
+            long pid = H5.H5Dget_create_plist(did);
+            try {
+                if (H5.H5Pget_layout(pid) == HDF5Constants.H5D_CHUNKED) {
+                    long[] chunkDims = new long[Math.max(dims.length, 1)];
+                    H5.H5Pget_chunk(pid, chunkDims.length, chunkDims);
+                    JsonArrayBuilder chunkBuilder = factory.createArrayBuilder();
+                    for (long dim : chunkDims) {
+                        chunkBuilder.add(dim);
+                    }
+                    builder.add("chunk", chunkBuilder);
+                } else {
+                    builder.addNull("chunk");
+                }
+                builder.add("filters", describeFilters(pid));
+            } finally {
+                H5.H5Pclose(pid);
+            }
+        } finally {
+            H5.H5Dclose(did);
+        }
+
+        JsonArrayBuilder dimsBuilder = factory.createArrayBuilder();
+        for (long dim : dims) {
+            dimsBuilder.add(dim);
+        }
+        builder.add("dims", dimsBuilder).add("rows", rows);
+
+        if (!bConvertible) {
+            channels = 0;
+            bytesPerRow = 0;
+        }
+        return builder
+                .add("convertible", bConvertible)
+                .add("channels", channels)
+                .add("estimatedOutputBytes", rows * bytesPerRow)
+                .build();
+    }
+
+    private static String describeType(long tid) {
+        return new H5Datatype(tid).getDatatypeDescription();
+    }
+
+    /**
+     * Return the filters in a Dataset creation property list, eg "SHUFFLE, GZIP: level = 6", or "NONE".
+     */
+    private static String describeFilters(long pid) throws Exception {
+        int numFilters = H5.H5Pget_nfilters(pid);
+        if (numFilters <= 0) {
+            return "NONE";
+        }
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < numFilters; ++i) {
+            int[] flags = { 0 };
+            long[] cdNelmts = { 20 };
+            int[] cdValues = new int[20];
+            String[] name = { "" };
+            int[] filterConfig = { 0 };
+            int filter = H5.H5Pget_filter(pid, i, flags, cdNelmts, cdValues, 120, name, filterConfig);
+            if (i > 0) {
+                sb.append(", ");
+            }
+            if (filter == HDF5Constants.H5Z_FILTER_DEFLATE) {
+                sb.append("GZIP: level = ").append(cdValues[0]);
+            } else if (filter == HDF5Constants.H5Z_FILTER_SHUFFLE) {
+                sb.append("SHUFFLE");
+            } else if (filter == HDF5Constants.H5Z_FILTER_FLETCHER32) {
+                sb.append("FLETCHER32");
+            } else if (filter == HDF5Constants.H5Z_FILTER_SZIP) {
+                sb.append("SZIP");
+            } else if (filter == HDF5Constants.H5Z_FILTER_NBIT) {
+                sb.append("NBIT");
+            } else if (filter == HDF5Constants.H5Z_FILTER_SCALEOFFSET) {
+                sb.append("SCALEOFFSET");
+            } else {
+                sb.append(name[0].isEmpty() ? "FILTER " + filter : name[0]);
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Return the number of bytes HDF5toCT writes to CT for one value of the given type, or -1 if HDF5toCT can't
+     * convert values of this type.  This mirrors HDF5toCT.getTypeName() and the ChannelColumn mapping: unsigned
+     * 16 and 32-bit integers are widened, unsigned 64-bit integers are written as ASCII numbers, and each
+     * element of an Array member is stored at the word size of its CT binary channel.
+     */
+    private static long getOutputBytes(long typeID) throws Exception {
+        int tclass = H5.H5Tget_class(typeID);
+        long size = H5.H5Tget_size(typeID);
+        if (tclass == HDF5Constants.H5T_FLOAT) {
+            return ( (size == 8) || (size == 4) ) ? size : -1;
+        } else if (tclass == HDF5Constants.H5T_INTEGER) {
+            boolean bUnsigned = (H5.H5Tget_sign(typeID) == HDF5Constants.H5T_SGN_NONE);
+            if (size == 8) {
+                return bUnsigned ? UNSIGNED_LONG_TEXT_BYTES : 8;
+            } else if ( (size == 4) || (size == 2) ) {
+                return bUnsigned ? 2 * size : size;
+            }
+            return -1;
+        } else if (tclass == HDF5Constants.H5T_STRING) {
+            return size;
+        } else if (tclass == HDF5Constants.H5T_ARRAY) {
+            int ndims = H5.H5Tget_array_ndims(typeID);
+            long[] adims = new long[ndims];
+            H5.H5Tget_array_dims(typeID, adims);
+            long arrayLen = 1;
+            for (long adim : adims) {
+                arrayLen *= adim;
+            }
+            long baseType = H5.H5Tget_super(typeID);
+            try {
+                int baseClass = H5.H5Tget_class(baseType);
+                if ( (arrayLen <= 0) || ((baseClass != HDF5Constants.H5T_FLOAT) && (baseClass != HDF5Constants.H5T_INTEGER)) ) {
+                    return -1;
+                }
+                long elementBytes = getOutputBytes(baseType);
+                // Arrays of unsigned 64-bit integers have no CT binary channel type
+                if ( (elementBytes < 0) || (elementBytes == UNSIGNED_LONG_TEXT_BYTES) ) {
+                    return -1;
+                }
+                return arrayLen * elementBytes;
+            } finally {
+                H5.H5Tclose(baseType);
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,226 @@
+/*
+Copyright 2017 Erigo Technologies LLC
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Time-ordered index over the rows of a set of decoded Datasets.
+ *
+ * Each row is given an order-preserving long key: if the time column of every Dataset is an integer type, the
+ * key is simply the integer tick value (or, if every time column is an unsigned 64-bit type, the tick value with
+ * its top bit flipped, so ticks of 2^63 and above keep their order); otherwise each time is converted to a double
+ * and the key is the sortable form of its IEEE-754 bit pattern (see doubleToSortableLong()).  Unsigned 64-bit
+ * ticks can't share a long key with signed ticks, so a mix of the two is also keyed by double.  Rows are then put in time order
+ * with an LSD radix sort over primitive arrays.  The sort is stable, so rows having the same time stay in
+ * Dataset order, and within a Dataset, in row order.
+ *
+ * Memory use is 24 bytes per row during the sort (key and row reference, each double buffered) and 12 bytes
+ * per row afterward.
+ */
+class TimeIndex {
+    private static final int RADIX_BITS = 8;
+    private static final int RADIX = 1 << RADIX_BITS;
+    private static final int NUM_PASSES = 64 / RADIX_BITS;
+
+    private final DatasetColumns[] datasets;
+    private final int[] datasetStart;    // global index of the first row of each Dataset
+    private final boolean bIntegerKeys;  // are keys integer ticks (true) or sortable double bits (false)?
+    private final boolean bUnsignedKeys; // with integer keys, are they unsigned 64-bit ticks with the top bit flipped?
+    private final int size;
+    private long[] keys = null;          // sorted keys
+    private int[] refs = null;           // global row index of each sorted key
+
+    public TimeIndex(List<DatasetColumns> datasetList) {
+        datasets = datasetList.toArray(new DatasetColumns[datasetList.size()]);
+        datasetStart = new int[datasets.length];
+        long total = 0;
+        boolean bInteger = true;
+        int numUnsignedLong = 0;
+        for (int i = 0; i < datasets.length; ++i) {
+            datasetStart[i] = (int) total;
+            total += datasets[i].getNumRows();
+            bInteger = bInteger && datasets[i].getTimeColumn().isIntegerType();
+            if (datasets[i].getTimeColumn().isUnsignedLong()) {
+                ++numUnsignedLong;
+            }
+        }
+        if (total > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Too many rows to index: " + total);
+        }
+        size = (int) total;
+        bUnsignedKeys = bInteger && (numUnsignedLong > 0) && (numUnsignedLong == datasets.length);
+        bIntegerKeys = bInteger && ( (numUnsignedLong == 0) || bUnsignedKeys );
+    }
+
+    /**
+     * Build the keys for all rows and sort them.
+     */
+    public void sort() {
+        keys = new long[size];
+        refs = new int[size];
+        for (int i = 0; i < datasets.length; ++i) {
+            NumericColumn timeColumn = datasets[i].getTimeColumn();
+            int numRows = datasets[i].getNumRows();
+            int base = datasetStart[i];
+            if (bUnsignedKeys) {
+                NumericColumn.UnsignedLongColumn unsignedColumn = (NumericColumn.UnsignedLongColumn) timeColumn;
+                for (int row = 0; row < numRows; ++row) {
+                    keys[base + row] = unsignedColumn.getUnsignedKey(row);
+                    refs[base + row] = base + row;
+                }
+                continue;
+            }
+            for (int row = 0; row < numRows; ++row) {
+                keys[base + row] = bIntegerKeys ? timeColumn.getLong(row) : doubleToSortableLong(timeColumn.getDouble(row));
+                refs[base + row] = base + row;
+            }
+        }
+        radixSort(keys, refs);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Return the key of the i'th row in time order; rows with equal times have equal keys.
+     */
+    public long getKey(int i) {
+        return keys[i];
+    }
+
+    /**
+     * Return the time of the i'th row in time order.
+     */
+    public double getTime(int i) {
+        if (bUnsignedKeys) {
+            return NumericColumn.UnsignedLongColumn.unsignedToDouble(keys[i] ^ Long.MIN_VALUE);
+        }
+        return bIntegerKeys ? (double) keys[i] : sortableLongToDouble(keys[i]);
+    }
+
+    /**
+     * Return the index (into the list given to the constructor) of the Dataset holding the i'th row in time order.
+     */
+    public int getDatasetIndex(int i) {
+        int idx = Arrays.binarySearch(datasetStart, refs[i]);
+        if (idx < 0) {
+            idx = -idx - 2;
+        } else {
+            // Skip over any empty Datasets which share the same start index
+            while ( (idx + 1 < datasetStart.length) && (datasetStart[idx + 1] == refs[i]) ) {
+                ++idx;
+            }
+        }
+        return idx;
+    }
+
+    /**
+     * Return the Dataset holding the i'th row in time order.
+     */
+    public DatasetColumns getDataset(int i) {
+        return datasets[getDatasetIndex(i)];
+    }
+
+    /**
+     * Return the row (within its Dataset) of the i'th row in time order.
+     */
+    public int getRow(int i) {
+        return getRow(i, getDatasetIndex(i));
+    }
+
+    /**
+     * Return the row (within its Dataset) of the i'th row in time order, given the index of its Dataset as
+     * returned by getDatasetIndex(i).
+     */
+    public int getRow(int i, int datasetIdx) {
+        return refs[i] - datasetStart[datasetIdx];
+    }
+
+    /**
+     * Convert a double to a long which sorts (as a signed long) in the same order as the double.  For
+     * positive values the IEEE-754 bit pattern already sorts correctly; for negative values all bits
+     * other than the sign bit are flipped.
+     */
+    public static long doubleToSortableLong(double val) {
+        long bits = Double.doubleToLongBits(val);
+        return bits ^ ((bits >> 63) & Long.MAX_VALUE);
+    }
+
+    /**
+     * Inverse of doubleToSortableLong().
+     */
+    public static double sortableLongToDouble(long key) {
+        return Double.longBitsToDouble(key ^ ((key >> 63) & Long.MAX_VALUE));
+    }
+
+    /**
+     * Stable LSD radix sort of signed long keys, applying the same permutation to vals.
+     *
+     * A histogram for every digit is built in a single pass over the keys; passes where all keys share
+     * the same digit (for instance, the high bytes of timestamps which span a small range) are skipped.
+     */
+    public static void radixSort(long[] keys, int[] vals) {
+        int n = keys.length;
+        if (n < 2) {
+            return;
+        }
+        int[][] counts = new int[NUM_PASSES][RADIX];
+        for (int i = 0; i < n; ++i) {
+            // Flip the sign bit so negative keys sort before positive keys
+            long key = keys[i] ^ Long.MIN_VALUE;
+            for (int pass = 0; pass < NUM_PASSES; ++pass) {
+                ++counts[pass][(int) (key >>> (pass * RADIX_BITS)) & (RADIX - 1)];
+            }
+        }
+        long[] srcKeys = keys;
+        int[] srcVals = vals;
+        long[] dstKeys = new long[n];
+        int[] dstVals = new int[n];
+        for (int pass = 0; pass < NUM_PASSES; ++pass) {
+            int[] count = counts[pass];
+            int shift = pass * RADIX_BITS;
+            if (count[(int) ((srcKeys[0] ^ Long.MIN_VALUE) >>> shift) & (RADIX - 1)] == n) {
+                // every key has the same digit in this position
+                continue;
+            }
+            // Convert counts to starting offsets
+            int offset = 0;
+            for (int d = 0; d < RADIX; ++d) {
+                int c = count[d];
+                count[d] = offset;
+                offset += c;
+            }
+            for (int i = 0; i < n; ++i) {
+                int d = (int) ((srcKeys[i] ^ Long.MIN_VALUE) >>> shift) & (RADIX - 1);
+                int dst = count[d]++;
+                dstKeys[dst] = srcKeys[i];
+                dstVals[dst] = srcVals[i];
+            }
+            long[] tmpKeys = srcKeys;
+            srcKeys = dstKeys;
+            dstKeys = tmpKeys;
+            int[] tmpVals = srcVals;
+            srcVals = dstVals;
+            dstVals = tmpVals;
+        }
+        if (srcKeys != keys) {
+            System.arraycopy(srcKeys, 0, keys, 0, n);
+            System.arraycopy(srcVals, 0, vals, 0, n);
+        }
+    }
+}
@@ -0,0 +1,487 @@
+/*
+Copyright 2017 Erigo Technologies LLC
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+
+import hdf.object.Attribute;
+import hdf.object.Dataset;
+import hdf.object.Datatype;
+import hdf.object.FileFormat;
+import hdf.object.Group;
+import hdf.object.h5.H5DatasetAppender;
+import hdf.object.h5.H5Datatype;
+import hdf.object.h5.H5File;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.CommandLineParser;
+import org.apache.commons.cli.DefaultParser;
+import org.apache.commons.cli.HelpFormatter;
+import org.apache.commons.cli.Option;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
+
+/**
+ * Write a synthetic HDF5 file of a given shape, for load testing and benchmarking HDF5toCT without shipping large
+ * sample files.
+ *
+ * The file has the layout HDF5toCT converts: a top parent group ("Synthetic") holding numDatasets Datasets
+ * ("ds0", "ds1", ...), each with numRows rows.  By default each Dataset is a 1-D Compound Dataset with a float64
+ * "time" member plus numChannels members ("ch0", "ch1", ...) whose types cycle through the given member types;
+ * with "-table", each Dataset is instead a 2-D table of one numeric type with time in column 0.  Datasets are
+ * created empty with an unlimited first dimension and filled with chunk-aligned appends (see H5DatasetAppender),
+ * from records built in the native memory layout; HDF5 converts them to the requested byte order while writing.
+ *
+ * Times advance by timeStep per row.  A fraction of the rows (dupFraction) repeat the previous row's time; with
+ * "-unsorted", the times are shuffled within each batch of rows generated together (BATCH_ROWS rows, or fewer
+ * for Datasets with rows too wide to fit that many in BATCH_BYTES).  Channel values are random walks.
+ * Everything is drawn from a SplittableRandom seeded by the given seed (and the Dataset index), so the same
+ * options always produce the same data.  A "generator" attribute on the top group records the options used.
+ *
+ *     java -cp HDF5toCT.jar WorkloadGenerator -o big.h5 -nd 16 -nc 32 -nr 10000000 -t float64,int32 -z 1 -u
+ */
+class WorkloadGenerator {
+    private static final String TOP_GROUP_NAME = "Synthetic";
+    private static final int BATCH_ROWS = 65536;     // rows generated (and, for unsorted time, shuffled) at a time
+    private static final long BATCH_BYTES = 16L << 20;  // bytes of rows generated at a time, at most
+    private static final int STRING_BYTES = 16;      // size of a "string" member; holds the row number
+
+    // Member types; for each, the Datatype class, size and sign
+    private static final String[] TYPE_NAMES = { "float64", "float32", "int64", "int32", "int16", "uint64", "uint32", "uint16", "string" };
+    private static final int[] TYPE_CLASSES = { Datatype.CLASS_FLOAT, Datatype.CLASS_FLOAT, Datatype.CLASS_INTEGER, Datatype.CLASS_INTEGER, Datatype.CLASS_INTEGER, Datatype.CLASS_INTEGER, Datatype.CLASS_INTEGER, Datatype.CLASS_INTEGER, Datatype.CLASS_STRING };
+    private static final int[] TYPE_SIZES = { 8, 4, 8, 4, 2, 8, 4, 2, STRING_BYTES };
+    private static final int[] TYPE_SIGNS = { Datatype.NATIVE, Datatype.NATIVE, Datatype.SIGN_2, Datatype.SIGN_2, Datatype.SIGN_2, Datatype.SIGN_NONE, Datatype.SIGN_NONE, Datatype.SIGN_NONE, Datatype.NATIVE };
+    private static final int FLOAT64 = 0;
+    private static final int FLOAT32 = 1;
+    private static final int INT64 = 2;
+    private static final int INT32 = 3;
+    private static final int INT16 = 4;
+    private static final int UINT64 = 5;
+    private static final int UINT32 = 6;
+    private static final int UINT16 = 7;
+    private static final int STRING = 8;
+
+    private final String fileName;
+    private final int numDatasets;
+    private final int numChannels;
+    private final long numRows;
+    private final int[] memberTypes;     // indexes into TYPE_NAMES; channel c has type memberTypes[c % memberTypes.length]
+    private final boolean bTable;        // write 2-D tables (of type memberTypes[0]) instead of Compound Datasets?
+    private final boolean bBigEndian;
+    private final long chunkRows;
+    private final int deflateLevel;      // gzip level; 0 for no compression
+    private final boolean bUnsorted;
+    private final double dupFraction;
+    private final double timeStep;
+    private final long seed;
+
+    public WorkloadGenerator(String fileNameI, int numDatasetsI, int numChannelsI, long numRowsI, int[] memberTypesI, boolean bTableI, boolean bBigEndianI, long chunkRowsI, int deflateLevelI, boolean bUnsortedI, double dupFractionI, double timeStepI, long seedI) {
+        fileName = fileNameI;
+        numDatasets = numDatasetsI;
+        numChannels = numChannelsI;
+        numRows = numRowsI;
+        memberTypes = memberTypesI;
+        bTable = bTableI;
+        bBigEndian = bBigEndianI;
+        chunkRows = chunkRowsI;
+        deflateLevel = deflateLevelI;
+        bUnsorted = bUnsortedI;
+        dupFraction = dupFractionI;
+        timeStep = timeStepI;
+        seed = seedI;
+    }
+
+    public static void main(String args[]) throws Exception {
+        Options options = new Options();
+        options.addOption("h", "help", false, "Print this message.");
+        options.addOption("table", "table", false, "Write 2-D tables of the first member type (time in column 0) instead of Compound Datasets.");
+        options.addOption("be", "bigendian", false, "Store numeric values big-endian; default is little-endian.");
+        options.addOption("u", "unsorted", false, "Shuffle the times within each batch of up to " + BATCH_ROWS + " rows.");
+        Option option = Option.builder("o")
+                .longOpt("outfile")
+                .argName("hdf5file")
+                .hasArg()
+                .desc("Full path of the HDF5 file to write; an existing file is overwritten.")
+                .build();
+        options.addOption(option);
+        option = Option.builder("nd")
+                .longOpt("datasets")
+                .argName("num")
+                .hasArg()
+                .desc("Number of Datasets; default = 4.")
+                .build();
+        options.addOption(option);
+        option = Option.builder("nc")
+                .longOpt("channels")
+                .argName("num")
+                .hasArg()
+                .desc("Number of channels (members, or table columns, besides time) per Dataset; default = 8.")
+                .build();
+        options.addOption(option);
+        option = Option.builder("nr")
+                .longOpt("rows")
+                .argName("num")
+                .hasArg()
+                .desc("Number of rows per Dataset; default = 1000000.")
+                .build();
+        options.addOption(option);
+        option = Option.builder("t")
+                .longOpt("types")
+                .argName("type,...")
+                .hasArg()
+                .desc("Comma-separated member types, used in turn for the channels: " + String.join(", ", TYPE_NAMES) + "; default = float64.")
+                .build();
+        options.addOption(option);
+        option = Option.builder("cs")
+                .longOpt("chunk")
+                .argName("rows")
+                .hasArg()
+                .desc("Rows per chunk; default = 16384.")
+                .build();
+        options.addOption(option);
+        option = Option.builder("z")
+                .longOpt("gzip")
+                .argName("level")
+                .hasArg()
+                .desc("Gzip level (0-9); default = 0 (no compression).")
+                .build();
+        options.addOption(option);
+        option = Option.builder("dup")
+                .argName("fraction")
+                .hasArg()
+                .desc("Fraction (0-1) of rows which repeat the previous row's time; default = 0.")
+                .build();
+        options.addOption(option);
+        option = Option.builder("dt")
+                .argName("seconds")
+                .hasArg()
+                .desc("Time step between rows; default = 0.001.")
+                .build();
+        options.addOption(option);
+        option = Option.builder("seed")
+                .argName("num")
+                .hasArg()
+                .desc("Random seed; default = 1.")
+                .build();
+        options.addOption(option);
+
+        CommandLineParser parser = new DefaultParser();
+        CommandLine line = null;
+        try {
+            line = parser.parse( options, args );
+        }
+        catch( ParseException exp ) {
+            System.err.println( "Command line argument parsing failed: " + exp.getMessage() );
+            return;
+        }
+        if (line.hasOption("h")) {
+            HelpFormatter formatter = new HelpFormatter();
+            formatter.setWidth(160);
+            formatter.printHelp( "WorkloadGenerator", "", options, "NOTE: Make sure \"hdf5_java.dll\" is in the same directory as HDF5toCT.jar" );
+            System.exit(0);
+        }
+        String outFileName = line.getOptionValue("o");
+        if ( (outFileName == null) || outFileName.isEmpty() ) {
+            System.err.println("You must specify the name of the HDF5 file to write using the \"-o\" flag.");
+            System.exit(0);
+        }
+        int numDatasets = Integer.parseInt(line.getOptionValue("nd","4"));
+        int numChannels = Integer.parseInt(line.getOptionValue("nc","8"));
+        long numRows = Long.parseLong(line.getOptionValue("nr","1000000"));
+        long chunkRows = Long.parseLong(line.getOptionValue("cs","16384"));
+        int deflateLevel = Integer.parseInt(line.getOptionValue("z","0"));
+        double dupFraction = Double.parseDouble(line.getOptionValue("dup","0"));
+        double timeStep = Double.parseDouble(line.getOptionValue("dt","0.001"));
+        long seed = Long.parseLong(line.getOptionValue("seed","1"));
+        if ( (numDatasets < 1) || (numChannels < 1) || (numRows < 0) || (chunkRows < 1) ) {
+            System.err.println("Number of Datasets, channels and rows per chunk must be at least 1; number of rows must be at least 0");
+            System.exit(0);
+        }
+        if ( (deflateLevel < 0) || (deflateLevel > 9) || (dupFraction < 0.0) || (dupFraction > 1.0) || (timeStep <= 0.0) ) {
+            System.err.println("Gzip level must be 0 to 9, duplicate fraction must be 0 to 1 and time step must be greater than 0.0");
+            System.exit(0);
+        }
+        String[] typeNames = line.getOptionValue("t","float64").split(",");
+        int[] memberTypes = new int[typeNames.length];
+        for (int i = 0; i < typeNames.length; ++i) {
+            memberTypes[i] = Arrays.asList(TYPE_NAMES).indexOf(typeNames[i].trim().toLowerCase());
+            if (memberTypes[i] < 0) {
+                System.err.println("Unknown member type \"" + typeNames[i] + "\"; must be one of " + String.join(", ", TYPE_NAMES));
+                System.exit(0);
+            }
+        }
+        boolean bTable = line.hasOption("table");
+        if ( bTable && (memberTypes[0] != FLOAT64) && (memberTypes[0] != FLOAT32) && (memberTypes[0] != INT64) && (memberTypes[0] != INT32) ) {
+            // the time column has the table's type, so it must be able to hold the times (or, for integers, row ticks)
+            System.err.println("Table type must be float64, float32, int64 or int32");
+            System.exit(0);
+        }
+
+        try {
+            System.loadLibrary("hdf5_java");
+        } catch (UnsatisfiedLinkError e) {
+            System.err.println("Unable to load hdf5_java.dll; exiting");
+            return;
+        }
+
+        new WorkloadGenerator(outFileName, numDatasets, numChannels, numRows, memberTypes, bTable, line.hasOption("be"), chunkRows, deflateLevel, line.hasOption("u"), dupFraction, timeStep, seed).generate();
+    }
+
+    /**
+     * Write the file.
+     */
+    public void generate() throws Exception {
+        long startTime = System.nanoTime();
+        long numBytes = 0;
+        H5File file = (H5File) FileFormat.getFileFormat(FileFormat.FILE_TYPE_HDF5).createFile(fileName, FileFormat.FILE_CREATE_DELETE);
+        try {
+            file.open();
+            Group top = file.createGroup(TOP_GROUP_NAME, (Group) file.getRootObject());
+            String description = getDescription();
+            Attribute attr = new Attribute("generator", new H5Datatype(Datatype.CLASS_STRING, description.length() + 1, Datatype.NATIVE, Datatype.NATIVE), new long[] { 1 }, new String[] { description });
+            file.writeAttribute(top, attr, false);
+            for (int i = 0; i < numDatasets; ++i) {
+                SplittableRandom random = new SplittableRandom(seed + i);
+                if (bTable) {
+                    numBytes += writeTable(file, top, "ds" + i, random);
+                } else {
+                    numBytes += writeCompound(file, top, "ds" + i, random);
+                }
+            }
+        } finally {
+            file.close();
+        }
+        double seconds = (System.nanoTime() - startTime) / 1.0e9;
+        System.err.println("Wrote " + numDatasets + " Datasets of " + numRows + " rows (" + numBytes + " bytes of records) to " + fileName + " in " + String.format("%.3f", seconds) + " sec (" + String.format("%.1f", numBytes / 1.0e6 / seconds) + " MB/s)");
+    }
+
+    /**
+     * @return a summary of the options, saved as the top group's "generator" attribute
+     */
+    private String getDescription() {
+        StringBuilder sb = new StringBuilder();
+        for (int memberType : memberTypes) {
+            sb.append((sb.length() == 0) ? "" : ",").append(TYPE_NAMES[memberType]);
+        }
+        return "datasets=" + numDatasets + " channels=" + numChannels + " rows=" + numRows + " types=" + sb + " layout=" + (bTable ? "table" : "compound") +
+                " order=" + (bBigEndian ? "BE" : "LE") + " chunk=" + chunkRows + " gzip=" + deflateLevel + " unsorted=" + bUnsorted + " dup=" + dupFraction + " dt=" + timeStep + " seed=" + seed;
+    }
+
+    private H5Datatype createDatatype(int type) {
+        int order = (type == STRING) ? Datatype.NATIVE : (bBigEndian ? Datatype.ORDER_BE : Datatype.ORDER_LE);
+        return new H5Datatype(TYPE_CLASSES[type], TYPE_SIZES[type], order, TYPE_SIGNS[type]);
+    }
+
+    /**
+     * Write one Compound Dataset: a float64 "time" member plus one member per channel.
+     *
+     * @return the number of bytes of records written
+     */
+    private long writeCompound(H5File file, Group top, String name, SplittableRandom random) throws Exception {
+        String[] memberNames = new String[numChannels + 1];
+        Datatype[] memberDatatypes = new Datatype[numChannels + 1];
+        memberNames[0] = "time";
+        memberDatatypes[0] = createDatatype(FLOAT64);
+        for (int c = 0; c < numChannels; ++c) {
+            memberNames[c + 1] = "ch" + c;
+            memberDatatypes[c + 1] = createDatatype(memberTypes[c % memberTypes.length]);
+        }
+        Dataset dataset = file.createCompoundDS(name, top, new long[] { 0 }, new long[] { -1 }, new long[] { chunkRows }, deflateLevel, memberNames, memberDatatypes, null, null);
+        if (dataset == null) {
+            throw new Exception("Unable to create Dataset " + name);
+        }
+
+        H5DatasetAppender appender = new H5DatasetAppender(dataset);
+        try {
+            int recordSize = (int) appender.getRecordSize();
+            int timeOffset = (int) appender.getMemberOffset("time");
+            int[] offsets = new int[numChannels];
+            for (int c = 0; c < numChannels; ++c) {
+                offsets[c] = (int) appender.getMemberOffset(memberNames[c + 1]);
+            }
+            int batchRows = getBatchRows(recordSize);
+            byte[] records = new byte[batchRows * recordSize];
+            ByteBuffer bb = ByteBuffer.wrap(records).order(ByteOrder.nativeOrder());
+            double[] times = new double[batchRows];
+            long[] tick = { 0 };
+            double[] levels = new double[numChannels];
+            for (long firstRow = 0; firstRow < numRows; firstRow += batchRows) {
+                int n = (int) Math.min(batchRows, numRows - firstRow);
+                nextTimes(random, tick, times, n, firstRow == 0);
+                for (int r = 0; r < n; ++r) {
+                    bb.putDouble(r * recordSize + timeOffset, times[r]);
+                }
+                for (int c = 0; c < numChannels; ++c) {
+                    int type = memberTypes[c % memberTypes.length];
+                    double level = levels[c];
+                    for (int r = 0, pos = offsets[c]; r < n; ++r, pos += recordSize) {
+                        level += random.nextDouble() - 0.5;
+                        putValue(bb, pos, type, level, firstRow + r);
+                    }
+                    levels[c] = level;
+                }
+                appender.append(records, n);
+            }
+            return numRows * recordSize;
+        } finally {
+            appender.close();
+        }
+    }
+
+    /**
+     * Return the number of rows to generate at a time: BATCH_ROWS, or fewer if that many rows of the given size
+     * would take more than BATCH_BYTES (but at least 1), and no more than the Dataset has.  This keeps
+     * the size of a batch buffer (rows times row size) from overflowing an int.
+     */
+    private int getBatchRows(long rowBytes) {
+        long rows = Math.min(BATCH_ROWS, Math.max(1, BATCH_BYTES / rowBytes));
+        return (int) Math.min(rows, Math.max(numRows, 1));
+    }
+
+    /**
+     * Store one value of the given member type at the given position in the record buffer.  Integer members
+     * hold the value scaled by 100; string members hold the row number.
+     */
+    private static void putValue(ByteBuffer bb, int pos, int type, double level, long row) {
+        switch (type) {
+            case FLOAT64:
+                bb.putDouble(pos, level);
+                break;
+            case FLOAT32:
+                bb.putFloat(pos, (float) level);
+                break;
+            case INT64:
+            case UINT64:
+                bb.putLong(pos, (long) (level * 100));
+                break;
+            case INT32:
+            case UINT32:
+                bb.putInt(pos, (int) (level * 100));
+                break;
+            case INT16:
+            case UINT16:
+                bb.putShort(pos, (short) (level * 100));
+                break;
+            default:
+                byte[] str = Long.toString(row).getBytes(StandardCharsets.US_ASCII);
+                for (int i = 0; i < STRING_BYTES; ++i) {
+                    bb.put(pos + i, (i < str.length) ? str[i] : 0);
+                }
+                break;
+        }
+    }
+
+    /**
+     * Write one 2-D table Dataset of type memberTypes[0]: time in column 0 and one column per channel.  For an
+     * integer table, the time column holds the row tick count rather than seconds.
+     *
+     * @return the number of bytes of values written
+     */
+    private long writeTable(H5File file, Group top, String name, SplittableRandom random) throws Exception {
+        int type = memberTypes[0];
+        int numCols = numChannels + 1;
+        Dataset dataset = file.createScalarDS(name, top, createDatatype(type), new long[] { 0, numCols }, new long[] { -1, 0 }, new long[] { chunkRows, numCols }, deflateLevel, null);
+        if (dataset == null) {
+            throw new Exception("Unable to create Dataset " + name);
+        }
+
+        H5DatasetAppender appender = new H5DatasetAppender(dataset);
+        try {
+            // Values are generated as doubles, then converted to the table's type
+            int batchRows = getBatchRows(numCols * 8L);
+            double[] values = new double[batchRows * numCols];
+            double[] times = new double[batchRows];
+            long[] tick = { 0 };
+            double[] levels = new double[numChannels];
+            Object block;
+            if (type == FLOAT64) {
+                block = values;
+            } else if (type == FLOAT32) {
+                block = new float[values.length];
+            } else if (type == INT64) {
+                block = new long[values.length];
+            } else {
+                block = new int[values.length];
+            }
+            boolean bInteger = (TYPE_CLASSES[type] == Datatype.CLASS_INTEGER);
+            for (long firstRow = 0; firstRow < numRows; firstRow += batchRows) {
+                int n = (int) Math.min(batchRows, numRows - firstRow);
+                nextTimes(random, tick, times, n, firstRow == 0);
+                for (int r = 0; r < n; ++r) {
+                    values[r * numCols] = bInteger ? Math.rint(times[r] / timeStep) : times[r];
+                }
+                for (int c = 0; c < numChannels; ++c) {
+                    double level = levels[c];
+                    for (int r = 0, idx = c + 1; r < n; ++r, idx += numCols) {
+                        level += random.nextDouble() - 0.5;
+                        values[idx] = bInteger ? level * 100 : level;
+                    }
+                    levels[c] = level;
+                }
+                int numValues = n * numCols;
+                if (block instanceof float[]) {
+                    float[] f = (float[]) block;
+                    for (int i = 0; i < numValues; ++i) {
+                        f[i] = (float) values[i];
+                    }
+                } else if (block instanceof long[]) {
+                    long[] l = (long[]) block;
+                    for (int i = 0; i < numValues; ++i) {
+                        l[i] = (long) values[i];
+                    }
+                } else if (block instanceof int[]) {
+                    int[] k = (int[]) block;
+                    for (int i = 0; i < numValues; ++i) {
+                        k[i] = (int) values[i];
+                    }
+                }
+                appender.append(block, n);
+            }
+            return numRows * numCols * TYPE_SIZES[type];
+        } finally {
+            appender.close();
+        }
+    }
+
+    /**
+     * Generate the next n times: each row advances the tick by one, except for the fraction dupFraction of rows
+     * which repeat the previous row's time (the very first row always starts at tick 0).  With bUnsorted, the n
+     * times are then shuffled.
+     *
+     * @param tick      the current tick; updated
+     * @param bFirst    is this the first block of the Dataset?
+     */
+    private void nextTimes(SplittableRandom random, long[] tick, double[] times, int n, boolean bFirst) {
+        for (int r = 0; r < n; ++r) {
+            if ( !(bFirst && (r == 0)) && ((dupFraction == 0.0) || (random.nextDouble() >= dupFraction)) ) {
+                ++tick[0];
+            }
+            times[r] = tick[0] * timeStep;
+        }
+        if (bUnsorted) {
+            for (int r = n - 1; r > 0; --r) {
+                int j = random.nextInt(r + 1);
+                double tmp = times[r];
+                times[r] = times[j];
+                times[j] = tmp;
+            }
+        }
+    }
+}
@@ -15,7 +15,6 @@
 package hdf.object;
 
 import java.lang.reflect.Array;
-import java.math.BigInteger;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map;
@@ -89,6 +88,35 @@ public class Attribute implements Metadata {
     /** flag to indicate if the dataset is a single scalar point */
     protected boolean         isScalar         = false;
 
+    /** Map of enum values to names, built from the datatype on first use by toString(String). */
+    private transient Map<String, String> enumNameMap = null;
+
+    /** Reads the value on first use, if the value wasn't read when the attribute was created; null once loaded. */
+    private transient ValueLoader valueLoader = null;
+
+    /** The largest value (in bytes) the value loader will read; negative for no limit. */
+    private long              maxValueSize     = -1;
+
+    /**
+     * Reads the value of an attribute whose value is loaded lazily.
+     *
+     * @see Attribute#setValueLoader(ValueLoader, long)
+     */
+    public interface ValueLoader {
+        /**
+         * Reads the value of the given attribute.
+         *
+         * @param attr
+         *            the attribute whose value is to be read
+         *
+         * @return the value, in the form returned by {@link Attribute#getValue()}
+         *
+         * @throws Exception
+         *             if the value can't be read
+         */
+        Object loadValue(Attribute attr) throws Exception;
+    }
+
     /**
      * Create an attribute with specified name, data type and dimension sizes.
      *
@@ -191,9 +219,68 @@ public class Attribute implements Metadata {
      *         from file.
      */
     public Object getValue() {
+        if (valueLoader != null) {
+            loadValue();
+        }
         return value;
     }
 
+    /**
+     * Sets the loader used to read the value of the attribute on the first call to getValue() or
+     * toString(String), so that the names, datatypes and sizes of many attributes can be listed without
+     * reading their values. If the value is larger than maxSize bytes, it is never read and getValue()
+     * returns null.
+     *
+     * @param loader
+     *            reads the value of the attribute
+     * @param maxSize
+     *            the largest value (in bytes) to read; negative for no limit
+     */
+    public void setValueLoader(ValueLoader loader, long maxSize) {
+        valueLoader = loader;
+        maxValueSize = maxSize;
+        value = null;
+    }
+
+    /**
+     * @return true if the value has been read (or was given when the attribute was created); false if it will
+     *         be read on first use or is larger than the size limit given to setValueLoader().
+     */
+    public boolean isValueLoaded() {
+        return (valueLoader == null);
+    }
+
+    /**
+     * Returns the size of the value of the attribute in bytes, as stored in memory. For variable-length
+     * datatypes this is the size of the references to the data, not the data itself.
+     *
+     * @return the number of data points times the size of the datatype.
+     */
+    public long getValueSize() {
+        long size = type.getDatatypeSize();
+        for (long dim : dims) {
+            size *= dim;
+        }
+        return size;
+    }
+
+    /**
+     * Reads the value with the value loader, unless it is larger than the size limit.
+     */
+    private void loadValue() {
+        if ((maxValueSize >= 0) && (getValueSize() > maxValueSize)) {
+            log.debug("loadValue(): {} value size {} exceeds limit {}; not read", name, getValueSize(), maxValueSize);
+            return;
+        }
+        try {
+            value = valueLoader.loadValue(this);
+        }
+        catch (Exception ex) {
+            log.debug("loadValue(): {} failure: ", name, ex);
+        }
+        valueLoader = null;
+    }
+
     /**
      * set a property for the attribute.
      *
@@ -237,6 +324,7 @@ public class Attribute implements Metadata {
      */
     public void setValue(Object theValue) {
         value = theValue;
+        valueLoader = null;
     }
 
     /**
@@ -327,6 +415,7 @@ public class Attribute implements Metadata {
     public String toString(String delimiter) {
         log.trace("toString(): start");
 
+        Object value = getValue();
         if (value == null) {
             log.debug("toString(): value is null");
             log.trace("toString(): finish");
@@ -341,7 +430,7 @@ public class Attribute implements Metadata {
         }
 
         // attribute value is an array
-        StringBuffer sb = new StringBuffer();
+        StringBuilder sb = new StringBuilder();
         int n = Array.getLength(value);
 
         boolean is_unsigned = (this.getType().getDatatypeSign() == Datatype.SIGN_NONE);
@@ -352,15 +441,7 @@ public class Attribute implements Metadata {
             char dname = cname.charAt(cname.lastIndexOf("[") + 1);
             log.trace("toString: is_enum with cname={} dname={}", cname, dname);
 
-            String enum_members = this.getType().getEnumMembers();
-            log.trace("toString: is_enum enum_members={}", enum_members);
-            Map<String,String> map = new HashMap<String,String>();
-            String[] entries = enum_members.split(",");
-            for (String entry : entries) {
-                String[] keyValue = entry.split("=");
-                map.put(keyValue[1],keyValue[0]);
-                log.trace("toString: is_enum value={} name={}", keyValue[1],keyValue[0]);
-            }
+            Map<String,String> map = getEnumNameMap();
             String theValue = null;
             switch (dname) {
                 case 'B':
@@ -508,28 +589,10 @@ public class Attribute implements Metadata {
                     break;
                 case 'J':
                     long[] larray = (long[]) value;
-                    Long l = (Long) larray[0];
-                    String theValue = Long.toString(l);
-                    if (l < 0) {
-                        l = (l << 1) >>> 1;
-                        BigInteger big1 = new BigInteger("9223372036854775808"); // 2^65
-                        BigInteger big2 = new BigInteger(l.toString());
-                        BigInteger big = big1.add(big2);
-                        theValue = big.toString();
-                    }
-                    sb.append(theValue);
+                    sb.append(Long.toUnsignedString(larray[0]));
                     for (int i = 1; i < n; i++) {
                         sb.append(delimiter);
-                        l = (Long) larray[i];
-                        theValue = Long.toString(l);
-                        if (l < 0) {
-                            l = (l << 1) >>> 1;
-                            BigInteger big1 = new BigInteger("9223372036854775808"); // 2^65
-                            BigInteger big2 = new BigInteger(l.toString());
-                            BigInteger big = big1.add(big2);
-                            theValue = big.toString();
-                        }
-                        sb.append(theValue);
+                        sb.append(Long.toUnsignedString(larray[i]));
                     }
                     break;
                 default:
@@ -552,4 +615,25 @@ public class Attribute implements Metadata {
         log.trace("toString: finish");
         return sb.toString();
     }
+
+    /**
+     * Returns the map of enum values to enum names for this attribute's datatype, building it on first use.
+     *
+     * @return the map of enum values (as strings) to names.
+     */
+    private Map<String, String> getEnumNameMap() {
+        if (enumNameMap == null) {
+            String enum_members = this.getType().getEnumMembers();
+            log.trace("getEnumNameMap: enum_members={}", enum_members);
+            Map<String,String> map = new HashMap<String,String>();
+            String[] entries = enum_members.split(",");
+            for (String entry : entries) {
+                String[] keyValue = entry.split("=");
+                map.put(keyValue[1],keyValue[0]);
+                log.trace("getEnumNameMap: value={} name={}", keyValue[1],keyValue[0]);
+            }
+            enumNameMap = map;
+        }
+        return enumNameMap;
+    }
 }
@@ -0,0 +1,249 @@
+/*****************************************************************************
+ * Copyright by The HDF Group.                                               *
+ * Copyright by the Board of Trustees of the University of Illinois.         *
+ * All rights reserved.                                                      *
+ *                                                                           *
+ * This file is part of the HDF Java Products distribution.                  *
+ * The full copyright notice, including terms governing use, modification,   *
+ * and redistribution, is contained in the files COPYING and Copyright.html. *
+ * COPYING can be found at the root of the source code distribution tree.    *
+ * Or, see http://hdfgroup.org/products/hdf-java/doc/Copyright.html.         *
+ * If you do not have access to either file, you may request a copy from     *
+ * help@hdfgroup.org.                                                        *
+ ****************************************************************************/
+
+package hdf.object;
+
+import java.lang.reflect.Array;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * DataCache bounds the memory held by the data buffers of the datasets of one file.
+ * <p>
+ * Dataset.getData() keeps the buffer it reads in the dataset object until clearData() or clear() is called. When
+ * the file has a DataCache (see FileFormat.getDataCache()), each buffer loaded by getData() is registered with the
+ * cache, and the least recently used buffers are dropped from their datasets once the total size of the buffers
+ * exceeds the byte budget. A dataset whose buffer was dropped reads it again from the file on its next getData(),
+ * so eviction is transparent to callers (other than a buffer they still hold no longer being the dataset's).
+ * <p>
+ * The most recently used buffer is always kept, even if it alone exceeds the budget.
+ * <p>
+ * The cache counts hits (getData() calls answered from memory) and misses (calls that read the file) for each
+ * dataset, by full name, for as long as the cache exists.
+ */
+public class DataCache {
+    private final static org.slf4j.Logger log = org.slf4j.LoggerFactory.getLogger(DataCache.class);
+
+    /** Loaded buffers and their sizes in bytes, in least recently used order. Datasets are keyed by identity. */
+    private final LinkedHashMap<Dataset, Long> buffers = new LinkedHashMap<Dataset, Long>(16, 0.75f, true);
+
+    /** Hit and miss counts, by dataset full name. */
+    private final Map<String, long[]> stats = new HashMap<String, long[]>();
+
+    private long maxBytes;
+    private long currentBytes = 0;
+    private long numEvictions = 0;
+
+    /**
+     * Creates a cache with the given budget.
+     *
+     * @param maxBytes
+     *            the maximum number of bytes of dataset buffers to keep in memory.
+     */
+    public DataCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * @return the maximum number of bytes of dataset buffers kept in memory.
+     */
+    public synchronized long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * Changes the budget, evicting buffers if the new budget is smaller.
+     *
+     * @param maxBytes
+     *            the maximum number of bytes of dataset buffers to keep in memory.
+     */
+    public synchronized void setMaxBytes(long maxBytes) {
+        this.maxBytes = maxBytes;
+        evict();
+    }
+
+    /**
+     * @return the estimated number of bytes of the buffers currently in the cache.
+     */
+    public synchronized long getCurrentBytes() {
+        return currentBytes;
+    }
+
+    /**
+     * @return the number of buffers currently in the cache.
+     */
+    public synchronized int getNumBuffers() {
+        return buffers.size();
+    }
+
+    /**
+     * @return the number of buffers dropped to stay within the budget.
+     */
+    public synchronized long getNumEvictions() {
+        return numEvictions;
+    }
+
+    /**
+     * @param fullName
+     *            the full name (path + name) of a dataset
+     *
+     * @return the number of getData() calls on the dataset answered from memory.
+     */
+    public synchronized long getHits(String fullName) {
+        long[] counts = stats.get(fullName);
+        return (counts == null) ? 0 : counts[0];
+    }
+
+    /**
+     * @param fullName
+     *            the full name (path + name) of a dataset
+     *
+     * @return the number of getData() calls on the dataset that read the file.
+     */
+    public synchronized long getMisses(String fullName) {
+        long[] counts = stats.get(fullName);
+        return (counts == null) ? 0 : counts[1];
+    }
+
+    /**
+     * Drops all buffers from the cache (and from their datasets). The hit and miss counts are kept.
+     */
+    public synchronized void clear() {
+        for (Dataset dset : buffers.keySet()) {
+            dset.evictData();
+        }
+        buffers.clear();
+        currentBytes = 0;
+    }
+
+    /**
+     * Records a getData() call.
+     *
+     * @param dset
+     *            the dataset
+     * @param loaded
+     *            true if the call read the buffer from the file; false if it was already in memory.
+     */
+    synchronized void access(Dataset dset, boolean loaded) {
+        String fullName = dset.getFullName();
+        long[] counts = stats.get(fullName);
+        if (counts == null) {
+            counts = new long[2];
+            stats.put(fullName, counts);
+        }
+
+        if (!loaded) {
+            counts[0]++;
+            if (buffers.get(dset) != null) {
+                return; // get() has marked it most recently used
+            }
+        }
+        else {
+            counts[1]++;
+        }
+
+        // a new (or reloaded) buffer
+        long size = sizeOf(dset.data);
+        Long oldSize = buffers.put(dset, size);
+        currentBytes += size - ((oldSize == null) ? 0 : oldSize);
+        log.trace("access(): {} size={} currentBytes={}", fullName, size, currentBytes);
+        evict();
+    }
+
+    /**
+     * Removes a dataset whose buffer was cleared.
+     *
+     * @param dset
+     *            the dataset
+     */
+    synchronized void remove(Dataset dset) {
+        Long size = buffers.remove(dset);
+        if (size != null) {
+            currentBytes -= size;
+        }
+    }
+
+    /**
+     * Evicts least recently used buffers until the cache is within budget, keeping at least the most recent one.
+     */
+    private void evict() {
+        Iterator<Map.Entry<Dataset, Long>> it = buffers.entrySet().iterator();
+        while ((currentBytes > maxBytes) && (buffers.size() > 1)) {
+            Map.Entry<Dataset, Long> eldest = it.next();
+            log.trace("evict(): {} size={}", eldest.getKey().getFullName(), eldest.getValue());
+            eldest.getKey().evictData();
+            currentBytes -= eldest.getValue();
+            it.remove();
+            numEvictions++;
+        }
+    }
+
+    /**
+     * Estimates the memory size of a dataset buffer: a primitive or String array, or a List of them (compound
+     * datasets).
+     *
+     * @param buf
+     *            the buffer
+     *
+     * @return the estimated size in bytes.
+     */
+    static long sizeOf(Object buf) {
+        if (buf == null) {
+            return 0;
+        }
+        else if (buf instanceof List) {
+            long size = 0;
+            for (Object member : (List<?>) buf) {
+                size += sizeOf(member);
+            }
+            return size;
+        }
+        else if (!buf.getClass().isArray()) {
+            return 16;
+        }
+
+        Class<?> ctype = buf.getClass().getComponentType();
+        int n = Array.getLength(buf);
+        if ((ctype == byte.class) || (ctype == boolean.class)) {
+            return n;
+        }
+        else if ((ctype == short.class) || (ctype == char.class)) {
+            return 2L * n;
+        }
+        else if ((ctype == int.class) || (ctype == float.class)) {
+            return 4L * n;
+        }
+        else if ((ctype == long.class) || (ctype == double.class)) {
+            return 8L * n;
+        }
+        else if (ctype == String.class) {
+            long size = 8L * n;
+            for (String s : (String[]) buf) {
+                if (s != null) {
+                    size += 40 + 2L * s.length();
+                }
+            }
+            return size;
+        }
+
+        long size = 8L * n;
+        for (int i = 0; i < n; i++) {
+            size += sizeOf(Array.get(buf, i));
+        }
+        return size;
+    }
+}
@@ -243,6 +243,11 @@ public abstract class Dataset extends HObject {
             convertedBuf = null;
         }
         isDataLoaded = false;
+
+        DataCache cache = (fileFormat == null) ? null : fileFormat.getDataCache();
+        if (cache != null) {
+            cache.remove(this);
+        }
     }
 
     /**
@@ -729,11 +734,13 @@ public abstract class Dataset extends HObject {
      * @throws OutOfMemoryError if memory is exhausted
      */
     public final Object getData() throws Exception, OutOfMemoryError {
+        boolean loaded = false;
         if (!isDataLoaded) {
             log.trace("getData: read");
             data = read(); // load the data;
             originalBuf = data;
             isDataLoaded = true;
+            loaded = true;
             nPoints = 1;
             log.trace("getData: selectedDims length={}",selectedDims.length);
             for (int j = 0; j < selectedDims.length; j++) {
@@ -742,9 +749,25 @@ public abstract class Dataset extends HObject {
             log.trace("getData: read {}", nPoints);
         }
 
+        DataCache cache = (fileFormat == null) ? null : fileFormat.getDataCache();
+        if (cache != null) {
+            cache.access(this, loaded);
+        }
+
         return data;
     }
 
+    /**
+     * Drops the data buffer to free memory; called by the file's DataCache. The next getData() reads the data
+     * from file again.
+     */
+    final void evictData() {
+        data = null;
+        originalBuf = null;
+        convertedBuf = null;
+        isDataLoaded = false;
+    }
+
     /**
      * @deprecated Not for public use in the future.
      *             <p>
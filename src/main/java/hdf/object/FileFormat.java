@@ -15,9 +15,15 @@
 package hdf.object;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
 import java.util.Enumeration;
 import java.util.Hashtable;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.StringTokenizer;
 import java.util.Vector;
@@ -134,6 +140,15 @@ public abstract class FileFormat extends File {
     /** Key for HDF5 file format. */
     public static final String                   FILE_TYPE_HDF5     = "HDF5";
 
+    /** The file has the signature of the format; see checkSignature(). */
+    public static final int                      SIGNATURE_MATCH    = 1;
+
+    /** The file can't be in the format; see checkSignature(). */
+    public static final int                      SIGNATURE_NO_MATCH = -1;
+
+    /** The signature can't tell whether the file is in the format; see checkSignature(). */
+    public static final int                      SIGNATURE_UNKNOWN  = 0;
+
     /**
      * A separator that separates file name and object name.
      *
@@ -533,6 +548,13 @@ public abstract class FileFormat extends File {
      * The file is not opened as part of this call. Read/write file access is
      * associated with the FileFormat instance if the matching file format
      * supports read/write access. Some file formats only support read access.
+     * <p>
+     * The first bytes of the file are read once, and each supported file
+     * format checks them against its signature (see
+     * {@link #checkSignature(FileChannel)}). Only a format whose signature
+     * matches, or one that has no signature check, is asked to confirm the
+     * match with {@link #isThisType(String)}, which may open the file through
+     * a native library.
      *
      * @param filename
      *            A valid file name, with a relative or absolute path.
@@ -559,13 +581,50 @@ public abstract class FileFormat extends File {
 
         FileFormat fileFormat = null;
         FileFormat knownFormat = null;
+        List<FileFormat> matched = new ArrayList<FileFormat>();
+        List<FileFormat> unknown = new ArrayList<FileFormat>();
         Enumeration<?> elms = ((Hashtable) FileList).elements();
 
-        while (elms.hasMoreElements()) {
-            knownFormat = (FileFormat) elms.nextElement();
-            if (knownFormat.isThisType(filename)) {
+        FileChannel channel = null;
+        try {
+            channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ);
+        }
+        catch (Exception ex) {
+            log.debug("File {} open failure: ", filename, ex);
+        }
+        try {
+            while (elms.hasMoreElements()) {
+                knownFormat = (FileFormat) elms.nextElement();
+                int signature = SIGNATURE_UNKNOWN;
+                if (channel != null) {
+                    try {
+                        signature = knownFormat.checkSignature(channel);
+                    }
+                    catch (IOException ex) {
+                        log.debug("File {} checkSignature failure: ", filename, ex);
+                    }
+                }
+
+                if (signature == SIGNATURE_MATCH) {
+                    matched.add(knownFormat);
+                }
+                else if (signature == SIGNATURE_UNKNOWN) {
+                    unknown.add(knownFormat);
+                }
+            }
+        }
+        finally {
+            if (channel != null) {
+                channel.close();
+            }
+        }
+
+        // formats whose signature matches first, then those that can't tell
+        matched.addAll(unknown);
+        for (FileFormat candidate : matched) {
+            if (candidate.isThisType(filename)) {
                 try {
-                    fileFormat = knownFormat.createInstance(filename, WRITE);
+                    fileFormat = candidate.createInstance(filename, WRITE);
                 }
                 catch (Exception ex) {
                     log.debug("File {} createInstance failure: ", filename, ex);
@@ -652,6 +711,29 @@ public abstract class FileFormat extends File {
      */
     public abstract boolean isThisType(String filename);
 
+    /**
+     * Checks the signature of a file against that of the implementing
+     * FileFormat class, by reading only the few bytes the signature needs.
+     * <p>
+     * This is used by {@link #getInstance(String)} to rule out formats
+     * without the cost of {@link #isThisType(String)}, which may open the file
+     * through a native library. The default implementation has no signature
+     * and returns SIGNATURE_UNKNOWN.
+     *
+     * @param channel
+     *            The file, open for reading. Implementations must use
+     *            positional reads and must not close it.
+     * @return SIGNATURE_MATCH if the file has the signature of this format,
+     *         SIGNATURE_NO_MATCH if it can't be in this format, or
+     *         SIGNATURE_UNKNOWN if the signature can't tell.
+     * @throws IOException
+     *             If the file can't be read.
+     * @see #isThisType(String)
+     */
+    public int checkSignature(FileChannel channel) throws IOException {
+        return SIGNATURE_UNKNOWN;
+    }
+
     /**
      * Creates a file with the specified name and returns a new FileFormat
      * implementation instance associated with the file.
@@ -860,6 +942,19 @@ public abstract class FileFormat extends File {
         return max_members;
     }
 
+    /**
+     * Returns the cache that bounds the memory held by the data buffers of this file's datasets.
+     * <p>
+     * The default implementation has no cache, so each dataset keeps the buffer loaded by getData() until it is
+     * cleared.
+     *
+     * @return the data cache of this file, or null if there is none.
+     * @see hdf.object.DataCache
+     */
+    public DataCache getDataCache() {
+        return null;
+    }
+
     /**
      * Sets the starting index of objects to be loaded into memory.
      * <p>
@@ -924,7 +1019,15 @@ public abstract class FileFormat extends File {
         HObject rootObject = getRootObject();
 
         // Account for root object
-        if (rootObject != null) return ((Group) rootObject).depthFirstMemberList().size() + 1;
+        if (rootObject != null) {
+            int n = 1;
+            Iterator<HObject> it = ((Group) rootObject).depthFirstIterator();
+            while (it.hasNext()) {
+                it.next();
+                n++;
+            }
+            return n;
+        }
 
         return 0;
     }
@@ -1819,7 +1922,7 @@ public abstract class FileFormat extends File {
             return null;
         }
 
-        Iterator<HObject> member_it = ((Group) theRoot).breadthFirstMemberList().iterator();
+        Iterator<HObject> member_it = ((Group) theRoot).breadthFirstIterator();
         while (member_it.hasNext()) {
             theObj = member_it.next();
             if (theObj.equalsOID(oid)) break;
@@ -1864,7 +1967,7 @@ public abstract class FileFormat extends File {
             return theRoot;
         }
 
-        Iterator<HObject> member_it = ((Group) theRoot).breadthFirstMemberList().iterator();
+        Iterator<HObject> member_it = ((Group) theRoot).breadthFirstIterator();
         HObject theObj = null;
         while (member_it.hasNext()) {
             theObj = member_it.next();
@@ -14,11 +14,14 @@
 
 package hdf.object;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
 import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
-import java.util.Queue;
-import java.util.Stack;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
 import java.util.Vector;
 
 /**
@@ -177,7 +180,7 @@ public abstract class Group extends HObject {
             HObject root = theFile.getRootObject();
             if (root == null) return memberList;
 
-            Iterator<HObject> it = ((Group) root).depthFirstMemberList().iterator();
+            Iterator<HObject> it = ((Group) root).depthFirstIterator();
             Group g = null;
             Object uObj = null;
             while (it.hasNext()) {
@@ -202,54 +205,134 @@ public abstract class Group extends HObject {
     }
 
     /**
+     * Returns the members of this Group in breadth-first order, as a new list.
+     * <p>
+     * The whole subtree is copied; to walk or search a large file, use {@link #breadthFirstIterator()} instead.
+     *
      * @return the members of this Group in breadth-first order.
      */
     public List<HObject> breadthFirstMemberList() {
-        Vector<HObject> members = new Vector<HObject>();
-        Queue<HObject> queue = new LinkedList<HObject>();
-        HObject currentObj = this;
-
-        queue.addAll(((Group) currentObj).getMemberList());
-
-        while(!queue.isEmpty()) {
-            currentObj = queue.remove();
-            members.add(currentObj);
-
-            if(currentObj instanceof Group && ((Group) currentObj).getNumberOfMembersInFile() > 0) {
-                queue.addAll(((Group) currentObj).getMemberList());
-            }
+        List<HObject> members = new ArrayList<HObject>();
+        Iterator<HObject> it = breadthFirstIterator();
+        while (it.hasNext()) {
+            members.add(it.next());
         }
 
         return members;
     }
 
     /**
+     * Returns the members of this Group in depth-first order, as a new list.
+     * <p>
+     * The whole subtree is copied; to walk or search a large file, use {@link #depthFirstIterator()} instead.
+     *
      * @return the members of this Group in depth-first order.
      */
     public List<HObject> depthFirstMemberList() {
-        Vector<HObject> members = new Vector<HObject>();
-        Stack<HObject> stack = new Stack<HObject>();
-        HObject currentObj = this;
-
-        // Push elements onto the stack in reverse order
-        List<HObject> list = ((Group) currentObj).getMemberList();
-        for(int i = list.size() - 1; i >= 0; i--) {
-            stack.push(list.get(i));
+        List<HObject> members = new ArrayList<HObject>();
+        Iterator<HObject> it = depthFirstIterator();
+        while (it.hasNext()) {
+            members.add(it.next());
+        }
+
+        return members;
+    }
+
+    /**
+     * Returns a lazy iterator over the members of this Group in breadth-first order.
+     * <p>
+     * The iterator walks the member lists already loaded in memory; it doesn't copy the subtree, and it doesn't
+     * query the file for the number of members of each group. The member lists must not be changed while the
+     * iterator is in use.
+     *
+     * @return an iterator over the members of this Group in breadth-first order.
+     */
+    public Iterator<HObject> breadthFirstIterator() {
+        return new MemberIterator(getMemberList(), false);
+    }
+
+    /**
+     * Returns a lazy iterator over the members of this Group in depth-first (pre-order) order.
+     * <p>
+     * The iterator walks the member lists already loaded in memory; it doesn't copy the subtree, and it doesn't
+     * query the file for the number of members of each group. The member lists must not be changed while the
+     * iterator is in use.
+     *
+     * @return an iterator over the members of this Group in depth-first order.
+     */
+    public Iterator<HObject> depthFirstIterator() {
+        return new MemberIterator(getMemberList(), true);
+    }
+
+    /**
+     * @return a spliterator over the members of this Group in breadth-first order.
+     *
+     * @see #breadthFirstIterator()
+     */
+    public Spliterator<HObject> breadthFirstSpliterator() {
+        return Spliterators.spliteratorUnknownSize(breadthFirstIterator(), Spliterator.ORDERED | Spliterator.NONNULL);
+    }
+
+    /**
+     * @return a spliterator over the members of this Group in depth-first order.
+     *
+     * @see #depthFirstIterator()
+     */
+    public Spliterator<HObject> depthFirstSpliterator() {
+        return Spliterators.spliteratorUnknownSize(depthFirstIterator(), Spliterator.ORDERED | Spliterator.NONNULL);
+    }
+
+    /**
+     * Iterator over a tree of member lists. Each pending member list is held as an iterator of its own, so only
+     * one iterator per open level (depth-first) or per pending group (breadth-first) is kept.
+     */
+    private static final class MemberIterator implements Iterator<HObject> {
+        private final Deque<Iterator<HObject>> pending = new ArrayDeque<Iterator<HObject>>();
+        private final boolean depthFirst;
+
+        MemberIterator(List<HObject> members, boolean depthFirst) {
+            this.depthFirst = depthFirst;
+            if ((members != null) && !members.isEmpty()) {
+                pending.add(members.iterator());
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return !pending.isEmpty();
         }
 
-        while(!stack.empty()) {
-            currentObj = stack.pop();
-            members.add(currentObj);
+        @Override
+        public HObject next() {
+            Iterator<HObject> current = pending.peekFirst();
+            if (current == null) {
+                throw new NoSuchElementException();
+            }
+
+            HObject obj = current.next();
+            if (!current.hasNext()) {
+                pending.removeFirst();
+            }
 
-            if(currentObj instanceof Group && ((Group) currentObj).getNumberOfMembersInFile() > 0) {
-                list = ((Group) currentObj).getMemberList();
-                for(int i = list.size() - 1; i >= 0; i--) {
-                    stack.push(list.get(i));
+            if (obj instanceof Group) {
+                List<HObject> members = ((Group) obj).memberList;
+                if ((members != null) && !members.isEmpty()) {
+                    if (depthFirst) {
+                        pending.addFirst(members.iterator());
+                    }
+                    else {
+                        pending.addLast(members.iterator());
+                    }
                 }
             }
+
+            return obj;
         }
 
-        return members;
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
     }
 
     /**
@@ -115,6 +115,16 @@ public class H5CompoundDS extends CompoundDS {
      */
     private List<Long> flatTypeList;
 
+    /**
+     * The flattened layout of all fields including nested fields, in the order of flatNameList.
+     * <p>
+     * It is computed once (by init() or the first read() or write()) and reused, so reading or writing a field
+     * doesn't walk the compound datatype again or build a new single-field datatype each time. The datatype
+     * identifiers it holds (including those in flatTypeList) stay open until clear() is called or the file is
+     * closed (H5File.close() releases the layouts of all of its compound datasets).
+     */
+    private FlatMember[] flatMembers;
+
     /** flag to indicate is the dataset is an external dataset */
     private boolean isExternal = false;
 
@@ -244,8 +254,6 @@ public class H5CompoundDS extends CompoundDS {
         long sid = -1;
         long tid = -1;
         int tclass = -1;
-        flatNameList = new Vector<>();
-        flatTypeList = new Vector<>();
         long[] memberTIDs = null;
 
         did = open();
@@ -329,7 +337,7 @@ public class H5CompoundDS extends CompoundDS {
                 selectedDims = new long[rank];
 
                 // initialize member information
-                extractCompoundInfo(tid, "", flatNameList, flatTypeList);
+                buildFlatMembers(tid);
                 numberOfMembers = flatNameList.size();
                 log.trace("init(): numberOfMembers={}", numberOfMembers);
 
@@ -395,17 +403,6 @@ public class H5CompoundDS extends CompoundDS {
                 catch (HDF5Exception ex2) {
                     log.debug("init(): H5Sclose({}) failure: ", sid, ex2);
                 }
-
-                if (memberTIDs != null) {
-                    for (int i = 0; i < memberTIDs.length; i++) {
-                        try {
-                            H5.H5Tclose(memberTIDs[i]);
-                        }
-                        catch (Exception ex) {
-                            log.debug("init(): H5Tclose(memberTIDs[{}] {}) failure: ", i, memberTIDs[i], ex);
-                        }
-                    }
-                }
             }
 
             log.trace("init(): close dataset");
@@ -475,6 +472,8 @@ public class H5CompoundDS extends CompoundDS {
         if (attributeList != null) {
             ((Vector<Attribute>) attributeList).setSize(0);
         }
+
+        releaseFlatMembers();
     }
 
     /*
@@ -600,7 +599,6 @@ public class H5CompoundDS extends CompoundDS {
         did = open();
         if (did >= 0) {
             list = new Vector<>(flatNameList.size());
-            Vector<Long> atomicList = new Vector<>();
             try {
                 lsize[0] = selectHyperslab(did, spaceIDs);
                 log.trace("read(): opened dataset size {} for {}", lsize[0], nPoints);
@@ -654,7 +652,9 @@ public class H5CompoundDS extends CompoundDS {
                     }
                 }
 
-                extractCompoundInfo(tid, null, null, atomicList);
+                if (flatMembers == null) {
+                    buildFlatMembers(tid);
+                }
 
                 log.trace("read(): foreach nMembers={}", n);
                 for (int i = 0; i < n; i++) {
@@ -668,10 +668,11 @@ public class H5CompoundDS extends CompoundDS {
 
                     member_name = new String(memberNames[i]);
 
-                    atom_tid = ((Long) atomicList.get(i)).longValue();
+                    FlatMember member = flatMembers[i];
+                    atom_tid = member.tid;
+                    member_class = member.tclass;
+                    member_size = member.size;
                     try {
-                        member_class = H5.H5Tget_class(atom_tid);
-                        member_size = (int)H5.H5Tget_size(atom_tid);
                         member_data = H5Datatype.allocateArray(atom_tid, (int) lsize[0]);
                     }
                     catch (OutOfMemoryError err) {
@@ -684,7 +685,7 @@ public class H5CompoundDS extends CompoundDS {
                     }
                     log.trace("read(): {} Member[{}] is class {} of size={}", member_name, i, member_class, member_size);
 
-                    if (member_data == null || H5.H5Tequal(atom_tid, HDF5Constants.H5T_STD_REF_DSETREG)) {
+                    if (member_data == null || member.isRegionRef) {
                         String[] nullValues = new String[(int) lsize[0]];
                         String errorStr = "*unsupported*";
                         for (int j = 0; j < lsize[0]; j++) {
@@ -696,43 +697,19 @@ public class H5CompoundDS extends CompoundDS {
                         continue;
                     }
                     else if (member_class == HDF5Constants.H5T_ARRAY) {
-                        long tmptid = -1;
-                        try {
-                            tmptid = H5.H5Tget_super(atom_tid);
-                            member_base_class = H5.H5Tget_class(tmptid);
-
-                            isVL = isVL || H5.H5Tis_variable_str(tmptid);
-                            isVL = isVL || H5.H5Tdetect_class(tmptid, HDF5Constants.H5T_VLEN);
-
-                            if (member_base_class == HDF5Constants.H5T_COMPOUND) {
-                                try {
-                                    member_data = H5Datatype.allocateArray(tmptid, member_size * (int) lsize[0]);
-                                }
-                                catch (OutOfMemoryError err) {
-                                    member_data = null;
-                                    throw new HDF5Exception("Out Of Memory.");
-                                }
-                                catch (Exception ex) {
-                                    log.debug("read(): Member[{}]: Error allocating array for Compound: ", i, ex);
-                                    member_data = null;
-                                }
-                            }
-
-                            log.trace("read(): {} Array Member[{}] is class {} of size={}", member_name, i, member_base_class, member_size);
-                        }
-                        catch (Exception ex) {
-                            log.debug("read(): H5T_ARRAY id or class failure[{}]:", i, ex);
-                            continue;
-                        }
-                        finally {
+                        member_base_class = member.baseClass;
+                        if (member_base_class == HDF5Constants.H5T_COMPOUND) {
                             try {
-                                H5.H5Tclose(tmptid);
+                                member_data = new byte[member_size * (int) lsize[0]];
                             }
-                            catch (Exception ex) {
-                                log.debug("read(): Member[{}]: H5Tclose(tmptid {}) failure:", i, tmptid, ex);
+                            catch (OutOfMemoryError err) {
+                                member_data = null;
+                                throw new HDF5Exception("Out Of Memory.");
                             }
                         }
 
+                        log.trace("read(): {} Array Member[{}] is class {} of size={}", member_name, i, member_base_class, member_size);
+
                         // cannot deal with ARRAY of ARRAY, support only ARRAY of atomic types
                         if (member_base_class == HDF5Constants.H5T_ARRAY) {
                             String[] nullValues = new String[(int) lsize[0]];
@@ -751,7 +728,8 @@ public class H5CompoundDS extends CompoundDS {
                         long comp_tid = -1;
                         int compInfo[] = { member_class, member_size, 0 };
                         try {
-                            comp_tid = createCompoundFieldType(atom_tid, member_name, compInfo);
+                            comp_tid = getFieldType(i);
+                            compInfo[2] = member.isUnsigned ? 1 : 0;
                         }
                         catch (HDF5Exception ex) {
                             String[] nullValues = new String[(int) lsize[0]];
@@ -762,16 +740,7 @@ public class H5CompoundDS extends CompoundDS {
                             log.debug("read(): {} Member[{}] createCompoundFieldType failure:", member_name, i, ex);
                             continue;
                         }
-                        try {
-                            // See BUG#951 isVL = H5.H5Tdetect_class(atom_tid,
-                            // HDF5Constants.H5T_VLEN);
-                            isVL = isVL || H5.H5Tis_variable_str(atom_tid);
-                            isVL = isVL || H5.H5Tdetect_class(atom_tid, HDF5Constants.H5T_VLEN);
-                        }
-                        catch (Exception ex) {
-                            log.debug("read(): detection of varstr:", ex);
-                            isVL = false;
-                        }
+                        isVL = member.isVL;
                         try {
                             log.trace("read(): H5Dread({}) did={} spaceIDs[0]={} spaceIDs[1]={}", comp_tid, did, spaceIDs[0], spaceIDs[1]);
                             if (isVL) {
@@ -800,10 +769,6 @@ public class H5CompoundDS extends CompoundDS {
                             log.debug("read(): {} Member[{}] read failure:", member_name, i, ex2);
                             continue;
                         }
-                        finally {
-                            try {H5.H5Tclose(comp_tid);}
-                            catch (Exception ex3) {log.debug("read(): H5Tclose(comp_tid {}) failure: ", comp_tid, ex3);}
-                        }
 
                         if (!isVL) {
                             String cname = member_data.getClass().getName();
@@ -925,17 +890,6 @@ public class H5CompoundDS extends CompoundDS {
                     log.debug("read(): H5Sclose(spaceIDs[1] {}) failure: ", spaceIDs[1], ex2);
                 }
 
-                // close atomic types
-                int ntypes = atomicList.size();
-                for (int i = 0; i < ntypes; i++) {
-                    atom_tid = ((Long) atomicList.get(i)).longValue();
-                    try {
-                        H5.H5Tclose(atom_tid);
-                    }
-                    catch (Exception ex2) {
-                        log.debug("read(): H5Tclose(atom_tid {}) failure: ", atom_tid, ex2);
-                    }
-                }
                 try {H5.H5Tclose(tid);}
                 catch (Exception ex2) {log.debug("read(): H5Tclose(tid {}) failure: ", tid, ex2);}
 
@@ -981,7 +935,6 @@ public class H5CompoundDS extends CompoundDS {
         did = open();
         if (did >= 0) {
             log.trace("write(): dataset opened");
-            Vector<Long> atomicList = new Vector<>();
             try {
                 lsize[0] = selectHyperslab(did, spaceIDs);
                 long tmptid = H5.H5Dget_type(did);
@@ -993,7 +946,14 @@ public class H5CompoundDS extends CompoundDS {
                 boolean isEnum = false;
 
                 try {
-                    extractCompoundInfo(tmptid, null, null, atomicList);
+                    if (flatMembers == null) {
+                        if (H5.H5Tget_class(tmptid) == HDF5Constants.H5T_ARRAY) {
+                            long arraytid = tmptid;
+                            tmptid = H5.H5Tget_super(arraytid);
+                            H5.H5Tclose(arraytid);
+                        }
+                        buildFlatMembers(tmptid);
+                    }
                 }
                 finally {
                     try {H5.H5Tclose(tmptid);}
@@ -1007,7 +967,8 @@ public class H5CompoundDS extends CompoundDS {
                     }
 
                     member_name = new String(memberNames[i]);
-                    atom_tid = ((Long) atomicList.get(i)).longValue();
+                    FlatMember member = flatMembers[i];
+                    atom_tid = member.tid;
                     member_data = list.get(idx++);
 
                     if (member_data == null) {
@@ -1015,30 +976,20 @@ public class H5CompoundDS extends CompoundDS {
                         continue;
                     }
 
-                    boolean isVL = false;
-                    try {
-                        isVL = (H5.H5Tget_class(atom_tid) == HDF5Constants.H5T_VLEN || H5.H5Tis_variable_str(atom_tid));
-                        log.trace("write(): Member[{}] isVL={}", i, isVL);
-                    }
-                    catch (Exception ex) {
-                        log.debug("write(): isVL: ", ex);
-                    }
+                    boolean isVL = (member.tclass == HDF5Constants.H5T_VLEN) || member.isVarStr;
+                    log.trace("write(): Member[{}] isVL={}", i, isVL);
 
-                    try {
-                        member_class = H5.H5Tget_class(atom_tid);
-                        member_size = (int)H5.H5Tget_size(atom_tid);
-                        isEnum = (member_class == HDF5Constants.H5T_ENUM);
-                    }
-                    catch (Exception ex) {
-                        log.debug("write(): retrieve member class or size failure: ", ex);
-                    }
+                    member_class = member.tclass;
+                    member_size = member.size;
+                    isEnum = (member_class == HDF5Constants.H5T_ENUM);
                     log.trace("write(): {} Member[{}] is class {} of size={}", member_name, i, member_class, member_size);
 
                     Object tmpData = member_data;
 
                     int compInfo[] = { member_class, member_size, 0 };
                     try {
-                        tid = createCompoundFieldType(atom_tid, member_name, compInfo);
+                        tid = getFieldType(i);
+                        compInfo[2] = member.isUnsigned ? 1 : 0;
                         log.trace("write(): {} Member[{}] compInfo[class]={} compInfo[size]={} compInfo[unsigned]={}",
                                 member_name, i, compInfo[0], compInfo[1], compInfo[2]);
                         if(isVL) {
@@ -1049,7 +1000,7 @@ public class H5CompoundDS extends CompoundDS {
                         else {
                             if (compInfo[2] != 0) {
                                 // check if need to convert integer data
-                                int tsize = (int)H5.H5Tget_size(tid);
+                                int tsize = member_size;
                                 String cname = member_data.getClass().getName();
                                 char dname = cname.charAt(cname.lastIndexOf("[") + 1);
                                 boolean doConversion = (((tsize == 1) && (dname == 'S'))
@@ -1083,14 +1034,6 @@ public class H5CompoundDS extends CompoundDS {
                     catch (Exception ex1) {
                         log.debug("write(): H5Dwrite process failure:", ex1);
                     }
-                    finally {
-                        try {
-                            H5.H5Tclose(tid);
-                        }
-                        catch (Exception ex2) {
-                            log.debug("write(): H5Tclose(tid {}) failure: ", tid, ex2);
-                        }
-                    }
                 } // end of for (int i=0; i<num_members; i++)
             }
             finally {
@@ -1108,18 +1051,6 @@ public class H5CompoundDS extends CompoundDS {
                 catch (Exception ex2) {
                     log.debug("write(): H5Sclose(spaceIDs[1] {}) failure: ", spaceIDs[1], ex2);
                 }
-
-                // close atomic types
-                int ntypes = atomicList.size();
-                for (int i = 0; i < ntypes; i++) {
-                    atom_tid = ((Long) atomicList.get(i)).longValue();
-                    try {
-                        H5.H5Tclose(atom_tid);
-                    }
-                    catch (Exception ex2) {
-                        log.debug("write(): H5Tclose(atom_tid {}) failure: ", atom_tid, ex2);
-                    }
-                }
             }
             close(did);
         }
@@ -1982,6 +1913,21 @@ public class H5CompoundDS extends CompoundDS {
      * @param flatTypeList2  the list to store the nested member names of the compound datatype
      */
     private void extractCompoundInfo(long tid, String name, List<String> names, List<Long> flatTypeList2) {
+        extractCompoundInfo(tid, name, names, flatTypeList2, null, 0);
+    }
+
+    /**
+     * Extracts compound information into flat structure, including the byte offset of each field in the record.
+     *
+     * @param tid   the identifier of the compound datatype
+     * @param name  the name of the compound datatype
+     * @param names  the list to store the member names of the compound datatype
+     * @param flatTypeList2  the list to store the nested member names of the compound datatype
+     * @param offsets  the list to store the offsets of the members in the record; may be null
+     * @param baseOffset  the offset of the compound datatype in the record
+     */
+    private void extractCompoundInfo(long tid, String name, List<String> names, List<Long> flatTypeList2,
+            List<Long> offsets, long baseOffset) {
         log.trace("extractCompoundInfo(): start: tid={}, name={}", tid, name);
 
         int nMembers = 0, mclass = -1;
@@ -2044,8 +1990,18 @@ public class H5CompoundDS extends CompoundDS {
                 log.trace("extractCompoundInfo():[{}] mname={}, name={}", i, mname, name);
             }
 
+            long moffset = baseOffset;
+            if (offsets != null) {
+                try {
+                    moffset += H5.H5Tget_member_offset(tid, i);
+                }
+                catch (Exception ex) {
+                    log.debug("extractCompoundInfo():[{}] H5Tget_member_offset failure: ", i, ex);
+                }
+            }
+
             if (mclass == HDF5Constants.H5T_COMPOUND) {
-                extractCompoundInfo(mtype, mname + CompoundDS.separator, names, flatTypeList2);
+                extractCompoundInfo(mtype, mname + CompoundDS.separator, names, flatTypeList2, offsets, moffset);
                 log.debug("extractCompoundInfo(): continue after recursive H5T_COMPOUND[{}]:", i);
                 continue;
             }
@@ -2077,12 +2033,207 @@ public class H5CompoundDS extends CompoundDS {
             if (names != null) {
                 names.add(mname);
             }
-            flatTypeList2.add(new Long(mtype));
+            flatTypeList2.add(Long.valueOf(mtype));
+            if (offsets != null) {
+                offsets.add(Long.valueOf(moffset));
+            }
 
         } // for (int i=0; i<nMembers; i++)
         log.trace("extractCompoundInfo(): finish");
     } // extractNestedCompoundInfo
 
+    /**
+     * The layout of one field (including nested fields) of the compound datatype, in native memory order.
+     */
+    static final class FlatMember {
+        /** The full (flattened) name of the field. */
+        final String name;
+        /** The native datatype of the field. */
+        final long tid;
+        /** The byte offset of the field in the native record. */
+        final long offset;
+        int tclass = -1;
+        int size = 0;
+        /** The class of the base datatype of an ARRAY field; -1 otherwise. */
+        int baseClass = -1;
+        boolean isVarStr = false;
+        /** True if the field (or the base of an ARRAY field) is, or contains, variable-length data. */
+        boolean isVL = false;
+        boolean isRegionRef = false;
+        /** The single-field compound datatype used to read and write the field; created on first use. */
+        long fieldTid = -1;
+        boolean isUnsigned = false;
+
+        FlatMember(String name, long tid, long offset) {
+            this.name = name;
+            this.tid = tid;
+            this.offset = offset;
+        }
+    }
+
+    /**
+     * Computes the flattened layout of the given compound datatype: flatNameList, flatTypeList and flatMembers.
+     *
+     * @param tid
+     *            the identifier of the compound datatype of the dataset
+     */
+    private void buildFlatMembers(long tid) {
+        log.trace("buildFlatMembers(): start");
+        releaseFlatMembers();
+
+        flatNameList = new Vector<>();
+        flatTypeList = new Vector<>();
+        List<Long> offsets = new Vector<>();
+
+        // walk the native compound, so the offsets are those of the record in memory
+        long nativeTid = -1;
+        try {
+            nativeTid = H5.H5Tget_native_type(tid);
+        }
+        catch (Exception ex) {
+            log.debug("buildFlatMembers(): H5Tget_native_type(tid {}) failure: ", tid, ex);
+        }
+        try {
+            extractCompoundInfo((nativeTid >= 0) ? nativeTid : tid, "", flatNameList, flatTypeList, offsets, 0);
+        }
+        finally {
+            if (nativeTid >= 0) {
+                try {
+                    H5.H5Tclose(nativeTid);
+                }
+                catch (Exception ex) {
+                    log.debug("buildFlatMembers(): H5Tclose(nativeTid {}) failure: ", nativeTid, ex);
+                }
+            }
+        }
+
+        int n = flatNameList.size();
+        flatMembers = new FlatMember[n];
+        if (getFileFormat() instanceof H5File) {
+            ((H5File) getFileFormat()).addCompoundLayout(this, flatMembers);
+        }
+        for (int i = 0; i < n; i++) {
+            FlatMember member = new FlatMember(flatNameList.get(i), flatTypeList.get(i).longValue(), offsets.get(i).longValue());
+            flatMembers[i] = member;
+            try {
+                member.tclass = H5.H5Tget_class(member.tid);
+                member.size = (int) H5.H5Tget_size(member.tid);
+                member.isVarStr = H5.H5Tis_variable_str(member.tid);
+                member.isVL = member.isVarStr || H5.H5Tdetect_class(member.tid, HDF5Constants.H5T_VLEN);
+                member.isRegionRef = H5.H5Tequal(member.tid, HDF5Constants.H5T_STD_REF_DSETREG);
+            }
+            catch (Exception ex) {
+                log.debug("buildFlatMembers(): Member[{}] class or size failure: ", i, ex);
+            }
+
+            if (member.tclass == HDF5Constants.H5T_ARRAY) {
+                long basetid = -1;
+                try {
+                    basetid = H5.H5Tget_super(member.tid);
+                    member.baseClass = H5.H5Tget_class(basetid);
+                    member.isVL = member.isVL || H5.H5Tis_variable_str(basetid)
+                            || H5.H5Tdetect_class(basetid, HDF5Constants.H5T_VLEN);
+                }
+                catch (Exception ex) {
+                    log.debug("buildFlatMembers(): Member[{}] H5T_ARRAY base failure: ", i, ex);
+                }
+                finally {
+                    try {
+                        H5.H5Tclose(basetid);
+                    }
+                    catch (Exception ex) {
+                        log.debug("buildFlatMembers(): Member[{}] H5Tclose(basetid {}) failure: ", i, basetid, ex);
+                    }
+                }
+            }
+            log.trace("buildFlatMembers(): Member[{}] {} class={} size={} offset={}", i, member.name, member.tclass,
+                    member.size, member.offset);
+        }
+        log.trace("buildFlatMembers(): finish");
+    }
+
+    /**
+     * Closes the datatypes held by the flattened layout; the layout is computed again when it is next needed.
+     */
+    void releaseFlatMembers() {
+        if (flatMembers == null) {
+            return;
+        }
+
+        if (getFileFormat() instanceof H5File) {
+            ((H5File) getFileFormat()).removeCompoundLayout(this, flatMembers);
+        }
+
+        closeFlatMembers(flatMembers);
+        flatMembers = null;
+    }
+
+    /**
+     * Closes the datatypes held by a flattened layout.
+     *
+     * @param members
+     *            the layout
+     */
+    static void closeFlatMembers(FlatMember[] members) {
+        for (int i = 0; i < members.length; i++) {
+            try {
+                H5.H5Tclose(members[i].tid);
+            }
+            catch (Exception ex) {
+                log.debug("closeFlatMembers(): H5Tclose(tid {}) failure: ", members[i].tid, ex);
+            }
+            if (members[i].fieldTid >= 0) {
+                try {
+                    H5.H5Tclose(members[i].fieldTid);
+                }
+                catch (Exception ex) {
+                    log.debug("closeFlatMembers(): H5Tclose(fieldTid {}) failure: ", members[i].fieldTid, ex);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the single-field compound datatype used to read and write a field, creating it on first use.
+     *
+     * @param i
+     *            the index of the field in flatNameList
+     *
+     * @return the identifier of the datatype; it is owned by the layout and must not be closed.
+     *
+     * @throws HDF5Exception
+     *             If the datatype can't be created.
+     */
+    private long getFieldType(int i) throws HDF5Exception {
+        FlatMember member = flatMembers[i];
+        if (member.fieldTid < 0) {
+            int compInfo[] = { member.tclass, member.size, 0 };
+            member.fieldTid = createCompoundFieldType(member.tid, member.name, compInfo);
+            member.isUnsigned = (compInfo[2] != 0);
+        }
+
+        return member.fieldTid;
+    }
+
+    /**
+     * Returns the byte offsets of the fields (including nested fields, in the order of getMemberNames()) in a
+     * record of the dataset in native memory layout.
+     *
+     * @return the offsets of the fields, or null if the dataset hasn't been initialized.
+     */
+    public long[] getMemberOffsets() {
+        if (flatMembers == null) {
+            return null;
+        }
+
+        long[] offsets = new long[flatMembers.length];
+        for (int i = 0; i < flatMembers.length; i++) {
+            offsets[i] = flatMembers[i].offset;
+        }
+
+        return offsets;
+    }
+
     /*
      * (non-Javadoc)
      *
@@ -2120,6 +2271,49 @@ public class H5CompoundDS extends CompoundDS {
         return tsize;
     }
 
+    /**
+     * Extends the dataset to the given dimensions.
+     *
+     * @param newDims
+     *            the new dimensions; each must be no larger than the maximum dimension.
+     *
+     * @throws HDF5Exception
+     *             If the dataset can't be extended.
+     */
+    public void extend(long[] newDims) throws HDF5Exception {
+        long did = -1;
+        long sid = -1;
+
+        did = open();
+        if (did >= 0) {
+            try {
+                H5.H5Dset_extent(did, newDims);
+                H5.H5Fflush(did, HDF5Constants.H5F_SCOPE_GLOBAL);
+                sid = H5.H5Dget_space(did);
+                long[] checkDims = new long[rank];
+                H5.H5Sget_simple_extent_dims(sid, checkDims, null);
+                log.trace("extend(): rank={}, checkDims={}", rank, checkDims);
+                for (int i = 0; i < rank; i++) {
+                    if (checkDims[i] != newDims[i]) {
+                        log.debug("extend(): error extending dataset");
+                        throw new HDF5Exception("error extending dataset " + getName());
+                    }
+                }
+                dims = checkDims;
+            }
+            catch (Exception e) {
+                log.debug("extend(): failure: ", e);
+                throw new HDF5Exception(e.getMessage());
+            }
+            finally {
+                if (sid > 0)
+                    H5.H5Sclose(sid);
+
+                close(did);
+            }
+        }
+    }
+
     /*
      * (non-Javadoc)
      *
@@ -0,0 +1,374 @@
+/*****************************************************************************
+ * Copyright by The HDF Group.                                               *
+ * Copyright by the Board of Trustees of the University of Illinois.         *
+ * All rights reserved.                                                      *
+ *                                                                           *
+ * This file is part of the HDF Java Products distribution.                  *
+ * The full copyright notice, including terms governing use, modification,   *
+ * and redistribution, is contained in the files COPYING and Copyright.html. *
+ * COPYING can be found at the root of the source code distribution tree.    *
+ * Or, see http://hdfgroup.org/products/hdf-java/doc/Copyright.html.         *
+ * If you do not have access to either file, you may request a copy from     *
+ * help@hdfgroup.org.                                                        *
+ ****************************************************************************/
+
+package hdf.object.h5;
+
+import java.lang.reflect.Array;
+
+import hdf.hdf5lib.H5;
+import hdf.hdf5lib.HDF5Constants;
+import hdf.hdf5lib.exceptions.HDF5Exception;
+import hdf.object.Dataset;
+
+/**
+ * H5DatasetAppender appends rows to the end of an extendible, chunked dataset (an H5ScalarDS or H5CompoundDS whose
+ * first dimension can grow, such as one created with a maximum dimension of H5S_UNLIMITED).
+ * <p>
+ * Rows are buffered in a primitive array of the dataset's native memory type. A flush extends the dataset and
+ * writes the buffered rows up to the last chunk boundary (along the first dimension) with one hyperslab write, so
+ * each chunk is written whole, exactly once, and never has to be read back and modified. Rows past the last chunk
+ * boundary stay in the buffer until more rows arrive or the appender is closed; close() writes them as the final,
+ * partial chunk. The buffer holds several chunks (about 4 MB), and is flushed automatically when full.
+ * <p>
+ * If the dataset already ends in a partial chunk (for example, one written by an earlier appender's close()), the
+ * first write only fills that chunk, realigning the appends to the chunk boundaries; that chunk is the only one
+ * read back and rewritten.
+ * <p>
+ * For a scalar dataset, rows are given as a primitive array matching the native type of the dataset (for example,
+ * double[] for a 64-bit float dataset) with getRowLength() values per row. For a compound dataset, rows are given
+ * as a byte[] of records in the native memory layout; see getRecordSize() and getMemberOffset().
+ * <p>
+ * The dataset stays open until close() is called, and the dataset object's dimensions are updated then.
+ *
+ * <pre>
+ * H5DatasetAppender appender = new H5DatasetAppender(dataset);
+ * try {
+ *     appender.append(values, numRows);
+ * }
+ * finally {
+ *     appender.close();
+ * }
+ * </pre>
+ */
+public class H5DatasetAppender {
+    private final static org.slf4j.Logger log = org.slf4j.LoggerFactory.getLogger(H5DatasetAppender.class);
+
+    /** Approximate number of bytes buffered before the rows are written. */
+    private static final long BUFFER_BYTES = 4 * 1024 * 1024;
+
+    private final Dataset dataset;
+    private final boolean isCompound;
+    private final int rank;
+    private final long[] rowDims;       // dimensions of the dataset after the first
+    private final long chunkRows;       // chunk size along the first dimension
+    private final int rowLength;        // values per row
+    private final int rowElements;      // buffer array elements per row
+    private final long recordSize;      // bytes per value in memory
+    private final Object buffer;
+    private final int bufferRows;
+
+    private long did = -1;
+    private long memtype = -1;
+    private long numRows;               // rows written to the file
+    private int bufferedRows = 0;       // rows waiting in the buffer
+
+    /**
+     * Opens an appender on the given dataset.
+     *
+     * @param dataset
+     *            An H5ScalarDS or H5CompoundDS with a chunked layout and an extendible first dimension.
+     *
+     * @throws HDF5Exception
+     *             If the dataset can't be opened or can't be appended to.
+     */
+    public H5DatasetAppender(Dataset dataset) throws HDF5Exception {
+        log.trace("H5DatasetAppender: start");
+        this.dataset = dataset;
+        isCompound = (dataset instanceof H5CompoundDS);
+        if (!isCompound && !(dataset instanceof H5ScalarDS)) {
+            throw new HDF5Exception("Only HDF5 scalar and compound datasets can be appended to");
+        }
+
+        long tid = -1, sid = -1, pid = -1;
+        boolean success = false;
+        did = dataset.open();
+        if (did < 0) {
+            throw new HDF5Exception("Unable to open dataset " + dataset.getFullName());
+        }
+        try {
+            sid = H5.H5Dget_space(did);
+            rank = H5.H5Sget_simple_extent_ndims(sid);
+            if (rank < 1) {
+                throw new HDF5Exception("Dataset " + dataset.getFullName() + " is scalar; it can't be appended to");
+            }
+            long[] dims = new long[rank];
+            long[] maxDims = new long[rank];
+            H5.H5Sget_simple_extent_dims(sid, dims, maxDims);
+            if ((maxDims[0] != HDF5Constants.H5S_UNLIMITED) && (maxDims[0] <= dims[0])) {
+                throw new HDF5Exception("Dataset " + dataset.getFullName() + " can't be extended");
+            }
+            numRows = dims[0];
+            rowDims = new long[rank - 1];
+            long length = 1;
+            for (int i = 1; i < rank; i++) {
+                rowDims[i - 1] = dims[i];
+                length *= dims[i];
+            }
+            rowLength = (int) length;
+
+            pid = H5.H5Dget_create_plist(did);
+            if (H5.H5Pget_layout(pid) != HDF5Constants.H5D_CHUNKED) {
+                throw new HDF5Exception("Dataset " + dataset.getFullName() + " isn't chunked; it can't be appended to");
+            }
+            long[] chunk = new long[rank];
+            H5.H5Pget_chunk(pid, rank, chunk);
+            chunkRows = chunk[0];
+
+            tid = H5.H5Dget_type(did);
+            memtype = H5.H5Tget_native_type(tid);
+            recordSize = H5.H5Tget_size(memtype);
+            long rowBytes = Math.max(1, rowLength * recordSize);
+            long rows = Math.max(chunkRows, (BUFFER_BYTES / rowBytes / chunkRows) * chunkRows);
+            if (rows * rowBytes > Integer.MAX_VALUE) {
+                throw new HDF5Exception("Chunks of " + dataset.getFullName() + " are too large to buffer");
+            }
+            bufferRows = (int) rows;
+            if (isCompound) {
+                rowElements = (int) rowBytes;
+                buffer = new byte[bufferRows * rowElements];
+            }
+            else {
+                Object row = H5Datatype.allocateArray(memtype, rowLength);
+                if ((row == null) || (row instanceof String[])) {
+                    throw new HDF5Exception("Datatype of " + dataset.getFullName() + " can't be appended to");
+                }
+                rowElements = Array.getLength(row);
+                buffer = H5Datatype.allocateArray(memtype, bufferRows * rowLength);
+            }
+            log.trace("H5DatasetAppender: rows={} chunkRows={} bufferRows={}", numRows, chunkRows, bufferRows);
+            success = true;
+        }
+        finally {
+            try {
+                H5.H5Tclose(tid);
+            }
+            catch (Exception ex) {
+                log.debug("H5DatasetAppender: H5Tclose(tid {}) failure: ", tid, ex);
+            }
+            try {
+                H5.H5Pclose(pid);
+            }
+            catch (Exception ex) {
+                log.debug("H5DatasetAppender: H5Pclose(pid {}) failure: ", pid, ex);
+            }
+            try {
+                H5.H5Sclose(sid);
+            }
+            catch (Exception ex) {
+                log.debug("H5DatasetAppender: H5Sclose(sid {}) failure: ", sid, ex);
+            }
+            if (!success) {
+                closeIDs();
+            }
+        }
+        log.trace("H5DatasetAppender: finish");
+    }
+
+    /**
+     * @return the number of values in each row (the product of the dimensions after the first).
+     */
+    public int getRowLength() {
+        return rowLength;
+    }
+
+    /**
+     * @return the size in bytes of one value (for a compound dataset, one record) in memory.
+     */
+    public long getRecordSize() {
+        return recordSize;
+    }
+
+    /**
+     * Returns the byte offset of a member within a record in memory, for a compound dataset.
+     *
+     * @param memberName
+     *            the name of the compound member
+     *
+     * @return the offset of the member in the record.
+     *
+     * @throws HDF5Exception
+     *             If the dataset isn't compound or has no such member.
+     */
+    public long getMemberOffset(String memberName) throws HDF5Exception {
+        if (!isCompound) {
+            throw new HDF5Exception("Dataset " + dataset.getFullName() + " isn't compound");
+        }
+        int idx = H5.H5Tget_member_index(memtype, memberName);
+        if (idx < 0) {
+            throw new HDF5Exception("Dataset " + dataset.getFullName() + " has no member " + memberName);
+        }
+        return H5.H5Tget_member_offset(memtype, idx);
+    }
+
+    /**
+     * @return the number of rows in the dataset, including those still buffered.
+     */
+    public long getNumRows() {
+        return numRows + bufferedRows;
+    }
+
+    /**
+     * Appends rows to the dataset.
+     *
+     * @param rows
+     *            For a scalar dataset, a primitive array of the dataset's native type holding numRows *
+     *            getRowLength() values; for a compound dataset, a byte[] holding numRows records of the native
+     *            memory layout.
+     * @param numRows
+     *            The number of rows to append.
+     *
+     * @throws HDF5Exception
+     *             If the rows can't be written.
+     */
+    public void append(Object rows, int numRows) throws HDF5Exception {
+        if (did < 0) {
+            throw new HDF5Exception("Appender for " + dataset.getFullName() + " is closed");
+        }
+        if (rows.getClass() != buffer.getClass()) {
+            throw new HDF5Exception("Rows for " + dataset.getFullName() + " must be a " + buffer.getClass().getSimpleName());
+        }
+        int srcRow = 0;
+        while (srcRow < numRows) {
+            int n = Math.min(numRows - srcRow, bufferRows - bufferedRows);
+            System.arraycopy(rows, srcRow * rowElements, buffer, bufferedRows * rowElements, n * rowElements);
+            bufferedRows += n;
+            srcRow += n;
+            if (bufferedRows == bufferRows) {
+                flush();
+            }
+        }
+    }
+
+    /**
+     * Writes the buffered rows up to the last chunk boundary. Rows past it stay in the buffer.
+     *
+     * @throws HDF5Exception
+     *             If the rows can't be written.
+     */
+    public void flush() throws HDF5Exception {
+        long partialRows = numRows % chunkRows;
+        if ((partialRows > 0) && (bufferedRows >= chunkRows - partialRows)) {
+            // complete the partial last chunk on its own, so later writes start on a chunk boundary
+            write((int) (chunkRows - partialRows));
+        }
+        long alignedEnd = ((numRows + bufferedRows) / chunkRows) * chunkRows;
+        if (alignedEnd > numRows) {
+            write((int) (alignedEnd - numRows));
+        }
+    }
+
+    /**
+     * Writes all buffered rows (the last chunk may be partial), then closes the dataset and updates its dimensions.
+     *
+     * @throws HDF5Exception
+     *             If the rows can't be written.
+     */
+    public void close() throws HDF5Exception {
+        if (did < 0) {
+            return;
+        }
+        try {
+            if (bufferedRows > 0) {
+                write(bufferedRows);
+            }
+        }
+        finally {
+            closeIDs();
+        }
+
+        // refresh the dimensions of the dataset object
+        long[] newDims = new long[rank];
+        newDims[0] = numRows;
+        System.arraycopy(rowDims, 0, newDims, 1, rank - 1);
+        if (isCompound) {
+            ((H5CompoundDS) dataset).extend(newDims);
+        }
+        else {
+            ((H5ScalarDS) dataset).extend(newDims);
+        }
+    }
+
+    /**
+     * Extends the dataset and writes the first n buffered rows with one hyperslab write.
+     */
+    private void write(int n) throws HDF5Exception {
+        log.trace("write(): start: rows={} n={}", numRows, n);
+        long[] newDims = new long[rank];
+        newDims[0] = numRows + n;
+        System.arraycopy(rowDims, 0, newDims, 1, rank - 1);
+        long[] start = new long[rank];
+        start[0] = numRows;
+        long[] count = newDims.clone();
+        count[0] = n;
+
+        long fspace = -1, mspace = -1;
+        try {
+            H5.H5Dset_extent(did, newDims);
+            fspace = H5.H5Dget_space(did);
+            H5.H5Sselect_hyperslab(fspace, HDF5Constants.H5S_SELECT_SET, start, null, count, null);
+            mspace = H5.H5Screate_simple(rank, count, null);
+            if (buffer instanceof double[]) {
+                H5.H5Dwrite_double(did, memtype, mspace, fspace, HDF5Constants.H5P_DEFAULT, (double[]) buffer);
+            }
+            else if (buffer instanceof float[]) {
+                H5.H5Dwrite_float(did, memtype, mspace, fspace, HDF5Constants.H5P_DEFAULT, (float[]) buffer);
+            }
+            else if (buffer instanceof long[]) {
+                H5.H5Dwrite_long(did, memtype, mspace, fspace, HDF5Constants.H5P_DEFAULT, (long[]) buffer);
+            }
+            else if (buffer instanceof int[]) {
+                H5.H5Dwrite_int(did, memtype, mspace, fspace, HDF5Constants.H5P_DEFAULT, (int[]) buffer);
+            }
+            else if (buffer instanceof short[]) {
+                H5.H5Dwrite_short(did, memtype, mspace, fspace, HDF5Constants.H5P_DEFAULT, (short[]) buffer);
+            }
+            else {
+                H5.H5Dwrite(did, memtype, mspace, fspace, HDF5Constants.H5P_DEFAULT, (byte[]) buffer);
+            }
+        }
+        finally {
+            try {
+                H5.H5Sclose(mspace);
+            }
+            catch (Exception ex) {
+                log.debug("write(): H5Sclose(mspace {}) failure: ", mspace, ex);
+            }
+            try {
+                H5.H5Sclose(fspace);
+            }
+            catch (Exception ex) {
+                log.debug("write(): H5Sclose(fspace {}) failure: ", fspace, ex);
+            }
+        }
+
+        numRows += n;
+        bufferedRows -= n;
+        if (bufferedRows > 0) {
+            System.arraycopy(buffer, n * rowElements, buffer, 0, bufferedRows * rowElements);
+        }
+        log.trace("write(): finish");
+    }
+
+    private void closeIDs() {
+        try {
+            H5.H5Tclose(memtype);
+        }
+        catch (Exception ex) {
+            log.debug("closeIDs(): H5Tclose(memtype {}) failure: ", memtype, ex);
+        }
+        memtype = -1;
+        dataset.close(did);
+        did = -1;
+    }
+}
@@ -15,13 +15,22 @@
 package hdf.object.h5;
 
 import java.io.File;
+import java.io.IOException;
 import java.lang.reflect.Array;
-import java.util.Hashtable;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Queue;
+import java.util.Set;
 import java.util.Vector;
+import java.util.WeakHashMap;
 
 import hdf.hdf5lib.H5;
 import hdf.hdf5lib.HDF5Constants;
@@ -31,6 +40,7 @@ import hdf.hdf5lib.structs.H5G_info_t;
 import hdf.hdf5lib.structs.H5L_info_t;
 import hdf.hdf5lib.structs.H5O_info_t;
 import hdf.object.Attribute;
+import hdf.object.DataCache;
 import hdf.object.Dataset;
 import hdf.object.Datatype;
 import hdf.object.FileFormat;
@@ -60,8 +70,7 @@ import hdf.object.ScalarDS;
  *     else if (path.equals(&quot;/&quot;))
  *         return theRoot;
  *
- *     Iterator local_it = ((Group) theRoot)
- *             .breadthFirstMemberList().iterator();
+ *     Iterator local_it = ((Group) theRoot).breadthFirstIterator();
  *     HObject theObj = null;
  *     while (local_it.hasNext()) {
  *         theObj = local_it.next();
@@ -114,6 +123,24 @@ public class H5File extends FileFormat {
 
     private boolean attrFlag;
 
+    /**
+     * The cache bounding the memory held by dataset buffers; null if dataset buffers aren't bounded.
+     */
+    private DataCache dataCache = null;
+
+    /**
+     * The compound datasets holding a cached member layout (and its open native datatypes); see H5CompoundDS.
+     * Their layouts are released when the file is closed.  The datasets are held weakly, so that the file doesn't
+     * keep a dataset (and its data) alive after the application has dropped it.
+     */
+    private final Set<H5CompoundDS> compoundLayouts = Collections.newSetFromMap(new WeakHashMap<H5CompoundDS, Boolean>());
+
+    /**
+     * The layouts of the datasets in compoundLayouts, held until they're released, so that the datatypes of a
+     * dataset which has been garbage collected are still closed with the file.
+     */
+    private final Set<H5CompoundDS.FlatMember[]> compoundLayoutMembers = Collections.newSetFromMap(new IdentityHashMap<H5CompoundDS.FlatMember[], Boolean>());
+
     /***************************************************************************
      * Constructor
      **************************************************************************/
@@ -379,11 +406,70 @@ public class H5File extends FileFormat {
      */
 
     public static final List<Attribute> getAttribute(long objID, int idx_type, int order) throws HDF5Exception {
-        log.trace("getAttribute(): start: objID={} idx_type={} order={}", objID, idx_type, order);
+        return getAttribute(objID, idx_type, order, true);
+    }
+
+    /**
+     * Returns a list of attributes for the specified object, in alphabetical order, without reading their values.
+     * <p>
+     * The value of each attribute is read from the file on the first call to its getValue() or toString(String)
+     * method, so the names, datatypes and sizes of many (or large) attributes can be listed cheaply. The file must
+     * still be open when the value is read.
+     *
+     * @param obj
+     *            The object whose attributes are to be returned.
+     * @param maxValueSize
+     *            The largest attribute value (in bytes) to read on demand; larger values are never read. Use a
+     *            negative number for no limit.
+     *
+     * @return The list of the object's attributes.
+     *
+     * @throws HDF5Exception
+     *             If an underlying HDF library routine is unable to perform a step necessary to retrieve the
+     *             attributes.
+     */
+    public static final List<Attribute> getAttribute(final HObject obj, long maxValueSize) throws HDF5Exception {
+        log.trace("getAttribute(): start: obj={} maxValueSize={}", obj.getFullName(), maxValueSize);
+        List<Attribute> attributeList = null;
+        long objID = obj.open();
+        if (objID < 0) {
+            throw new HDF5Exception("Unable to open " + obj.getFullName());
+        }
+        try {
+            attributeList = getAttribute(objID, HDF5Constants.H5_INDEX_NAME, HDF5Constants.H5_ITER_INC, false);
+        }
+        finally {
+            obj.close(objID);
+        }
+
+        Attribute.ValueLoader loader = new Attribute.ValueLoader() {
+            @Override
+            public Object loadValue(Attribute attr) throws Exception {
+                long aid = H5.H5Aopen_by_name(obj.getFID(), obj.getFullName(), attr.getName(),
+                        HDF5Constants.H5P_DEFAULT, HDF5Constants.H5P_DEFAULT);
+                try {
+                    return readAttribute(aid, true).getValue();
+                }
+                finally {
+                    H5.H5Aclose(aid);
+                }
+            }
+        };
+        for (Attribute attr : attributeList) {
+            attr.setValueLoader(loader, maxValueSize);
+        }
+
+        log.trace("getAttribute(): finish");
+        return attributeList;
+    }
+
+    /**
+     * Returns a list of attributes for the specified object, reading their values if readValues is true.
+     */
+    private static final List<Attribute> getAttribute(long objID, int idx_type, int order, boolean readValues) throws HDF5Exception {
+        log.trace("getAttribute(): start: objID={} idx_type={} order={} readValues={}", objID, idx_type, order, readValues);
         List<Attribute> attributeList = null;
         long aid = -1;
-        long sid = -1;
-        long tid = -1;
         H5O_info_t obj_info = null;
 
         try {
@@ -403,203 +489,234 @@ public class H5File extends FileFormat {
         log.trace("getAttribute(): num_attrs={}", n);
 
         for (int i = 0; i < n; i++) {
-            long lsize = 1;
             log.trace("getAttribute(): attribute[{}]", i);
 
             try {
                 aid = H5.H5Aopen_by_idx(objID, ".", idx_type, order, i, HDF5Constants.H5P_DEFAULT,
                         HDF5Constants.H5P_DEFAULT);
-                sid = H5.H5Aget_space(aid);
+                attributeList.add(readAttribute(aid, readValues));
+            }
+            catch (HDF5Exception ex) {
+                log.debug("getAttribute(): Attribute[{}] inspection failure: ", i, ex);
+            }
+            finally {
+                try {
+                    H5.H5Aclose(aid);
+                }
+                catch (Exception ex) {
+                    log.debug("getAttribute(): Attribute[{}] H5Aclose(aid {}) failure: ", i, aid, ex);
+                }
+            }
+        } // for (int i=0; i<obj_info.num_attrs; i++)
 
-                long dims[] = null;
-                int rank = H5.H5Sget_simple_extent_ndims(sid);
+        log.trace("getAttribute(): finish");
+        return attributeList;
+    }
 
-                if (rank > 0) {
-                    dims = new long[rank];
-                    H5.H5Sget_simple_extent_dims(sid, dims, null);
-                    log.trace("getAttribute(): Attribute[{}] rank={}, dims={}", i, rank, dims);
-                    for (int j = 0; j < dims.length; j++) {
-                        lsize *= dims[j];
-                    }
+    /**
+     * Reads the name, datatype, dataspace and (optionally) value of an open attribute.
+     *
+     * @param aid
+     *            The identifier of the open attribute; the caller closes it.
+     * @param readValue
+     *            If false, only the name, datatype and dataspace are read.
+     *
+     * @return The attribute; its value is null if it wasn't read, the attribute has no data or the value can't be
+     *         read.
+     *
+     * @throws HDF5Exception
+     *             If the name, dataspace or datatype of the attribute can't be retrieved.
+     */
+    public static final Attribute readAttribute(long aid, boolean readValue) throws HDF5Exception {
+        log.trace("readAttribute(): start: aid={}", aid);
+        Attribute attr = null;
+        long sid = -1;
+        long tid = -1;
+        long lsize = 1;
+
+        try {
+            String nameA = H5.H5Aget_name(aid);
+            sid = H5.H5Aget_space(aid);
+
+            long dims[] = null;
+            int rank = H5.H5Sget_simple_extent_ndims(sid);
+
+            if (rank > 0) {
+                dims = new long[rank];
+                H5.H5Sget_simple_extent_dims(sid, dims, null);
+                log.trace("readAttribute(): Attribute[{}] rank={}, dims={}", nameA, rank, dims);
+                for (int j = 0; j < dims.length; j++) {
+                    lsize *= dims[j];
                 }
-                String nameA = H5.H5Aget_name(aid);
-                log.trace("getAttribute(): Attribute[{}] is {}", i, nameA);
+            }
 
-                long tmptid = -1;
+            long tmptid = -1;
+            try {
+                tmptid = H5.H5Aget_type(aid);
+                tid = H5.H5Tget_native_type(tmptid);
+                log.trace("readAttribute(): Attribute[{}] tid={} native tmptid={} from aid={}", nameA, tid, tmptid, aid);
+            }
+            finally {
                 try {
-                    tmptid = H5.H5Aget_type(aid);
-                    tid = H5.H5Tget_native_type(tmptid);
-                    log.trace("getAttribute(): Attribute[{}] tid={} native tmptid={} from aid={}", i, tid, tmptid, aid);
+                    H5.H5Tclose(tmptid);
                 }
-                finally {
-                    try {
-                        H5.H5Tclose(tmptid);
-                    }
-                    catch (Exception ex) {
-                        log.debug("getAttribute(): Attribute[{}] H5Tclose(tmptid {}) failure: ", i, tmptid, ex);
-                    }
+                catch (Exception ex) {
+                    log.debug("readAttribute(): Attribute[{}] H5Tclose(tmptid {}) failure: ", nameA, tmptid, ex);
                 }
-                Datatype attrType = new H5Datatype(tid);
-                Attribute attr = new Attribute(nameA, attrType, dims);
-                attributeList.add(attr);
-                log.trace("getAttribute(): Attribute[{}] Datatype={}", i, attrType.getDatatypeDescription());
+            }
+            Datatype attrType = new H5Datatype(tid);
+            attr = new Attribute(nameA, attrType, dims);
+            log.trace("readAttribute(): Attribute[{}] Datatype={}", nameA, attrType.getDatatypeDescription());
+            if (!readValue) {
+                log.trace("readAttribute(): Attribute[{}] value not read", nameA);
+                return attr;
+            }
+
+            boolean is_variable_str = false;
+            boolean isVLEN = false;
+            boolean isCompound = false;
+            boolean isScalar = false;
+            int tclass = H5.H5Tget_class(tid);
+
+            if (dims == null)
+                isScalar = true;
+            try {
+                is_variable_str = H5.H5Tis_variable_str(tid);
+            }
+            catch (Exception ex) {
+                log.debug("readAttribute(): Attribute[{}] H5Tis_variable_str(tid {}) failure: ", nameA, tid, ex);
+            }
+            isVLEN = (tclass == HDF5Constants.H5T_VLEN);
+            isCompound = (tclass == HDF5Constants.H5T_COMPOUND);
+            log.trace(
+                    "readAttribute(): Attribute[{}] has size={} isCompound={} isScalar={} is_variable_str={} isVLEN={}",
+                    nameA, lsize, isCompound, isScalar, is_variable_str, isVLEN);
 
-                boolean is_variable_str = false;
-                boolean isVLEN = false;
-                boolean isCompound = false;
-                boolean isScalar = false;
-                int tclass = H5.H5Tget_class(tid);
+            // retrieve the attribute value
+            if (lsize <= 0) {
+                log.debug("readAttribute(): Attribute[{}] lsize <= 0", nameA);
+                log.trace("readAttribute(): Attribute[{}] finish", nameA);
+                return attr;
+            }
 
-                if (dims == null)
-                    isScalar = true;
+            if (lsize < Integer.MIN_VALUE || lsize > Integer.MAX_VALUE) {
+                log.debug("readAttribute(): Attribute[{}] lsize outside valid Java int range; unsafe cast", nameA);
+                log.trace("readAttribute(): Attribute[{}] finish", nameA);
+                return attr;
+            }
+
+            Object value = null;
+            if (is_variable_str) {
+                String[] strs = new String[(int) lsize];
+                for (int j = 0; j < lsize; j++) {
+                    strs[j] = "";
+                }
                 try {
-                    is_variable_str = H5.H5Tis_variable_str(tid);
+                    log.trace("readAttribute(): Attribute[{}] H5AreadVL", nameA);
+                    H5.H5AreadVL(aid, tid, strs);
                 }
                 catch (Exception ex) {
-                    log.debug("getAttribute(): Attribute[{}] H5Tis_variable_str(tid {}) failure: ", i, tid, ex);
+                    log.debug("readAttribute(): Attribute[{}] H5AreadVL failure: ", nameA, ex);
+                    ex.printStackTrace();
                 }
-                isVLEN = (tclass == HDF5Constants.H5T_VLEN);
-                isCompound = (tclass == HDF5Constants.H5T_COMPOUND);
-                log.trace(
-                        "getAttribute(): Attribute[{}] has size={} isCompound={} isScalar={} is_variable_str={} isVLEN={}",
-                        i, lsize, isCompound, isScalar, is_variable_str, isVLEN);
-
-                // retrieve the attribute value
-                if (lsize <= 0) {
-                    log.debug("getAttribute(): Attribute[{}] lsize <= 0", i);
-                    log.trace("getAttribute(): Attribute[{}] continue", i);
-                    continue;
+                value = strs;
+            }
+            else if (isCompound || (isScalar && tclass == HDF5Constants.H5T_ARRAY)) {
+                String[] strs = new String[(int) lsize];
+                for (int j = 0; j < lsize; j++) {
+                    strs[j] = "";
                 }
-
-                if (lsize < Integer.MIN_VALUE || lsize > Integer.MAX_VALUE) {
-                    log.debug("getAttribute(): Attribute[{}] lsize outside valid Java int range; unsafe cast", i);
-                    log.trace("getAttribute(): Attribute[{}] continue", i);
-                    continue;
+                try {
+                    log.trace("readAttribute(): attribute[{}] H5AreadComplex", nameA);
+                    H5.H5AreadComplex(aid, tid, strs);
                 }
-
-                Object value = null;
-                if (is_variable_str) {
-                    String[] strs = new String[(int) lsize];
-                    for (int j = 0; j < lsize; j++) {
-                        strs[j] = "";
-                    }
-                    try {
-                        log.trace("getAttribute(): Attribute[{}] H5AreadVL", i);
-                        H5.H5AreadVL(aid, tid, strs);
-                    }
-                    catch (Exception ex) {
-                        log.debug("getAttribute(): Attribute[{}] H5AreadVL failure: ", i, ex);
-                        ex.printStackTrace();
-                    }
-                    value = strs;
+                catch (Exception ex) {
+                    ex.printStackTrace();
                 }
-                else if (isCompound || (isScalar && tclass == HDF5Constants.H5T_ARRAY)) {
-                    String[] strs = new String[(int) lsize];
-                    for (int j = 0; j < lsize; j++) {
-                        strs[j] = "";
-                    }
-                    try {
-                        log.trace("getAttribute: attribute[{}] H5AreadComplex", i);
-                        H5.H5AreadComplex(aid, tid, strs);
-                    }
-                    catch (Exception ex) {
-                        ex.printStackTrace();
-                    }
-                    value = strs;
+                value = strs;
+            }
+            else if (isVLEN) {
+                String[] strs = new String[(int) lsize];
+                for (int j = 0; j < lsize; j++) {
+                    strs[j] = "";
                 }
-                else if (isVLEN) {
-                    String[] strs = new String[(int) lsize];
-                    for (int j = 0; j < lsize; j++) {
-                        strs[j] = "";
-                    }
+                try {
+                    log.trace("readAttribute(): Attribute[{}] H5AreadVL", nameA);
+                    H5.H5AreadComplex(aid, tid, strs);
+                }
+                catch (Exception ex) {
+                    log.debug("readAttribute(): Attribute[{}] H5AreadVL failure: ", nameA, ex);
+                    ex.printStackTrace();
+                }
+                value = strs;
+            }
+            else {
+                value = H5Datatype.allocateArray(tid, (int) lsize);
+                if (value == null) {
+                    log.debug("readAttribute(): Attribute[{}] allocateArray returned null", nameA);
+                    log.trace("readAttribute(): Attribute[{}] finish", nameA);
+                    return attr;
+                }
+
+                if (tclass == HDF5Constants.H5T_ARRAY) {
+                    long tmptid1 = -1, tmptid2 = -1;
                     try {
-                        log.trace("getAttribute(): Attribute[{}] H5AreadVL", i);
-                        H5.H5AreadComplex(aid, tid, strs);
+                        log.trace("readAttribute(): Attribute[{}] H5Aread ARRAY tid={}", nameA, tid);
+                        H5.H5Aread(aid, tid, value);
                     }
                     catch (Exception ex) {
-                        log.debug("getAttribute(): Attribute[{}] H5AreadVL failure: ", i, ex);
+                        log.debug("readAttribute(): Attribute[{}] H5Aread failure: ", nameA, ex);
                         ex.printStackTrace();
                     }
-                    value = strs;
-                }
-                else {
-                    value = H5Datatype.allocateArray(tid, (int) lsize);
-                    if (value == null) {
-                        log.debug("getAttribute(): Attribute[{}] allocateArray returned null", i);
-                        log.trace("getAttribute(): Attribute[{}] continue", i);
-                        continue;
-                    }
-
-                    if (tclass == HDF5Constants.H5T_ARRAY) {
-                        long tmptid1 = -1, tmptid2 = -1;
+                    finally {
                         try {
-                            log.trace("getAttribute(): Attribute[{}] H5Aread ARRAY tid={}", i, tid);
-                            H5.H5Aread(aid, tid, value);
+                            H5.H5Tclose(tmptid1);
                         }
                         catch (Exception ex) {
-                            log.debug("getAttribute(): Attribute[{}] H5Aread failure: ", i, ex);
-                            ex.printStackTrace();
+                            log.debug("readAttribute(): Attribute[{}] H5Tclose(tmptid {}) failure: ", nameA, tmptid1, ex);
                         }
-                        finally {
-                            try {
-                                H5.H5Tclose(tmptid1);
-                            }
-                            catch (Exception ex) {
-                                log.debug("getAttribute(): Attribute[{}] H5Tclose(tmptid {}) failure: ", i, tmptid1, ex);
-                            }
-                            try {
-                                H5.H5Tclose(tmptid2);
-                            }
-                            catch (Exception ex) {
-                                log.debug("getAttribute(): Attribute[{}] H5Tclose(tmptid {}) failure: ", i, tmptid2, ex);
-                            }
+                        try {
+                            H5.H5Tclose(tmptid2);
+                        }
+                        catch (Exception ex) {
+                            log.debug("readAttribute(): Attribute[{}] H5Tclose(tmptid {}) failure: ", nameA, tmptid2, ex);
                         }
-                    }
-                    else {
-                        log.trace("getAttribute(): Attribute[{}] H5Aread", i);
-                        H5.H5Aread(aid, tid, value);
-                    }
-
-                    if (tclass == HDF5Constants.H5T_STRING) {
-                        log.trace("getAttribute(): Attribute[{}] byteToString", i);
-                        value = Dataset.byteToString((byte[]) value, (int)H5.H5Tget_size(tid));
-                    }
-                    else if (tclass == HDF5Constants.H5T_REFERENCE) {
-                        log.trace("getAttribute(): Attribute[{}] byteToLong", i);
-                        value = HDFNativeData.byteToLong((byte[]) value);
                     }
                 }
+                else {
+                    log.trace("readAttribute(): Attribute[{}] H5Aread", nameA);
+                    H5.H5Aread(aid, tid, value);
+                }
 
-                attr.setValue(value);
+                if (tclass == HDF5Constants.H5T_STRING) {
+                    log.trace("readAttribute(): Attribute[{}] byteToString", nameA);
+                    value = Dataset.byteToString((byte[]) value, (int)H5.H5Tget_size(tid));
+                }
+                else if (tclass == HDF5Constants.H5T_REFERENCE) {
+                    log.trace("readAttribute(): Attribute[{}] byteToLong", nameA);
+                    value = HDFNativeData.byteToLong((byte[]) value);
+                }
+            }
 
+            attr.setValue(value);
+        }
+        finally {
+            try {
+                H5.H5Tclose(tid);
             }
-            catch (HDF5Exception ex) {
-                log.debug("getAttribute(): Attribute[{}] inspection failure: ", i, ex);
+            catch (Exception ex) {
+                log.debug("readAttribute(): H5Tclose(tid {}) failure: ", tid, ex);
             }
-            finally {
-                try {
-                    H5.H5Tclose(tid);
-                }
-                catch (Exception ex) {
-                    log.debug("getAttribute(): Attribute[{}] H5Tclose(tid {}) failure: ", i, tid, ex);
-                }
-                try {
-                    H5.H5Sclose(sid);
-                }
-                catch (Exception ex) {
-                    log.debug("getAttribute(): Attribute[{}] H5Sclose(sid {}) failure: ", i, sid, ex);
-                }
-                try {
-                    H5.H5Aclose(aid);
-                }
-                catch (Exception ex) {
-                    log.debug("getAttribute(): Attribute[{}] H5Aclose(aid {}) failure: ", i, aid, ex);
-                }
+            try {
+                H5.H5Sclose(sid);
             }
-        } // for (int i=0; i<obj_info.num_attrs; i++)
+            catch (Exception ex) {
+                log.debug("readAttribute(): H5Sclose(sid {}) failure: ", sid, ex);
+            }
+        }
 
-        log.trace("getAttribute(): finish");
-        return attributeList;
+        log.trace("readAttribute(): finish");
+        return attr;
     }
 
     /**
@@ -756,29 +873,14 @@ public class H5File extends FileFormat {
         HObject srcRoot = srcFile.getRootObject();
         HObject newRoot = dstFile.getRootObject();
 
-        Iterator<HObject> srcIt = getMembersBreadthFirst(srcRoot).iterator();
-        Iterator<HObject> newIt = getMembersBreadthFirst(newRoot).iterator();
-
-        long did = -1;
-        // build one-to-one table of between objects in
-        // the source file and new file
-        long tid = -1;
-        HObject srcObj, newObj;
-        Hashtable<String, long[]> oidMap = new Hashtable<String, long[]>();
+        // Find the scalar datasets in the destination file which hold object references; only these are read and
+        // updated, and only the objects they refer to are mapped below
         List<ScalarDS> refDatasets = new Vector<ScalarDS>();
-        while (newIt.hasNext() && srcIt.hasNext()) {
-            srcObj = srcIt.next();
-            newObj = newIt.next();
-            oidMap.put(String.valueOf((srcObj.getOID())[0]), newObj.getOID());
-            did = -1;
-            tid = -1;
-
-            // for Scalar DataSets in destination, if there is an object
-            // reference in the dataset, add it to the refDatasets list for
-            // later updating.
+        for (HObject newObj : getMembersBreadthFirst(newRoot)) {
             if (newObj instanceof ScalarDS) {
                 ScalarDS sd = (ScalarDS) newObj;
-                did = sd.open();
+                long did = sd.open();
+                long tid = -1;
                 if (did >= 0) {
                     try {
                         tid = H5.H5Dget_type(did);
@@ -801,85 +903,148 @@ public class H5File extends FileFormat {
                 sd.close(did);
             } // if (newObj instanceof ScalarDS)
         }
+        int n = refDatasets.size();
+        if (n == 0) {
+            log.trace("updateReferenceDataset(): no reference datasets");
+            log.trace("updateReferenceDataset(): finish");
+            return;
+        }
+
+        // Read the references, and note which objects are referred to
+        List<long[]> refsList = new Vector<long[]>(n);
+        Set<Long> referencedOIDs = new HashSet<Long>();
+        for (int i = 0; i < n; i++) {
+            long[] refs = readReferences(refDatasets.get(i));
+            refsList.add(refs);
+            if (refs != null) {
+                for (long ref : refs) {
+                    referencedOIDs.add(ref);
+                }
+            }
+        }
+
+        // Map each referenced object in the source file to the object in the same place in the new file
+        Map<Long, Long> oidMap = new HashMap<Long, Long>();
+        Iterator<HObject> srcIt = getMembersBreadthFirst(srcRoot).iterator();
+        Iterator<HObject> newIt = getMembersBreadthFirst(newRoot).iterator();
+        while (newIt.hasNext() && srcIt.hasNext()) {
+            long srcOID = srcIt.next().getOID()[0];
+            HObject newObj = newIt.next();
+            if (referencedOIDs.contains(srcOID)) {
+                oidMap.put(srcOID, newObj.getOID()[0]);
+            }
+        }
 
         // Update the references in the scalar datasets in the dest file.
-        H5ScalarDS d = null;
-        long sid = -1;
-        int size = 0;
-        int rank = 0;
-        int n = refDatasets.size();
         for (int i = 0; i < n; i++) {
             log.trace("updateReferenceDataset(): Update the references in the scalar datasets in the dest file");
-            d = (H5ScalarDS) refDatasets.get(i);
-            byte[] buf = null;
-            long[] refs = null;
+            long[] refs = refsList.get(i);
+            if (refs == null) {
+                continue;
+            }
+            for (int j = 0; j < refs.length; j++) {
+                Long theOID = oidMap.get(refs[j]);
+                if (theOID != null) {
+                    refs[j] = theOID;
+                }
+            }
+            writeReferences(refDatasets.get(i), refs);
+            refsList.set(i, null);
+        } // for (int i=0; i<n; i++)
 
-            try {
-                did = d.open();
-                if (did >= 0) {
-                    tid = H5.H5Dget_type(did);
-                    sid = H5.H5Dget_space(did);
-                    rank = H5.H5Sget_simple_extent_ndims(sid);
-                    size = 1;
-                    if (rank > 0) {
-                        long[] dims = new long[rank];
-                        H5.H5Sget_simple_extent_dims(sid, dims, null);
-                        log.trace("updateReferenceDataset(): rank={}, dims={}", rank, dims);
-                        for (int j = 0; j < rank; j++) {
-                            size *= (int) dims[j];
-                        }
-                        dims = null;
-                    }
+        log.trace("updateReferenceDataset(): finish");
+    }
 
-                    buf = new byte[size * 8];
-                    H5.H5Dread(did, tid, HDF5Constants.H5S_ALL, HDF5Constants.H5S_ALL, HDF5Constants.H5P_DEFAULT, buf);
+    /**
+     * Reads all the object references in a reference dataset; returns null if they can't be read.
+     */
+    private static long[] readReferences(ScalarDS d) {
+        long did = -1, tid = -1, sid = -1;
+        long[] refs = null;
 
-                    // update the ref values
-                    refs = HDFNativeData.byteToLong(buf);
-                    size = refs.length;
-                    for (int j = 0; j < size; j++) {
-                        long[] theOID = oidMap.get(String.valueOf(refs[j]));
-                        if (theOID != null) {
-                            refs[j] = theOID[0];
-                        }
+        try {
+            did = d.open();
+            if (did >= 0) {
+                tid = H5.H5Dget_type(did);
+                sid = H5.H5Dget_space(did);
+                int rank = H5.H5Sget_simple_extent_ndims(sid);
+                int size = 1;
+                if (rank > 0) {
+                    long[] dims = new long[rank];
+                    H5.H5Sget_simple_extent_dims(sid, dims, null);
+                    log.trace("readReferences(): rank={}, dims={}", rank, dims);
+                    for (int j = 0; j < rank; j++) {
+                        size *= (int) dims[j];
                     }
-
-                    // write back to file
-                    H5.H5Dwrite(did, tid, HDF5Constants.H5S_ALL, HDF5Constants.H5S_ALL, HDF5Constants.H5P_DEFAULT, refs);
-                }
-                else {
-                    log.debug("updateReferenceDataset(): dest file dataset failed to open");
                 }
+
+                byte[] buf = new byte[size * 8];
+                H5.H5Dread(did, tid, HDF5Constants.H5S_ALL, HDF5Constants.H5S_ALL, HDF5Constants.H5P_DEFAULT, buf);
+                refs = HDFNativeData.byteToLong(buf);
+            }
+            else {
+                log.debug("readReferences(): dest file dataset failed to open");
+            }
+        }
+        catch (Exception ex) {
+            log.debug("readReferences(): {} failure: ", d.getFullName(), ex);
+        }
+        finally {
+            try {
+                H5.H5Tclose(tid);
             }
             catch (Exception ex) {
-                log.debug("updateReferenceDataset(): Reference[{}] failure: ", i, ex);
-                log.trace("updateReferenceDataset(): Reference[{}] continue", i);
-                continue;
+                log.debug("readReferences(): H5Tclose(tid {}) failure: ", tid, ex);
             }
-            finally {
-                try {
-                    H5.H5Tclose(tid);
-                }
-                catch (Exception ex) {
-                    log.debug("updateReferenceDataset(): H5ScalarDS reference[{}] H5Tclose(tid {}) failure: ", i, tid, ex);
-                }
-                try {
-                    H5.H5Sclose(sid);
-                }
-                catch (Exception ex) {
-                    log.debug("updateReferenceDataset(): H5ScalarDS reference[{}] H5Sclose(sid {}) failure: ", i, sid, ex);
-                }
-                try {
-                    H5.H5Dclose(did);
-                }
-                catch (Exception ex) {
-                    log.debug("updateReferenceDataset(): H5ScalarDS reference[{}] H5Dclose(did {}) failure: ", i, did, ex);
-                }
+            try {
+                H5.H5Sclose(sid);
+            }
+            catch (Exception ex) {
+                log.debug("readReferences(): H5Sclose(sid {}) failure: ", sid, ex);
+            }
+            try {
+                H5.H5Dclose(did);
+            }
+            catch (Exception ex) {
+                log.debug("readReferences(): H5Dclose(did {}) failure: ", did, ex);
             }
+        }
+        return refs;
+    }
 
-            refs = null;
-            buf = null;
-        } // for (int i=0; i<n; i++)
+    /**
+     * Writes all the object references of a reference dataset.
+     */
+    private static void writeReferences(ScalarDS d, long[] refs) {
+        long did = -1, tid = -1;
+
+        try {
+            did = d.open();
+            if (did >= 0) {
+                tid = H5.H5Dget_type(did);
+                H5.H5Dwrite(did, tid, HDF5Constants.H5S_ALL, HDF5Constants.H5S_ALL, HDF5Constants.H5P_DEFAULT, refs);
+            }
+            else {
+                log.debug("writeReferences(): dest file dataset failed to open");
+            }
+        }
+        catch (Exception ex) {
+            log.debug("writeReferences(): {} failure: ", d.getFullName(), ex);
+        }
+        finally {
+            try {
+                H5.H5Tclose(tid);
+            }
+            catch (Exception ex) {
+                log.debug("writeReferences(): H5Tclose(tid {}) failure: ", tid, ex);
+            }
+            try {
+                H5.H5Dclose(did);
+            }
+            catch (Exception ex) {
+                log.debug("writeReferences(): H5Dclose(did {}) failure: ", did, ex);
+            }
+        }
     }
 
     /***************************************************************************
@@ -940,6 +1105,45 @@ public class H5File extends FileFormat {
         return isH5;
     }
 
+    /** The format signature at the start of the HDF5 superblock. */
+    private static final byte[] HDF5_SIGNATURE = { (byte) 0x89, 'H', 'D', 'F', '\r', '\n', 0x1a, '\n' };
+
+    /**
+     * Checks for the HDF5 format signature.
+     * <p>
+     * The superblock, which starts with the signature, is at offset 0 or, after a user block, at offset 512, 1024,
+     * 2048 and so on. Only the 8 signature bytes at each of those offsets are read.
+     *
+     * @see hdf.object.FileFormat#checkSignature(java.nio.channels.FileChannel)
+     */
+    @Override
+    public int checkSignature(FileChannel channel) throws IOException {
+        long size = channel.size();
+        ByteBuffer buf = ByteBuffer.allocate(HDF5_SIGNATURE.length);
+        for (long offset = 0; offset + HDF5_SIGNATURE.length <= size; offset = (offset == 0) ? 512 : 2 * offset) {
+            buf.clear();
+            while (buf.hasRemaining()) {
+                if (channel.read(buf, offset + buf.position()) < 0) {
+                    return SIGNATURE_NO_MATCH;
+                }
+            }
+
+            boolean isMatch = true;
+            for (int i = 0; i < HDF5_SIGNATURE.length; i++) {
+                if (buf.get(i) != HDF5_SIGNATURE[i]) {
+                    isMatch = false;
+                    break;
+                }
+            }
+            if (isMatch) {
+                log.trace("checkSignature(): superblock at offset {}", offset);
+                return SIGNATURE_MATCH;
+            }
+        }
+
+        return SIGNATURE_NO_MATCH;
+    }
+
     /**
      * Creates an HDF5 file with the specified name and returns a new H5File instance associated with the file.
      *
@@ -1124,6 +1328,24 @@ public class H5File extends FileFormat {
             }
         }
 
+        // release the member layouts of compound datasets not cleared above (eg, those not in the tree), then close
+        // any layouts left behind by datasets which have been garbage collected
+        List<H5CompoundDS> layouts;
+        synchronized (compoundLayouts) {
+            layouts = new Vector<H5CompoundDS>(compoundLayouts);
+        }
+        for (H5CompoundDS dset : layouts) {
+            dset.releaseFlatMembers();
+        }
+        List<H5CompoundDS.FlatMember[]> orphanedLayouts;
+        synchronized (compoundLayouts) {
+            orphanedLayouts = new Vector<H5CompoundDS.FlatMember[]>(compoundLayoutMembers);
+            compoundLayoutMembers.clear();
+        }
+        for (H5CompoundDS.FlatMember[] members : orphanedLayouts) {
+            H5CompoundDS.closeFlatMembers(members);
+        }
+
         // Close all open objects associated with this file.
         try {
             int type = -1;
@@ -2458,6 +2680,7 @@ public class H5File extends FileFormat {
             }
             catch (Exception ex) {
                 log.debug("copyDataset(): {} failure: ", dname, ex);
+                throw ex;
             }
             finally {
                 try {
@@ -2496,6 +2719,277 @@ public class H5File extends FileFormat {
         return dataset;
     }
 
+    /**
+     * Receives progress reports from {@link #copyDatasetChunked(Dataset, Group, String, long[], int, CopyProgressListener)}.
+     */
+    public interface CopyProgressListener {
+        /**
+         * Called after each block of rows has been copied.
+         *
+         * @param datasetName
+         *            the full name of the destination dataset
+         * @param rowsCopied
+         *            the number of rows (elements along the first dimension) copied so far
+         * @param totalRows
+         *            the total number of rows in the dataset
+         */
+        void copyProgress(String datasetName, long rowsCopied, long totalRows);
+    }
+
+    /** Approximate number of bytes read and written at a time by copyDatasetChunked(). */
+    private static final long COPY_BLOCK_BYTES = 8 * 1024 * 1024;
+
+    /**
+     * Copies a dataset by streaming its raw data block by block, optionally changing its chunk layout and
+     * compression.
+     * <p>
+     * Unlike {@link #copy(HObject, Group, String)}, which copies the dataset in one H5Ocopy call, the data is read
+     * and written in blocks of whole destination chunks along the first dimension (about 8 MB at a time), so memory
+     * use is bounded and progress can be reported. The data is copied in the file's datatype, without conversion.
+     * Datasets holding variable-length data or references, and datasets which aren't simple chunked or contiguous
+     * arrays, are copied with H5Ocopy instead, without re-chunking or progress reports.
+     * <p>
+     * The attributes of the dataset are copied too. Object references in other datasets are not updated; see
+     * {@link #updateReferenceDataset(H5File, H5File)}.
+     *
+     * @param srcDataset
+     *            The dataset to copy.
+     * @param dstGroup
+     *            The group to copy the dataset into.
+     * @param dstName
+     *            The name of the new dataset; if null, the name of the source dataset is used.
+     * @param chunkDims
+     *            The chunk dimensions of the new dataset; null to keep the layout of the source dataset (a
+     *            contiguous dataset which is to be compressed gets chunks of about 1 MB along the first dimension).
+     *            Chunk dimensions larger than a fixed dimension of the dataset are reduced to fit.
+     * @param deflateLevel
+     *            The gzip (deflate) level (0-9) of the new dataset, used with the shuffle filter in place of the
+     *            source dataset's filters; negative to keep the source dataset's filters.
+     * @param listener
+     *            Receives progress reports; may be null.
+     *
+     * @return The new dataset.
+     *
+     * @throws Exception
+     *             If the dataset can't be copied.
+     */
+    public Dataset copyDatasetChunked(Dataset srcDataset, Group dstGroup, String dstName, long[] chunkDims,
+            int deflateLevel, CopyProgressListener listener) throws Exception {
+        log.trace("copyDatasetChunked(): start");
+        Dataset dataset = null;
+        long srcdid = -1, dstgid = -1, dstdid = -1;
+        long tid = -1, sid = -1, dstsid = -1, mspace = -1, dcpl = -1;
+        String path = null;
+        List<Attribute> attributeList = null;
+
+        if (dstGroup.isRoot()) {
+            path = HObject.separator;
+        }
+        else {
+            path = dstGroup.getPath() + dstGroup.getName() + HObject.separator;
+        }
+        if ((dstName == null) || dstName.equals(HObject.separator) || (dstName.length() < 1)) {
+            dstName = srcDataset.getName();
+        }
+        String dname = path + dstName;
+
+        boolean bStream = true;
+        try {
+            srcdid = srcDataset.open();
+            if (srcdid < 0) {
+                throw new HDF5Exception("Unable to open " + srcDataset.getFullName());
+            }
+            tid = H5.H5Dget_type(srcdid);
+            sid = H5.H5Dget_space(srcdid);
+            dcpl = H5.H5Dget_create_plist(srcdid);
+            int rank = H5.H5Sget_simple_extent_ndims(sid);
+            int layout = H5.H5Pget_layout(dcpl);
+            bStream = (rank > 0) && !hasVariableLengthData(tid) && (H5.H5Pget_external_count(dcpl) == 0)
+                    && ((layout == HDF5Constants.H5D_CHUNKED) || (layout == HDF5Constants.H5D_CONTIGUOUS));
+            if (!bStream) {
+                log.debug("copyDatasetChunked(): {} can't be streamed; using H5Ocopy", dname);
+            }
+            else {
+                long[] dims = new long[rank];
+                long[] maxDims = new long[rank];
+                H5.H5Sget_simple_extent_dims(sid, dims, maxDims);
+                long rowBytes = H5.H5Tget_size(tid);
+                for (int i = 1; i < rank; i++) {
+                    rowBytes *= dims[i];
+                }
+                rowBytes = Math.max(rowBytes, 1);
+
+                // Destination layout and filters
+                if ((chunkDims == null) && (deflateLevel >= 0) && (layout != HDF5Constants.H5D_CHUNKED)) {
+                    chunkDims = dims.clone();
+                    chunkDims[0] = Math.max(1, (1024 * 1024) / rowBytes);
+                }
+                if (chunkDims != null) {
+                    long[] chunk = new long[rank];
+                    for (int i = 0; i < rank; i++) {
+                        chunk[i] = Math.max(1, chunkDims[i]);
+                        if ((maxDims[i] != HDF5Constants.H5S_UNLIMITED) && (maxDims[i] > 0)) {
+                            chunk[i] = Math.min(chunk[i], maxDims[i]);
+                        }
+                    }
+                    H5.H5Pset_chunk(dcpl, rank, chunk);
+                }
+                if (deflateLevel >= 0) {
+                    H5.H5Premove_filter(dcpl, HDF5Constants.H5Z_FILTER_ALL);
+                    H5.H5Pset_shuffle(dcpl);
+                    H5.H5Pset_deflate(dcpl, deflateLevel);
+                }
+                long chunkRows = 1;
+                if (H5.H5Pget_layout(dcpl) == HDF5Constants.H5D_CHUNKED) {
+                    long[] chunk = new long[rank];
+                    H5.H5Pget_chunk(dcpl, rank, chunk);
+                    chunkRows = chunk[0];
+                }
+
+                attributeList = getAttribute(srcdid);
+                dstgid = dstGroup.open();
+                dstdid = H5.H5Dcreate(dstgid, dstName, tid, sid, HDF5Constants.H5P_DEFAULT, dcpl, HDF5Constants.H5P_DEFAULT);
+                dstsid = H5.H5Dget_space(dstdid);
+
+                // Copy whole destination chunks at a time, so each chunk is filtered and written once
+                // (a block is always at least one chunk, even if a chunk is larger than COPY_BLOCK_BYTES)
+                long blockRows = Math.max(1, COPY_BLOCK_BYTES / rowBytes);
+                blockRows = Math.max(chunkRows, blockRows - blockRows % chunkRows);
+                if (blockRows * rowBytes > Integer.MAX_VALUE) {
+                    throw new HDF5Exception("Rows of " + srcDataset.getFullName() + " are too large to copy");
+                }
+                byte[] buf = new byte[(int) (blockRows * rowBytes)];
+                long[] start = new long[rank];
+                long[] count = dims.clone();
+                for (long row = 0; row < dims[0]; row += blockRows) {
+                    start[0] = row;
+                    count[0] = Math.min(blockRows, dims[0] - row);
+                    mspace = H5.H5Screate_simple(rank, count, null);
+                    H5.H5Sselect_hyperslab(sid, HDF5Constants.H5S_SELECT_SET, start, null, count, null);
+                    H5.H5Sselect_hyperslab(dstsid, HDF5Constants.H5S_SELECT_SET, start, null, count, null);
+                    H5.H5Dread(srcdid, tid, mspace, sid, HDF5Constants.H5P_DEFAULT, buf);
+                    H5.H5Dwrite(dstdid, tid, mspace, dstsid, HDF5Constants.H5P_DEFAULT, buf);
+                    H5.H5Sclose(mspace);
+                    mspace = -1;
+                    if (listener != null) {
+                        listener.copyProgress(dname, row + count[0], dims[0]);
+                    }
+                }
+            }
+        }
+        catch (Exception ex) {
+            // Don't leave a partly written dataset in the destination file
+            if (dstdid >= 0) {
+                try {
+                    H5.H5Ldelete(dstgid, dstName, HDF5Constants.H5P_DEFAULT);
+                }
+                catch (Exception ex2) {
+                    log.debug("copyDatasetChunked(): {} H5Ldelete failure: ", dname, ex2);
+                }
+            }
+            throw ex;
+        }
+        finally {
+            try {
+                H5.H5Sclose(mspace);
+            }
+            catch (Exception ex) {
+                log.debug("copyDatasetChunked(): {} H5Sclose(mspace {}) failure: ", dname, mspace, ex);
+            }
+            try {
+                H5.H5Sclose(dstsid);
+            }
+            catch (Exception ex) {
+                log.debug("copyDatasetChunked(): {} H5Sclose(dstsid {}) failure: ", dname, dstsid, ex);
+            }
+            try {
+                H5.H5Dclose(dstdid);
+            }
+            catch (Exception ex) {
+                log.debug("copyDatasetChunked(): {} H5Dclose(dstdid {}) failure: ", dname, dstdid, ex);
+            }
+            try {
+                H5.H5Pclose(dcpl);
+            }
+            catch (Exception ex) {
+                log.debug("copyDatasetChunked(): {} H5Pclose(dcpl {}) failure: ", dname, dcpl, ex);
+            }
+            try {
+                H5.H5Sclose(sid);
+            }
+            catch (Exception ex) {
+                log.debug("copyDatasetChunked(): {} H5Sclose(sid {}) failure: ", dname, sid, ex);
+            }
+            try {
+                H5.H5Tclose(tid);
+            }
+            catch (Exception ex) {
+                log.debug("copyDatasetChunked(): {} H5Tclose(tid {}) failure: ", dname, tid, ex);
+            }
+            if (dstgid >= 0) {
+                dstGroup.close(dstgid);
+            }
+            srcDataset.close(srcdid);
+        }
+
+        if (!bStream) {
+            dataset = (Dataset) copyDataset(srcDataset, (H5Group) dstGroup, dstName);
+            log.trace("copyDatasetChunked(): finish");
+            return dataset;
+        }
+
+        if (srcDataset instanceof H5ScalarDS) {
+            dataset = new H5ScalarDS(dstGroup.getFileFormat(), dstName, path);
+        }
+        else {
+            dataset = new H5CompoundDS(dstGroup.getFileFormat(), dstName, path);
+        }
+        dstGroup.addToMemberList(dataset);
+        for (Attribute attr : attributeList) {
+            writeAttribute(dataset, attr, false);
+        }
+
+        log.trace("copyDatasetChunked(): finish");
+        return dataset;
+    }
+
+    /**
+     * Checks if a datatype holds variable-length data or references, which can't be copied as raw bytes.
+     */
+    private static boolean hasVariableLengthData(long tid) throws HDF5Exception {
+        int tclass = H5.H5Tget_class(tid);
+        if ((tclass == HDF5Constants.H5T_VLEN) || (tclass == HDF5Constants.H5T_REFERENCE)) {
+            return true;
+        }
+        if (tclass == HDF5Constants.H5T_STRING) {
+            return H5.H5Tis_variable_str(tid);
+        }
+        if (tclass == HDF5Constants.H5T_ARRAY) {
+            long btid = H5.H5Tget_super(tid);
+            try {
+                return hasVariableLengthData(btid);
+            }
+            finally {
+                H5.H5Tclose(btid);
+            }
+        }
+        if (tclass == HDF5Constants.H5T_COMPOUND) {
+            int n = H5.H5Tget_nmembers(tid);
+            for (int i = 0; i < n; i++) {
+                long mtid = H5.H5Tget_member_type(tid, i);
+                try {
+                    if (hasVariableLengthData(mtid)) {
+                        return true;
+                    }
+                }
+                finally {
+                    H5.H5Tclose(mtid);
+                }
+            }
+        }
+        return false;
+    }
+
     /**
      * Constructs a dataset for specified dataset identifier.
      *
@@ -2932,6 +3426,70 @@ public class H5File extends FileFormat {
                 HDF5Constants.H5P_DEFAULT);
     }
 
+    /**
+     * Bounds the memory held by the data buffers of this file's datasets.
+     * <p>
+     * Once the buffers loaded by Dataset.getData() add up to more than maxBytes, the least recently used ones are
+     * dropped and read again from the file on their next getData(). By default there is no limit.
+     *
+     * @param maxBytes
+     *            the maximum number of bytes of dataset buffers to keep in memory; a negative value removes the
+     *            limit (and drops the cache's statistics).
+     *
+     * @see hdf.object.DataCache
+     */
+    public void setDataCacheSize(long maxBytes) {
+        if (maxBytes < 0) {
+            dataCache = null;
+        }
+        else if (dataCache == null) {
+            dataCache = new DataCache(maxBytes);
+        }
+        else {
+            dataCache.setMaxBytes(maxBytes);
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see hdf.object.FileFormat#getDataCache()
+     */
+    @Override
+    public DataCache getDataCache() {
+        return dataCache;
+    }
+
+    /**
+     * Records a compound dataset whose member layout holds open datatypes, to be released by close().
+     *
+     * @param dset
+     *            the dataset
+     * @param members
+     *            its layout
+     */
+    void addCompoundLayout(H5CompoundDS dset, H5CompoundDS.FlatMember[] members) {
+        synchronized (compoundLayouts) {
+            compoundLayouts.add(dset);
+            compoundLayoutMembers.add(members);
+        }
+    }
+
+    /**
+     * Forgets a compound dataset whose member layout has been released.
+     *
+     * @param dset
+     *            the dataset
+     * @param members
+     *            its layout
+     */
+    void removeCompoundLayout(H5CompoundDS dset, H5CompoundDS.FlatMember[] members) {
+        synchronized (compoundLayouts) {
+            compoundLayouts.remove(dset);
+            compoundLayoutMembers.remove(members);
+        }
+    }
+
     public static int getIndexTypeValue(String strtype) {
         if (strtype.compareTo("H5_INDEX_NAME") == 0)
             return HDF5Constants.H5_INDEX_NAME;
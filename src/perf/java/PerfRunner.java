@@ -0,0 +1,181 @@
+/*
+Copyright 2017 Erigo Technologies LLC
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import javax.json.Json;
+import javax.json.JsonWriter;
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+
+import com.sun.management.GarbageCollectionNotificationInfo;
+
+/**
+ * Run one conversion for PerfSuite, in a JVM of its own, and save its measurements as a JSON object.
+ *
+ *     java PerfRunner <result file> <HDF5toCT arguments...>
+ *
+ * The conversion runs in-process (new HDF5toCT(args)), so its peak heap, peak RSS and allocation are measured
+ * without the generator's or the suite's.  Allocation is counted on the converting (main) thread, which does all
+ * of the read, decode, sort and write work when there is a single writer.  Peak RSS is read from /proc/self/status
+ * and is -1 where that isn't available.
+ *
+ * Peak heap is the highest total heap usage seen at any one moment (see HeapPeak); the sum of each memory pool's
+ * own peak would overstate it, since the pools peak at different times.
+ */
+class PerfRunner {
+
+    public static void main(String args[]) throws Exception {
+        String resultFileName = args[0];
+        String[] convertArgs = new String[args.length - 1];
+        System.arraycopy(args, 1, convertArgs, 0, convertArgs.length);
+
+        com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        long startAllocated = threadBean.getThreadAllocatedBytes(threadId);
+        HeapPeak heapPeak = new HeapPeak();
+        heapPeak.start();
+        long startTime = System.nanoTime();
+        new HDF5toCT(convertArgs);
+        double seconds = (System.nanoTime() - startTime) / 1.0e9;
+        long allocatedBytes = threadBean.getThreadAllocatedBytes(threadId) - startAllocated;
+        long peakHeapBytes = heapPeak.stop();
+
+        JsonWriter jsonWriter = Json.createWriter(new FileWriter(resultFileName));
+        jsonWriter.writeObject(Json.createObjectBuilder()
+                .add("seconds", seconds)
+                .add("peakHeapBytes", peakHeapBytes)
+                .add("peakRssBytes", getPeakRss())
+                .add("allocatedBytes", allocatedBytes)
+                .build());
+        jsonWriter.close();
+    }
+
+    /**
+     * Tracks the peak total heap usage while a conversion runs.  The heap is sampled every SAMPLE_MSEC, and the
+     * usage just before each garbage collection (when it is highest) is taken from the collectors' notifications,
+     * so peaks between samples aren't missed.
+     */
+    private static class HeapPeak implements NotificationListener, Runnable {
+        private static final long SAMPLE_MSEC = 5;
+
+        private final MemoryMXBean memoryBean = ManagementFactory.getMemoryMXBean();
+        private final Set<String> heapPools = new HashSet<String>();
+        private long peakBytes = 0;
+        private volatile boolean bStop = false;
+        private Thread sampler;
+
+        public void start() {
+            for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+                if (pool.getType() == MemoryType.HEAP) {
+                    heapPools.add(pool.getName());
+                }
+            }
+            for (GarbageCollectorMXBean gcBean : ManagementFactory.getGarbageCollectorMXBeans()) {
+                ((NotificationEmitter) gcBean).addNotificationListener(this, null, null);
+            }
+            update(memoryBean.getHeapMemoryUsage().getUsed());
+            sampler = new Thread(this, "HeapPeak");
+            sampler.setDaemon(true);
+            sampler.start();
+        }
+
+        /**
+         * Stop tracking, and return the peak heap usage in bytes.
+         */
+        public long stop() throws Exception {
+            bStop = true;
+            sampler.join();
+            for (GarbageCollectorMXBean gcBean : ManagementFactory.getGarbageCollectorMXBeans()) {
+                ((NotificationEmitter) gcBean).removeNotificationListener(this);
+            }
+            update(memoryBean.getHeapMemoryUsage().getUsed());
+            return getPeak();
+        }
+
+        public void run() {
+            while (!bStop) {
+                update(memoryBean.getHeapMemoryUsage().getUsed());
+                try {
+                    Thread.sleep(SAMPLE_MSEC);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }
+
+        public void handleNotification(Notification notification, Object handback) {
+            if (!notification.getType().equals(GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION)) {
+                return;
+            }
+            GarbageCollectionNotificationInfo info = GarbageCollectionNotificationInfo.from((CompositeData) notification.getUserData());
+            // The pools' usage before the collection is a snapshot of one moment, so it can be summed
+            long usedBytes = 0;
+            for (Map.Entry<String, MemoryUsage> entry : info.getGcInfo().getMemoryUsageBeforeGc().entrySet()) {
+                if (heapPools.contains(entry.getKey())) {
+                    usedBytes += entry.getValue().getUsed();
+                }
+            }
+            update(usedBytes);
+        }
+
+        private synchronized void update(long usedBytes) {
+            peakBytes = Math.max(peakBytes, usedBytes);
+        }
+
+        private synchronized long getPeak() {
+            return peakBytes;
+        }
+    }
+
+    /**
+     * @return the peak resident set size of this process in bytes (VmHWM in /proc/self/status), or -1 if unknown
+     */
+    private static long getPeakRss() {
+        try {
+            BufferedReader reader = new BufferedReader(new FileReader("/proc/self/status"));
+            try {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (line.startsWith("VmHWM:")) {
+                        // eg, "VmHWM:	  123456 kB"
+                        String[] fields = line.substring(6).trim().split("\\s+");
+                        return Long.parseLong(fields[0]) * 1024;
+                    }
+                }
+            } finally {
+                reader.close();
+            }
+        } catch (Exception e) {
+            // not Linux
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,328 @@
+/*
+Copyright 2017 Erigo Technologies LLC
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import javax.json.Json;
+import javax.json.JsonNumber;
+import javax.json.JsonObject;
+import javax.json.JsonObjectBuilder;
+import javax.json.JsonReader;
+import javax.json.JsonWriter;
+import javax.json.stream.JsonGenerator;
+
+/**
+ * End-to-end performance regression suite (run by the "perfTest" Gradle task).
+ *
+ * A fixed matrix of cases (small/large files, few/many channels, uncompressed/gzip) is generated with
+ * WorkloadGenerator, with a fixed seed, and cached in the work folder.  Each case is converted to CT numRuns times,
+ * each run in a fresh JVM (see PerfRunner), and the run with the median time is kept.  For each case we record the
+ * conversion time, throughput (channel values per second), peak heap, peak RSS and allocation (total and per
+ * second).
+ *
+ * The results are compared with the baseline file: a case fails if its throughput is more than tolerancePercent
+ * below the baseline's; a peak heap or allocation more than tolerancePercent above the baseline's is reported as a
+ * warning.  A case missing from the baseline is reported as a warning, and the summary lists every such case, so an
+ * empty or stale baseline doesn't pass unnoticed; record one with updateBaseline.  The results are always written to
+ * "results.json" in the work folder; with updateBaseline, they also replace the baseline.  Baselines are only
+ * comparable on the machine they were recorded on.
+ *
+ * System properties (set from Gradle project properties by the perfTest task):
+ *     perf.baseline      baseline JSON file
+ *     perf.workDir       folder for the generated files, the conversion output and the results
+ *     perf.tolerance     allowed slowdown in percent; default is the baseline's tolerancePercent
+ *     perf.runs          runs per case; default 3
+ *     perf.heap          maximum heap of the conversion JVMs; default 2g
+ *     perf.update        if "true", write the results to the baseline file
+ */
+class PerfSuite {
+    private static final double DEFAULT_TOLERANCE_PERCENT = 10.0;
+
+    /**
+     * One case of the matrix.
+     */
+    private static class PerfCase {
+        final String name;
+        final int numDatasets;
+        final int numChannels;      // per Dataset
+        final long numRows;         // per Dataset
+        final int deflateLevel;
+
+        PerfCase(String nameI, int numDatasetsI, int numChannelsI, long numRowsI, int deflateLevelI) {
+            name = nameI;
+            numDatasets = numDatasetsI;
+            numChannels = numChannelsI;
+            numRows = numRowsI;
+            deflateLevel = deflateLevelI;
+        }
+
+        long getNumValues() {
+            return numDatasets * numChannels * numRows;
+        }
+    }
+
+    private final File baselineFile;
+    private final File workDir;
+    private final Double tolerancePercent;    // null to use the baseline's
+    private final int numRuns;
+    private final String heap;
+    private final boolean bUpdate;
+
+    public PerfSuite(File baselineFileI, File workDirI, Double tolerancePercentI, int numRunsI, String heapI, boolean bUpdateI) {
+        baselineFile = baselineFileI;
+        workDir = workDirI;
+        tolerancePercent = tolerancePercentI;
+        numRuns = numRunsI;
+        heap = heapI;
+        bUpdate = bUpdateI;
+    }
+
+    public static void main(String args[]) throws Exception {
+        String toleranceStr = System.getProperty("perf.tolerance", "");
+        PerfSuite suite = new PerfSuite(
+                new File(System.getProperty("perf.baseline", "perf/baseline.json")),
+                new File(System.getProperty("perf.workDir", "build/perf")),
+                toleranceStr.isEmpty() ? null : Double.valueOf(toleranceStr),
+                Integer.parseInt(System.getProperty("perf.runs", "3")),
+                System.getProperty("perf.heap", "2g"),
+                Boolean.parseBoolean(System.getProperty("perf.update", "false")));
+        try {
+            System.loadLibrary("hdf5_java");
+        } catch (UnsatisfiedLinkError e) {
+            System.err.println("Unable to load hdf5_java.dll; exiting");
+            System.exit(1);
+        }
+        if (!suite.run()) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * The case matrix: {small, large} x {few, many channels} x {uncompressed, gzip}.
+     */
+    private static List<PerfCase> getCases() {
+        List<PerfCase> cases = new ArrayList<PerfCase>();
+        String[] sizeNames = { "small", "large" };
+        long[] sizeRows = { 50000, 500000 };
+        String[] widthNames = { "few", "many" };
+        int[] widthDatasets = { 2, 8 };
+        int[] widthChannels = { 2, 16 };
+        String[] compressionNames = { "raw", "gzip" };
+        int[] compressionLevels = { 0, 1 };
+        for (int s = 0; s < sizeNames.length; ++s) {
+            for (int w = 0; w < widthNames.length; ++w) {
+                for (int c = 0; c < compressionNames.length; ++c) {
+                    String name = sizeNames[s] + "-" + widthNames[w] + "-" + compressionNames[c];
+                    cases.add(new PerfCase(name, widthDatasets[w], widthChannels[w], sizeRows[s], compressionLevels[c]));
+                }
+            }
+        }
+        return cases;
+    }
+
+    /**
+     * Run all cases and compare them with the baseline.
+     *
+     * @return true if no case with a baseline is slower than it by more than the tolerance
+     */
+    public boolean run() throws Exception {
+        JsonObject baseline = Json.createObjectBuilder().build();
+        if (baselineFile.exists()) {
+            JsonReader jsonReader = Json.createReader(new FileReader(baselineFile));
+            baseline = jsonReader.readObject();
+            jsonReader.close();
+        }
+        JsonObject baselineCases = baseline.containsKey("cases") ? baseline.getJsonObject("cases") : Json.createObjectBuilder().build();
+        double tolerance = (tolerancePercent != null) ? tolerancePercent : getDouble(baseline, "tolerancePercent", DEFAULT_TOLERANCE_PERCENT);
+
+        workDir.mkdirs();
+        JsonObjectBuilder resultCases = Json.createObjectBuilder();
+        List<String> failures = new ArrayList<String>();
+        List<String> unrecorded = new ArrayList<String>();    // cases with no baseline
+        List<PerfCase> cases = getCases();
+        for (PerfCase perfCase : cases) {
+            File dataFile = generate(perfCase);
+            JsonObject result = runCase(perfCase, dataFile);
+            resultCases.add(perfCase.name, result);
+            JsonObject base = baselineCases.containsKey(perfCase.name) ? baselineCases.getJsonObject(perfCase.name) : null;
+            if (base == null) {
+                unrecorded.add(perfCase.name);
+            }
+            String failure = compare(perfCase.name, result, base, tolerance);
+            if (failure != null) {
+                failures.add(failure);
+            }
+        }
+
+        JsonObject results = Json.createObjectBuilder()
+                .add("tolerancePercent", getDouble(baseline, "tolerancePercent", DEFAULT_TOLERANCE_PERCENT))
+                .add("javaVersion", System.getProperty("java.version"))
+                .add("cases", resultCases)
+                .build();
+        writeJson(results, new File(workDir, "results.json"));
+        if (bUpdate) {
+            writeJson(results, baselineFile);
+            System.err.println("\nUpdated baseline " + baselineFile.getPath());
+            return true;
+        }
+
+        if (!unrecorded.isEmpty()) {
+            System.err.println("\nWARNING: " + unrecorded.size() + " of " + cases.size() + " cases have no baseline and weren't checked: " + unrecorded);
+            System.err.println("Record a baseline on the reference machine with -PperfUpdateBaseline");
+        }
+        if (!failures.isEmpty()) {
+            System.err.println("\nPerformance regressions (tolerance " + tolerance + "%):");
+            for (String failure : failures) {
+                System.err.println("\t" + failure);
+            }
+            return false;
+        }
+        if (unrecorded.size() < cases.size()) {
+            System.err.println("\nAll cases with a baseline are within " + tolerance + "% of it");
+        }
+        return true;
+    }
+
+    /**
+     * Generate the data file of the given case, unless it's already in the work folder; the files are
+     * deterministic, so a cached file is the same as a new one.
+     */
+    private File generate(PerfCase perfCase) throws Exception {
+        File dataFile = new File(workDir, "data" + File.separator + perfCase.name + ".h5");
+        if (!dataFile.exists()) {
+            dataFile.getParentFile().mkdirs();
+            File tmpFile = new File(dataFile.getPath() + ".tmp");
+            new WorkloadGenerator(tmpFile.getPath(), perfCase.numDatasets, perfCase.numChannels, perfCase.numRows, new int[] { 0 }, false, false, 16384, perfCase.deflateLevel, false, 0.0, 0.001, 1).generate();
+            if (!tmpFile.renameTo(dataFile)) {
+                throw new Exception("Unable to rename " + tmpFile.getPath() + " to " + dataFile.getPath());
+            }
+        }
+        return dataFile;
+    }
+
+    /**
+     * Convert the case's file numRuns times, each in a new JVM, and return the measurements of the median run.
+     */
+    private JsonObject runCase(PerfCase perfCase, File dataFile) throws Exception {
+        String javaExe = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        File runDir = new File(workDir, "run");
+        File resultFile = new File(workDir, "run.json");
+        File logFile = new File(workDir, "logs" + File.separator + perfCase.name + ".log");
+        logFile.getParentFile().mkdirs();
+        List<JsonObject> runs = new ArrayList<JsonObject>();
+        for (int i = 0; i < numRuns; ++i) {
+            deleteRecursively(runDir);
+            runDir.mkdirs();
+            resultFile.delete();
+            ProcessBuilder pb = new ProcessBuilder(javaExe, "-Xmx" + heap,
+                    "-Djava.library.path=" + System.getProperty("java.library.path"),
+                    "-cp", System.getProperty("java.class.path"),
+                    "PerfRunner", resultFile.getAbsolutePath(), "-i", dataFile.getAbsolutePath());
+            pb.directory(runDir);
+            pb.redirectErrorStream(true);
+            pb.redirectOutput(ProcessBuilder.Redirect.to(logFile));
+            int exitCode = pb.start().waitFor();
+            if ( (exitCode != 0) || !resultFile.exists() ) {
+                throw new Exception("Case " + perfCase.name + " failed (exit code " + exitCode + "); see " + logFile.getPath());
+            }
+            JsonReader jsonReader = Json.createReader(new FileReader(resultFile));
+            runs.add(jsonReader.readObject());
+            jsonReader.close();
+        }
+        deleteRecursively(runDir);
+        resultFile.delete();
+
+        Collections.sort(runs, new Comparator<JsonObject>() {
+            public int compare(JsonObject a, JsonObject b) {
+                return Double.compare(getDouble(a, "seconds", 0), getDouble(b, "seconds", 0));
+            }
+        });
+        JsonObject median = runs.get(runs.size() / 2);
+        double seconds = getDouble(median, "seconds", 0);
+        long allocatedBytes = median.getJsonNumber("allocatedBytes").longValue();
+        return Json.createObjectBuilder()
+                .add("datasets", perfCase.numDatasets)
+                .add("channels", perfCase.numChannels)
+                .add("rows", perfCase.numRows)
+                .add("gzip", perfCase.deflateLevel)
+                .add("seconds", seconds)
+                .add("valuesPerSec", Math.round(perfCase.getNumValues() / seconds))
+                .add("peakHeapBytes", median.getJsonNumber("peakHeapBytes").longValue())
+                .add("peakRssBytes", median.getJsonNumber("peakRssBytes").longValue())
+                .add("allocatedBytes", allocatedBytes)
+                .add("allocBytesPerSec", Math.round(allocatedBytes / seconds))
+                .build();
+    }
+
+    /**
+     * Print the result of a case next to its baseline.
+     *
+     * @return a description of the failure if the case is too slow, otherwise null
+     */
+    private static String compare(String name, JsonObject result, JsonObject base, double tolerance) {
+        double valuesPerSec = getDouble(result, "valuesPerSec", 0);
+        StringBuilder sb = new StringBuilder(String.format("%-16s %8.3f sec %12.0f values/s  heap %6d MB  rss %6d MB  alloc %8d MB/s",
+                name, getDouble(result, "seconds", 0), valuesPerSec,
+                result.getJsonNumber("peakHeapBytes").longValue() >> 20, result.getJsonNumber("peakRssBytes").longValue() >> 20,
+                result.getJsonNumber("allocBytesPerSec").longValue() >> 20));
+        if (base == null) {
+            System.err.println(sb.append("  WARNING: no baseline"));
+            return null;
+        }
+        double slowdown = 100.0 * (1.0 - valuesPerSec / getDouble(base, "valuesPerSec", valuesPerSec));
+        sb.append(String.format("  %+.1f%% vs baseline", -slowdown));
+        for (String key : new String[] { "peakHeapBytes", "allocatedBytes" }) {
+            double baseValue = getDouble(base, key, 0);
+            double growth = (baseValue > 0) ? 100.0 * (getDouble(result, key, 0) / baseValue - 1.0) : 0.0;
+            if (growth > tolerance) {
+                sb.append(String.format("  WARNING: %s %+.1f%%", key, growth));
+            }
+        }
+        System.err.println(sb);
+        if (slowdown > tolerance) {
+            return String.format("%s: %.1f%% slower than the baseline (%.0f vs %.0f values/s)", name, slowdown, valuesPerSec, getDouble(base, "valuesPerSec", 0));
+        }
+        return null;
+    }
+
+    private static double getDouble(JsonObject obj, String key, double defaultValue) {
+        JsonNumber number = obj.containsKey(key) ? obj.getJsonNumber(key) : null;
+        return (number != null) ? number.doubleValue() : defaultValue;
+    }
+
+    private static void writeJson(JsonObject obj, File file) throws Exception {
+        JsonWriter jsonWriter = Json.createWriterFactory(Collections.singletonMap(JsonGenerator.PRETTY_PRINTING, true)).createWriter(new FileWriter(file));
+        jsonWriter.writeObject(obj);
+        jsonWriter.close();
+    }
+
+    private static void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursively(child);
+            }
+        }
+        file.delete();
+    }
+}
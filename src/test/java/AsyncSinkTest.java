@@ -0,0 +1,166 @@
+/*
+Copyright 2017 Erigo Technologies LLC
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+public class AsyncSinkTest {
+
+    /**
+     * Records every call, as text, in the order made.
+     */
+    private static class RecordingSink implements OutputSink {
+        final List<String> calls = new ArrayList<String>();
+        volatile boolean bClosed = false;
+
+        public void setTime(double time) {
+            calls.add("time " + time);
+        }
+
+        public void putData(String chanName, double val) throws Exception {
+            calls.add(chanName + " " + val);
+        }
+
+        public void putData(String chanName, float val) throws Exception {
+            calls.add(chanName + " " + val);
+        }
+
+        public void putData(String chanName, long val) throws Exception {
+            calls.add(chanName + " " + val);
+        }
+
+        public void putData(String chanName, int val) throws Exception {
+            calls.add(chanName + " " + val);
+        }
+
+        public void putData(String chanName, short val) throws Exception {
+            calls.add(chanName + " " + val);
+        }
+
+        public void putData(String chanName, String val) throws Exception {
+            calls.add(chanName + " " + val);
+        }
+
+        public void putData(String chanName, byte[] val) throws Exception {
+            calls.add(chanName + " " + val.length + " bytes");
+        }
+
+        public void close() {
+            bClosed = true;
+        }
+    }
+
+    @Test
+    public void callsAreReplayedInOrder() throws Exception {
+        RecordingSink recorder = new RecordingSink();
+        AsyncSink sink = new AsyncSink(recorder, "test");
+        List<String> expected = new ArrayList<String>();
+        // Enough calls to fill several batches
+        for (int i = 0; i < 10000; ++i) {
+            sink.setTime(i);
+            expected.add("time " + (double) i);
+            sink.putData("a.f64", i * 0.5);
+            expected.add("a.f64 " + (i * 0.5));
+            sink.putData("b.i32", -i);
+            expected.add("b.i32 " + (-i));
+            if (i % 1000 == 0) {
+                sink.putData("c.txt", "s" + i);
+                expected.add("c.txt s" + i);
+                sink.putData("d.f32", (float) i);
+                expected.add("d.f32 " + (float) i);
+                sink.putData("e.i64", Long.MIN_VALUE + i);
+                expected.add("e.i64 " + (Long.MIN_VALUE + i));
+                sink.putData("f.i16", (short) -i);
+                expected.add("f.i16 " + (short) -i);
+                sink.putData("g.bin", new byte[i % 7]);
+                expected.add("g.bin " + (i % 7) + " bytes");
+            }
+        }
+        sink.close();
+        assertTrue(recorder.bClosed);
+        assertEquals(expected, recorder.calls);
+    }
+
+    @Test
+    public void timeIsOnlyQueuedBeforeValues() throws Exception {
+        RecordingSink recorder = new RecordingSink();
+        AsyncSink sink = new AsyncSink(recorder, "test");
+        sink.setTime(1.0);
+        sink.setTime(2.0);
+        sink.putData("a.f64", 1.5);
+        sink.putData("a.f64", 2.5);
+        sink.setTime(3.0);
+        sink.close();
+        assertArrayEquals(new String[] { "time 2.0", "a.f64 1.5", "a.f64 2.5" }, recorder.calls.toArray());
+    }
+
+    @Test
+    public void workerErrorIsRethrown() throws Exception {
+        final Exception failure = new Exception("disk full");
+        RecordingSink recorder = new RecordingSink() {
+            public void putData(String chanName, double val) throws Exception {
+                throw failure;
+            }
+        };
+        AsyncSink sink = new AsyncSink(recorder, "test");
+        Exception thrown = null;
+        try {
+            for (int i = 0; i < 100000; ++i) {
+                sink.setTime(i);
+                sink.putData("a.f64", (double) i);
+            }
+        } catch (Exception e) {
+            thrown = e;
+        }
+        assertSame(failure, thrown);
+        try {
+            sink.close();
+            thrown = null;
+        } catch (Exception e) {
+            thrown = e;
+        }
+        assertSame(failure, thrown);
+        assertTrue(recorder.bClosed);
+    }
+
+    @Test
+    public void errorInLastBatchIsThrownByClose() throws Exception {
+        final Exception failure = new Exception("disk full");
+        RecordingSink recorder = new RecordingSink() {
+            public void putData(String chanName, String val) throws Exception {
+                throw failure;
+            }
+        };
+        AsyncSink sink = new AsyncSink(recorder, "test");
+        sink.setTime(1.0);
+        sink.putData("a.txt", "x");
+        Exception thrown = null;
+        try {
+            sink.close();
+        } catch (Exception e) {
+            thrown = e;
+        }
+        assertSame(failure, thrown);
+    }
+}
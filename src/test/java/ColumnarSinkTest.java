@@ -0,0 +1,179 @@
+/*
+Copyright 2017 Erigo Technologies LLC
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.io.File;
+import java.io.FileReader;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import javax.json.Json;
+import javax.json.JsonArray;
+import javax.json.JsonObject;
+import javax.json.JsonReader;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ColumnarSinkTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private static ByteBuffer read(File folder, String path) throws Exception {
+        return ByteBuffer.wrap(Files.readAllBytes(new File(folder, path).toPath())).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private static JsonObject readSchema(File folder) throws Exception {
+        JsonReader jsonReader = Json.createReader(new FileReader(new File(folder, "schema.json")));
+        try {
+            return jsonReader.readObject();
+        } finally {
+            jsonReader.close();
+        }
+    }
+
+    @Test
+    public void fixedWidthColumns() throws Exception {
+        File folder = tmp.getRoot();
+        ColumnarSink sink = new ColumnarSink(folder.getPath());
+        for (int i = 0; i < 100000; ++i) {
+            sink.setTime(1.5e9 + i);
+            sink.putData("ds/a.f64", i * 0.25);
+            if (i % 2 == 0) {
+                sink.putData("ds/b.i16", (short) i);
+            }
+        }
+        sink.close();
+
+        ByteBuffer time = read(folder, "ds/a/time.f64");
+        ByteBuffer value = read(folder, "ds/a/value.f64");
+        assertEquals(100000 * 8, time.capacity());
+        assertEquals(100000 * 8, value.capacity());
+        for (int i = 0; i < 100000; ++i) {
+            assertEquals(1.5e9 + i, time.getDouble(), 0.0);
+            assertEquals(i * 0.25, value.getDouble(), 0.0);
+        }
+        time = read(folder, "ds/b/time.f64");
+        value = read(folder, "ds/b/value.i16");
+        assertEquals(50000 * 8, time.capacity());
+        assertEquals(50000 * 2, value.capacity());
+        for (int i = 0; i < 100000; i += 2) {
+            assertEquals(1.5e9 + i, time.getDouble(), 0.0);
+            assertEquals((short) i, value.getShort());
+        }
+    }
+
+    @Test
+    public void variableLengthRecords() throws Exception {
+        File folder = tmp.getRoot();
+        ColumnarSink sink = new ColumnarSink(folder.getPath());
+        byte[] big = new byte[200000];   // larger than any column buffer
+        big[big.length - 1] = 7;
+        sink.setTime(1.0);
+        sink.putData("ds/label.txt", "h\u00e9llo");
+        sink.putData("ds/arr.f32", new byte[] { 1, 2, 3, 4 });
+        sink.setTime(2.0);
+        sink.putData("ds/label.txt", "");
+        sink.putData("ds/arr.f32", big);
+        sink.close();
+
+        ByteBuffer value = read(folder, "ds/label/value.txt");
+        byte[] utf8 = "h\u00e9llo".getBytes(StandardCharsets.UTF_8);
+        assertEquals(utf8.length, value.getInt());
+        byte[] bytes = new byte[utf8.length];
+        value.get(bytes);
+        assertEquals("h\u00e9llo", new String(bytes, StandardCharsets.UTF_8));
+        assertEquals(0, value.getInt());
+        assertFalse(value.hasRemaining());
+
+        value = read(folder, "ds/arr/value.f32");
+        assertEquals(4, value.getInt());
+        value.position(value.position() + 4);
+        assertEquals(big.length, value.getInt());
+        assertEquals(4 + 4 + 4 + big.length, value.capacity());
+        assertEquals(7, value.get(value.capacity() - 1));
+    }
+
+    @Test
+    public void schemaListsEveryChannel() throws Exception {
+        File folder = tmp.getRoot();
+        ColumnarSink sink = new ColumnarSink(folder.getPath());
+        sink.setTime(1.0);
+        sink.putData("ds/a.i64", 5L);
+        sink.putData("ds/s.txt", "x");
+        sink.setTime(2.0);
+        sink.putData("ds/a.i64", 6L);
+        sink.close();
+
+        JsonObject schema = readSchema(folder);
+        assertEquals("LITTLE_ENDIAN", schema.getString("byteOrder"));
+        assertEquals("f64", schema.getString("timeType"));
+        JsonArray channels = schema.getJsonArray("channels");
+        assertEquals(2, channels.size());
+        JsonObject a = channels.getJsonObject(0);
+        assertEquals("ds/a.i64", a.getString("name"));
+        assertEquals("i64", a.getString("type"));
+        assertEquals(8, a.getInt("valueBytes"));
+        assertEquals(2, a.getInt("rows"));
+        assertEquals("ds/a/time.f64", a.getString("timeFile"));
+        assertEquals("ds/a/value.i64", a.getString("valueFile"));
+        JsonObject s = channels.getJsonObject(1);
+        assertEquals("string", s.getString("type"));
+        assertEquals(-1, s.getInt("valueBytes"));
+        assertEquals(1, s.getInt("rows"));
+    }
+
+    @Test
+    public void manyChannelsAreReopenedForAppend() throws Exception {
+        // More channels than files held open at once, written interleaved in time order
+        File folder = tmp.getRoot();
+        ColumnarSink sink = new ColumnarSink(folder.getPath());
+        int numChannels = 500;
+        int numRows = 3000;
+        for (int r = 0; r < numRows; ++r) {
+            sink.setTime(r);
+            for (int c = 0; c < numChannels; ++c) {
+                sink.putData("ds/c" + c + ".i32", r * numChannels + c);
+            }
+        }
+        sink.close();
+
+        for (int c = 0; c < numChannels; c += 97) {
+            ByteBuffer time = read(folder, "ds/c" + c + "/time.f64");
+            ByteBuffer value = read(folder, "ds/c" + c + "/value.i32");
+            assertEquals(numRows * 4, value.capacity());
+            for (int r = 0; r < numRows; ++r) {
+                assertEquals(r, time.getDouble(), 0.0);
+                assertEquals(r * numChannels + c, value.getInt());
+            }
+        }
+    }
+
+    @Test(expected = java.io.IOException.class)
+    public void channelTypeCantChange() throws Exception {
+        ColumnarSink sink = new ColumnarSink(tmp.getRoot().getPath());
+        sink.setTime(1.0);
+        sink.putData("ds/a.f64", 1.0);
+        sink.putData("ds/a.f64", 1);
+    }
+}
@@ -0,0 +1,99 @@
+/*
+Copyright 2017 Erigo Technologies LLC
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+public class DeadbandTest {
+
+    /**
+     * Write one Dataset with a single double channel ("chan", with the given deadband) to one RecordingSink, and
+     * return the values written as "<time>=<value>".
+     */
+    private static List<String> write(double[] times, double[] values, double deadband, double flushInterval, NumericColumn[] chanOut) throws Exception {
+        NumericColumn chan = new NumericColumn.DoubleColumn("chan", values);
+        chan.setDeadband(deadband);
+        ChannelColumn[] valueColumns = { chan };
+        DatasetColumns dataset = new DatasetColumns("ds", new NumericColumn.DoubleColumn("time", times), valueColumns, times.length);
+        RecordingSink sink = new RecordingSink();
+        int[][] partitionOf = { new int[1] };
+        HDF5toCT.writeData(Collections.singletonList(dataset), new OutputSink[] { sink }, partitionOf, 0.0, flushInterval, false);
+        if (chanOut != null) {
+            chanOut[0] = chan;
+        }
+        List<String> written = new ArrayList<String>();
+        String time = null;
+        for (String call : sink.calls) {
+            if (call.startsWith("time ")) {
+                time = call.substring(5);
+            } else {
+                written.add(time + "=" + call.substring(call.indexOf(' ') + 1));
+            }
+        }
+        return written;
+    }
+
+    @Test
+    public void constantChannelWritesFirstAndLastOfEachBlock() throws Exception {
+        double[] times = new double[12];
+        double[] values = new double[12];
+        for (int i = 0; i < times.length; ++i) {
+            times[i] = i * 0.25;
+            values[i] = 5.0;
+        }
+        List<String> expected = new ArrayList<String>();
+        Collections.addAll(expected, "0.0=5.0", "0.75=5.0", "1.0=5.0", "1.75=5.0", "2.0=5.0", "2.75=5.0");
+        assertEquals(expected, write(times, values, 0.0, 1.0, null));
+    }
+
+    @Test
+    public void filterRunsInTimeOrder() throws Exception {
+        // Rows aren't in time order; in time order the values are 0.0, 0.2, 1.0, 3.0
+        double[] times = { 0.75, 0.0, 0.5, 0.25 };
+        double[] values = { 3.0, 0.0, 1.0, 0.2 };
+        NumericColumn[] chan = new NumericColumn[1];
+        List<String> expected = new ArrayList<String>();
+        Collections.addAll(expected, "0.0=0.0", "0.5=1.0", "0.75=3.0");
+        assertEquals(expected, write(times, values, 0.5, 10.0, chan));
+        assertEquals(1, chan[0].getNumDropped());
+    }
+
+    @Test
+    public void noDeadbandWritesEverySample() throws Exception {
+        double[] times = { 0.0, 0.25, 0.5 };
+        double[] values = { 1.0, 1.0, 1.0 };
+        assertEquals(3, write(times, values, -1.0, 1.0, null).size());
+    }
+
+    @Test
+    public void blocksStartWhereCTwriterFlushes() {
+        // A new block starts at the first time at least one flush interval after the start of the current block
+        FlushBlocks blocks = new FlushBlocks(1.0, false);
+        assertEquals(0, blocks.put(0.0));
+        assertEquals(0, blocks.put(0.999));
+        assertEquals(1, blocks.put(1.0));
+        assertEquals(1, blocks.put(1.5));
+        assertEquals(2, blocks.put(2.2));
+        assertEquals(2, blocks.put(3.1));
+        assertEquals(3, blocks.put(3.2));
+    }
+}
@@ -0,0 +1,139 @@
+/*
+Copyright 2017 Erigo Technologies LLC
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+public class DecimatorTest {
+
+    private static DatasetColumns dataset(double[] times, double[] values) {
+        ChannelColumn[] valueColumns = { new NumericColumn.DoubleColumn("chan", values) };
+        return new DatasetColumns("ds", new NumericColumn.DoubleColumn("time", times), valueColumns, times.length);
+    }
+
+    private static NumericColumn column(DatasetColumns datasetColumns, int idx) {
+        return (NumericColumn) datasetColumns.getValueColumns()[idx];
+    }
+
+    @Test
+    public void bucketsIncludeStartAndExcludeEnd() {
+        double[] times = { 0.0, 0.5, 0.999, 1.0, 2.5 };
+        double[] values = { 1.0, 5.0, 3.0, 7.0, -2.0 };
+        DatasetColumns result = new Decimator(1.0, 0.0).decimate(dataset(times, values));
+
+        assertEquals(3, result.getNumRows());
+        assertEquals(0.0, result.getTime(0), 0.0);
+        assertEquals(1.0, result.getTime(1), 0.0);
+        assertEquals(2.0, result.getTime(2), 0.0);
+        // chan_min, chan_max, chan_mean, chan_count
+        assertEquals(4, result.getValueColumns().length);
+        assertEquals("chan_min", column(result, 0).getChanName());
+        assertEquals(1.0, column(result, 0).getDouble(0), 0.0);
+        assertEquals(5.0, column(result, 1).getDouble(0), 0.0);
+        assertEquals(3.0, column(result, 2).getDouble(0), 1e-12);
+        assertEquals(3, column(result, 3).getLong(0));
+        assertEquals(7.0, column(result, 2).getDouble(1), 0.0);
+        assertEquals(1, column(result, 3).getLong(1));
+        assertEquals(-2.0, column(result, 0).getDouble(2), 0.0);
+    }
+
+    @Test
+    public void bucketsAlignToCtTime() {
+        // With a base time of 0.25, HDF5 time 0.7 is CT time 0.95 and 0.8 is CT time 1.05
+        double[] times = { 0.7, 0.8, 0.1 };
+        double[] values = { 1.0, 2.0, 3.0 };
+        DatasetColumns result = new Decimator(1.0, 0.25).decimate(dataset(times, values));
+
+        assertEquals(2, result.getNumRows());
+        // The first bucket starts at HDF5 time -0.25, which isn't written; it's timestamped at 0
+        assertEquals(0.0, result.getTime(0), 0.0);
+        assertEquals(0.75, result.getTime(1), 1e-12);
+        assertEquals(2, column(result, 3).getLong(0));
+        assertEquals(2.0, column(result, 2).getDouble(0), 1e-12);
+        assertEquals(2.0, column(result, 0).getDouble(1), 0.0);
+    }
+
+    @Test
+    public void negativeTimesAreSkipped() {
+        double[] times = { -1.5, -0.2, 0.3 };
+        double[] values = { 100.0, 50.0, 1.0 };
+        DatasetColumns result = new Decimator(1.0, 0.0).decimate(dataset(times, values));
+
+        assertEquals(1, result.getNumRows());
+        assertEquals(0.0, result.getTime(0), 0.0);
+        assertEquals(1.0, column(result, 1).getDouble(0), 0.0);
+        assertEquals(1, column(result, 3).getLong(0));
+
+        assertNull(new Decimator(1.0, 0.0).decimate(dataset(new double[] { -2.0, -1.0 }, new double[] { 1.0, 2.0 })));
+    }
+
+    @Test
+    public void everyBucketIsWritten() throws Exception {
+        // Default base time, which isn't a multiple of a day: the first bucket starts before HDF5 time 0
+        double baseTime = 1483246800.0;
+        double[] times = { 10.0, 20.0, 86400.0 };
+        double[] values = { 1.0, 3.0, 5.0 };
+        DatasetColumns result = new Decimator(86400.0, baseTime).decimate(dataset(times, values));
+
+        RecordingSink sink = new RecordingSink();
+        int[][] partitionOf = { new int[result.getValueColumns().length] };
+        HDF5toCT.writeData(Collections.singletonList(result), new OutputSink[] { sink }, partitionOf, baseTime, 1.0, false);
+
+        double secondBucket = 1483315200.0;   // start of the next day, in CT time
+        List<String> expected = new ArrayList<String>();
+        expected.add("time " + baseTime);
+        expected.add("chan_min.f64 1.0");
+        expected.add("chan_max.f64 3.0");
+        expected.add("chan_mean.f64 2.0");
+        expected.add("chan_count.i32 2");
+        expected.add("time " + secondBucket);
+        expected.add("chan_min.f64 5.0");
+        expected.add("chan_max.f64 5.0");
+        expected.add("chan_mean.f64 5.0");
+        expected.add("chan_count.i32 1");
+        assertEquals(expected, sink.calls);
+    }
+
+    @Test
+    public void unsortedRowsAreBucketedInTimeOrder() {
+        double[] times = { 2.2, 0.1, 2.1, 0.2 };
+        double[] values = { 4.0, 1.0, 3.0, 2.0 };
+        DatasetColumns result = new Decimator(1.0, 0.0).decimate(dataset(times, values));
+
+        assertEquals(2, result.getNumRows());
+        assertEquals(1.5, column(result, 2).getDouble(0), 1e-12);
+        assertEquals(3.5, column(result, 2).getDouble(1), 1e-12);
+    }
+
+    @Test
+    public void nonNumericChannelsAreDropped() {
+        double[] times = { 0.0, 1.0 };
+        ChannelColumn[] valueColumns = { ChannelColumn.create("label", "vlstring", -1, 2), new NumericColumn.DoubleColumn("chan", new double[] { 1.0, 2.0 }) };
+        DatasetColumns result = new Decimator(1.0, 0.0).decimate(new DatasetColumns("ds", new NumericColumn.DoubleColumn("time", times), valueColumns, 2));
+        assertEquals(4, result.getValueColumns().length);
+        assertEquals("chan_min", result.getValueColumns()[0].getChanName());
+
+        ChannelColumn[] stringsOnly = { ChannelColumn.create("label", "vlstring", -1, 2) };
+        assertNull(new Decimator(1.0, 0.0).decimate(new DatasetColumns("ds", new NumericColumn.DoubleColumn("time", times), stringsOnly, 2)));
+    }
+}
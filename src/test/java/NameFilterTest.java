@@ -0,0 +1,90 @@
+/*
+Copyright 2017 Erigo Technologies LLC
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class NameFilterTest {
+
+    private static NameFilter filter(String[] includes, String[] excludes) {
+        return new NameFilter(includes, excludes);
+    }
+
+    @Test
+    public void emptyFilterAcceptsEverything() {
+        NameFilter nameFilter = filter(null, null);
+        assertTrue(nameFilter.isEmpty());
+        assertTrue(nameFilter.accept("Group/Dataset"));
+        assertTrue(nameFilter.accept(""));
+    }
+
+    @Test
+    public void excludeWinsOverInclude() {
+        NameFilter nameFilter = filter(new String[] { "Engine*" }, new String[] { "*Debug" });
+        assertTrue(nameFilter.accept("EngineTemp"));
+        assertFalse(nameFilter.accept("EngineDebug"));
+        assertFalse(nameFilter.accept("Cabin"));
+    }
+
+    @Test
+    public void excludesAloneKeepEverythingElse() {
+        NameFilter nameFilter = filter(null, new String[] { "raw_*", "scratch" });
+        assertTrue(nameFilter.accept("temp"));
+        assertFalse(nameFilter.accept("raw_adc"));
+        assertFalse(nameFilter.accept("scratch"));
+        assertTrue(nameFilter.accept("scratch2"));
+    }
+
+    @Test
+    public void anyIncludeIsEnough() {
+        NameFilter nameFilter = filter(new String[] { "a*", "b*" }, null);
+        assertTrue(nameFilter.accept("alpha"));
+        assertTrue(nameFilter.accept("beta"));
+        assertFalse(nameFilter.accept("gamma"));
+    }
+
+    @Test
+    public void globWildcards() {
+        NameFilter nameFilter = filter(new String[] { "Top/*/chan?" }, null);
+        assertTrue(nameFilter.accept("Top/Group/chan1"));
+        assertFalse(nameFilter.accept("Top/Group/Sub/chan1"));
+        assertFalse(nameFilter.accept("Top/Group/chan10"));
+        assertFalse(nameFilter.accept("Top/Group/chan/"));
+
+        nameFilter = filter(new String[] { "Top/**" }, null);
+        assertTrue(nameFilter.accept("Top/Group/Sub/chan1"));
+        assertFalse(nameFilter.accept("Other/Top/x"));
+    }
+
+    @Test
+    public void globIsLiteralOtherwise() {
+        NameFilter nameFilter = filter(new String[] { "a.b(c)+" }, null);
+        assertTrue(nameFilter.accept("a.b(c)+"));
+        assertFalse(nameFilter.accept("aXb(c)+"));
+    }
+
+    @Test
+    public void regexMustMatchWholeName() {
+        NameFilter nameFilter = filter(new String[] { "re:temp[0-9]+" }, new String[] { "re:.*9" });
+        assertTrue(nameFilter.accept("temp12"));
+        assertFalse(nameFilter.accept("temp19"));
+        assertFalse(nameFilter.accept("mytemp12"));
+        assertFalse(nameFilter.accept("temp12x"));
+    }
+}
@@ -0,0 +1,111 @@
+/*
+Copyright 2017 Erigo Technologies LLC
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class ReadWindowGovernorTest {
+    private static final long BUDGET_BYTES = 8L * 1024 * 1024;
+
+    @Test
+    public void windowsAreWholeChunks() {
+        ReadWindowGovernor governor = new ReadWindowGovernor(BUDGET_BYTES);
+        ReadWindowGovernor.Window window = governor.open(100, 0, 1000, 4, 10000000);
+        try {
+            assertEquals(0, window.getMaxRows() % 1000);
+            assertTrue(window.getMaxRows() * 100L <= BUDGET_BYTES);
+            for (int i = 0; i < 20; ++i) {
+                int rows = window.nextRows();
+                assertEquals(0, rows % 1000);
+                assertTrue(rows > 0);
+                assertTrue(rows <= window.getMaxRows());
+            }
+        } finally {
+            window.close();
+        }
+    }
+
+    @Test
+    public void smallDatasetIsOneChunk() {
+        ReadWindowGovernor governor = new ReadWindowGovernor(BUDGET_BYTES);
+        ReadWindowGovernor.Window window = governor.open(16, 0, 512, 1, 100);
+        try {
+            // Rounded up to a whole chunk, which the caller trims to the rows left
+            assertEquals(512, window.getMaxRows());
+            assertEquals(512, window.nextRows());
+        } finally {
+            window.close();
+        }
+    }
+
+    @Test
+    public void contiguousDatasetFitsBudget() {
+        ReadWindowGovernor governor = new ReadWindowGovernor(BUDGET_BYTES);
+        ReadWindowGovernor.Window window = governor.open(64, 0, 1, 1, 1000000000L);
+        try {
+            assertEquals(BUDGET_BYTES / 64, window.getMaxRows());
+        } finally {
+            window.close();
+        }
+    }
+
+    @Test
+    public void chunkLargerThanShareIsNotAligned() {
+        ReadWindowGovernor governor = new ReadWindowGovernor(BUDGET_BYTES);
+        // One chunk is 100 MB, more than the whole budget
+        ReadWindowGovernor.Window window = governor.open(100, 0, 1000000, 1, 10000000);
+        try {
+            assertTrue(window.getMaxRows() * 100L <= BUDGET_BYTES);
+            assertTrue(window.getMaxRows() < 1000000);
+        } finally {
+            window.close();
+        }
+    }
+
+    @Test
+    public void budgetIsSharedByOpenDatasets() {
+        ReadWindowGovernor governor = new ReadWindowGovernor(BUDGET_BYTES);
+        ReadWindowGovernor.Window first = governor.open(8, 0, 1, 1, 1000000000L);
+        ReadWindowGovernor.Window second = governor.open(8, 0, 1, 3, 1000000000L);
+        try {
+            assertEquals(BUDGET_BYTES / 8, first.getMaxRows());
+            // second has 3 of the 4 channels now being read
+            assertEquals(BUDGET_BYTES * 3 / 4 / 8, second.getMaxRows());
+        } finally {
+            second.close();
+            first.close();
+        }
+        ReadWindowGovernor.Window third = governor.open(8, 0, 1, 3, 1000000000L);
+        try {
+            assertEquals(BUDGET_BYTES / 8, third.getMaxRows());
+        } finally {
+            third.close();
+        }
+    }
+
+    @Test
+    public void variableLengthStringsCountTowardRowSize() {
+        ReadWindowGovernor governor = new ReadWindowGovernor(BUDGET_BYTES);
+        ReadWindowGovernor.Window plain = governor.open(64, 0, 1, 1, 1000000000L);
+        plain.close();
+        ReadWindowGovernor.Window withStrings = governor.open(64, 2, 1, 1, 1000000000L);
+        withStrings.close();
+        assertTrue(withStrings.getMaxRows() < plain.getMaxRows());
+    }
+}
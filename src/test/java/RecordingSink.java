@@ -0,0 +1,60 @@
+/*
+Copyright 2017 Erigo Technologies LLC
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * An OutputSink which records every time and value written, as text, in the order written.
+ */
+class RecordingSink implements OutputSink {
+    final List<String> calls = new ArrayList<String>();
+
+    public void setTime(double time) {
+        calls.add("time " + time);
+    }
+
+    public void putData(String chanName, double val) {
+        calls.add(chanName + " " + val);
+    }
+
+    public void putData(String chanName, float val) {
+        calls.add(chanName + " " + val);
+    }
+
+    public void putData(String chanName, long val) {
+        calls.add(chanName + " " + val);
+    }
+
+    public void putData(String chanName, int val) {
+        calls.add(chanName + " " + val);
+    }
+
+    public void putData(String chanName, short val) {
+        calls.add(chanName + " " + val);
+    }
+
+    public void putData(String chanName, String val) {
+        calls.add(chanName + " " + val);
+    }
+
+    public void putData(String chanName, byte[] val) {
+        calls.add(chanName + " " + val.length + " bytes");
+    }
+
+    public void close() {
+    }
+}
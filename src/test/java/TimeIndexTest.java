@@ -0,0 +1,179 @@
+/*
+Copyright 2017 Erigo Technologies LLC
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class TimeIndexTest {
+
+    private static DatasetColumns doubleTimes(String name, double... times) {
+        return new DatasetColumns(name, new NumericColumn.DoubleColumn("time", times), new ChannelColumn[0], times.length);
+    }
+
+    private static DatasetColumns longTimes(String name, long... times) {
+        NumericColumn timeColumn = NumericColumn.create("time", "long", 0, times.length);
+        timeColumn.decodeTable(times, 1, 0, 0, times.length);
+        return new DatasetColumns(name, timeColumn, new ChannelColumn[0], times.length);
+    }
+
+    // Times are the raw bits of unsigned 64-bit values
+    private static DatasetColumns unsignedLongTimes(String name, long... times) {
+        NumericColumn timeColumn = NumericColumn.create("time", "unsigned long", 0, times.length);
+        timeColumn.decodeTable(times, 1, 0, 0, times.length);
+        return new DatasetColumns(name, timeColumn, new ChannelColumn[0], times.length);
+    }
+
+    private static TimeIndex sort(DatasetColumns... datasets) {
+        TimeIndex timeIndex = new TimeIndex(Arrays.asList(datasets));
+        timeIndex.sort();
+        return timeIndex;
+    }
+
+    @Test
+    public void equalTimesKeepDatasetThenRowOrder() {
+        TimeIndex timeIndex = sort(doubleTimes("a", 2.0, 1.0, 2.0), doubleTimes("b", 2.0, 1.0));
+        int[][] expected = { {0, 1}, {1, 1}, {0, 0}, {0, 2}, {1, 0} };   // {Dataset, row}
+        assertEquals(expected.length, timeIndex.size());
+        for (int i = 0; i < expected.length; ++i) {
+            int datasetIdx = timeIndex.getDatasetIndex(i);
+            assertEquals("Dataset of row " + i, expected[i][0], datasetIdx);
+            assertEquals("row " + i, expected[i][1], timeIndex.getRow(i, datasetIdx));
+        }
+        assertEquals(timeIndex.getKey(2), timeIndex.getKey(4));
+    }
+
+    @Test
+    public void negativeDoubleTimes() {
+        TimeIndex timeIndex = sort(doubleTimes("a", 3.5, -1.0e9, 0.25, -2.5, -0.125, 1.0e9));
+        double[] expected = { -1.0e9, -2.5, -0.125, 0.25, 3.5, 1.0e9 };
+        for (int i = 0; i < expected.length; ++i) {
+            assertEquals(expected[i], timeIndex.getTime(i), 0.0);
+        }
+    }
+
+    @Test
+    public void negativeIntegerTimes() {
+        TimeIndex timeIndex = sort(longTimes("a", 5, Long.MIN_VALUE, -1, 0, Long.MAX_VALUE, -300));
+        long[] expected = { Long.MIN_VALUE, -300, -1, 0, 5, Long.MAX_VALUE };
+        for (int i = 0; i < expected.length; ++i) {
+            assertEquals(expected[i], timeIndex.getKey(i));
+        }
+    }
+
+    @Test
+    public void unsignedLongTimesAbove2To63KeepTheirOrder() {
+        // -1L is 2^64 - 1 and Long.MIN_VALUE is 2^63 when read as unsigned
+        TimeIndex timeIndex = sort(unsignedLongTimes("a", -1L, 5, Long.MIN_VALUE + 1, Long.MAX_VALUE),
+                                   unsignedLongTimes("b", Long.MIN_VALUE, 0));
+        int[][] expected = { {1, 1}, {0, 1}, {0, 3}, {1, 0}, {0, 2}, {0, 0} };   // {Dataset, row}
+        for (int i = 0; i < expected.length; ++i) {
+            int datasetIdx = timeIndex.getDatasetIndex(i);
+            assertEquals("Dataset of row " + i, expected[i][0], datasetIdx);
+            assertEquals("row " + i, expected[i][1], timeIndex.getRow(i, datasetIdx));
+            if (i > 0) {
+                assertTrue(timeIndex.getKey(i - 1) < timeIndex.getKey(i));
+            }
+        }
+        assertEquals(0.0, timeIndex.getTime(0), 0.0);
+        assertEquals(9.223372036854775808e18, timeIndex.getTime(3), 0.0);
+        assertEquals(1.8446744073709551615e19, timeIndex.getTime(5), 0.0);
+    }
+
+    @Test
+    public void unsignedAndSignedLongTimesAreKeyedByDouble() {
+        TimeIndex timeIndex = sort(unsignedLongTimes("a", Long.MIN_VALUE, 3), longTimes("b", -7, 10));
+        double[] expected = { -7.0, 3.0, 10.0, 9.223372036854775808e18 };
+        for (int i = 0; i < expected.length; ++i) {
+            assertEquals(expected[i], timeIndex.getTime(i), 0.0);
+        }
+    }
+
+    @Test
+    public void negativeZeroSortsBeforeZero() {
+        TimeIndex timeIndex = sort(doubleTimes("a", 0.0, -0.0, 0.0, -0.0));
+        assertEquals(1, timeIndex.getRow(0));
+        assertEquals(3, timeIndex.getRow(1));
+        assertEquals(0, timeIndex.getRow(2));
+        assertEquals(2, timeIndex.getRow(3));
+        assertEquals(Double.doubleToRawLongBits(-0.0), Double.doubleToRawLongBits(timeIndex.getTime(0)));
+        assertTrue(timeIndex.getKey(1) < timeIndex.getKey(2));
+    }
+
+    @Test
+    public void nanSortsAfterInfinity() {
+        TimeIndex timeIndex = sort(doubleTimes("a", Double.NaN, Double.POSITIVE_INFINITY, 1.0, Double.NEGATIVE_INFINITY));
+        assertEquals(Double.NEGATIVE_INFINITY, timeIndex.getTime(0), 0.0);
+        assertEquals(1.0, timeIndex.getTime(1), 0.0);
+        assertEquals(Double.POSITIVE_INFINITY, timeIndex.getTime(2), 0.0);
+        assertTrue(Double.isNaN(timeIndex.getTime(3)));
+    }
+
+    @Test
+    public void emptyDatasetsAreSkipped() {
+        TimeIndex timeIndex = sort(doubleTimes("a"), doubleTimes("b", 1.0), doubleTimes("c"), doubleTimes("d", 0.5));
+        assertEquals(2, timeIndex.size());
+        assertEquals(3, timeIndex.getDatasetIndex(0));
+        assertEquals(1, timeIndex.getDatasetIndex(1));
+    }
+
+    @Test
+    public void radixSortMatchesStableSort() {
+        Random random = new Random(42);
+        int n = 10000;
+        long[] keys = new long[n];
+        int[] vals = new int[n];
+        List<long[]> pairs = new ArrayList<long[]>();
+        for (int i = 0; i < n; ++i) {
+            // Few distinct keys, spread over the whole range, so there are many ties
+            keys[i] = (random.nextInt(50) - 25) * 0x0123456789ABCDL;
+            vals[i] = i;
+            pairs.add(new long[] { keys[i], i });
+        }
+        TimeIndex.radixSort(keys, vals);
+        // Collections.sort is stable
+        Collections.sort(pairs, new Comparator<long[]>() {
+            public int compare(long[] a, long[] b) {
+                return Long.compare(a[0], b[0]);
+            }
+        });
+        for (int i = 0; i < n; ++i) {
+            assertEquals(pairs.get(i)[0], keys[i]);
+            assertEquals(pairs.get(i)[1], vals[i]);
+        }
+    }
+
+    @Test
+    public void sortableLongRoundTrips() {
+        double[] values = { -Double.MAX_VALUE, -1.5, -Double.MIN_VALUE, -0.0, 0.0, Double.MIN_VALUE, 2.0, Double.MAX_VALUE };
+        for (int i = 0; i < values.length; ++i) {
+            long key = TimeIndex.doubleToSortableLong(values[i]);
+            assertEquals(Double.doubleToRawLongBits(values[i]), Double.doubleToRawLongBits(TimeIndex.sortableLongToDouble(key)));
+            if (i > 0) {
+                assertTrue(TimeIndex.doubleToSortableLong(values[i - 1]) < key);
+            }
+        }
+    }
+}